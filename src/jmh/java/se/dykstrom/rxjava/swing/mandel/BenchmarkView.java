@@ -0,0 +1,34 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.math.BigDecimal;
+
+/**
+ * The views used in the benchmarks. They differ in how much time is spent on pixels inside the set,
+ * that use up all iterations, and on pixels outside the set, that escape early.
+ *
+ * @author Johan Dykstrom
+ */
+enum BenchmarkView {
+
+    /** The whole set, as when the application starts. */
+    FULL_SET(new ImageAttributes(Coordinates.INITIAL_COORDINATES, Coordinates.INITIAL_SIZE / BenchmarkView.SIZE)),
+
+    /** A deep view of the edge of the set, with filaments everywhere. */
+    DEEP_EDGE(new ImageAttributes(new Coordinates(new BigDecimal("-0.74540000001"), new BigDecimal("0.11300000001")), 1e-11)),
+
+    /** A view that is mostly inside the set. */
+    INTERIOR(new ImageAttributes(new Coordinates(-0.5, -0.2), 0.4 / BenchmarkView.SIZE));
+
+    /** The width and height of the benchmark images in pixels. */
+    static final int SIZE = 512;
+
+    private final ImageAttributes imageAttributes;
+
+    BenchmarkView(ImageAttributes imageAttributes) {
+        this.imageAttributes = imageAttributes;
+    }
+
+    ImageAttributes imageAttributes() {
+        return imageAttributes;
+    }
+}
@@ -0,0 +1,83 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Compares the executors that the tiles can be calculated on, see {@link RenderExecutor}, by measuring
+ * the time it takes to render a whole image on each of them. The shared computation scheduler of RxJava
+ * is included as a baseline.
+ *
+ * @author Johan Dykstrom
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExecutorBenchmark {
+
+    @Param({"FULL_SET", "DEEP_EDGE"})
+    public String view;
+
+    @Param({"COMPUTATION", "FIXED", "FORK_JOIN", "VIRTUAL"})
+    public String executor;
+
+    @Param({"32", "64"})
+    public int tileSize;
+
+    private ImageAttributes imageAttributes;
+    private Precision precision;
+    private ExecutorService executorService;
+    private Scheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        imageAttributes = BenchmarkView.valueOf(view).imageAttributes();
+        precision = Precision.select(imageAttributes, BenchmarkView.SIZE, BenchmarkView.SIZE);
+        if (executor.equals("COMPUTATION")) {
+            scheduler = Schedulers.computation();
+        } else {
+            executorService = RenderExecutor.valueOf(executor).create();
+            scheduler = Schedulers.from(executorService);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        final int size = BenchmarkView.SIZE;
+        RenderStatistics statistics = new RenderStatistics(size * size);
+        Observable<Parameters> paramObs = MandelController.paramObs(tileSize, size, size, imageAttributes, null, null, precision);
+        RenderStrategy.LINE_BY_LINE.lineObs(paramObs, scheduler, statistics, new TileCache())
+                .toBlocking()
+                .forEach(line -> {
+                    blackhole.consume(line.getRGB());
+                    line.recycle();
+                });
+    }
+}
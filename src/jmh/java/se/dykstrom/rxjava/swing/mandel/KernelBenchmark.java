@@ -0,0 +1,62 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time it takes for a kernel to calculate the escape times of one line in the image.
+ * Each invocation calculates the next line, so all lines of the image are measured in turn.
+ *
+ * @author Johan Dykstrom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+    @Param({"FULL_SET", "DEEP_EDGE", "INTERIOR"})
+    public String view;
+
+    @Param({"SCALAR", "VECTOR"})
+    public String kernel;
+
+    @Param({"FLOAT", "DOUBLE", "DOUBLE_DOUBLE"})
+    public String precision;
+
+    private ImageAttributes imageAttributes;
+    private Kernel selectedKernel;
+    private Precision selectedPrecision;
+    private int maxIterations;
+    private int[] iterations;
+    private int y;
+
+    @Setup
+    public void setUp() {
+        imageAttributes = BenchmarkView.valueOf(view).imageAttributes();
+        selectedKernel = Kernel.valueOf(kernel);
+        selectedPrecision = Precision.valueOf(precision);
+        maxIterations = imageAttributes.maxIterations();
+        iterations = new int[BenchmarkView.SIZE];
+    }
+
+    @Benchmark
+    public int[] calc() {
+        selectedPrecision.calc(selectedKernel, imageAttributes, 0, 1, y, maxIterations, iterations);
+        y = (y + 1) % BenchmarkView.SIZE;
+        return iterations;
+    }
+}
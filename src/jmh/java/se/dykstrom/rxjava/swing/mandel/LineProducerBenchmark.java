@@ -0,0 +1,79 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rx.Subscriber;
+
+/**
+ * Measures the time it takes for a {@link LineProducer} to calculate and emit all lines of one tile,
+ * one line or one block of lines at a time. The subscriber recycles the lines, like the view does.
+ *
+ * @author Johan Dykstrom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LineProducerBenchmark {
+
+    @Param({"FULL_SET", "DEEP_EDGE", "INTERIOR"})
+    public String view;
+
+    @Param({"64", "256"})
+    public int tileSize;
+
+    @Param({"1", "16"})
+    public int linesPerItem;
+
+    private Parameters parameters;
+
+    @Setup
+    public void setUp() {
+        // The tile in the middle of the image
+        int first = (BenchmarkView.SIZE - tileSize) / 2;
+        parameters = new Parameters(first, first, tileSize, tileSize, BenchmarkView.valueOf(view).imageAttributes(), null);
+    }
+
+    @Benchmark
+    public void produceLines(Blackhole blackhole) {
+        TileCalculator calculator = new LineByLineCalculator(parameters, Kernel.DEFAULT, new RenderStatistics(tileSize * tileSize));
+        new LineProducer(calculator, new RecyclingSubscriber(blackhole), linesPerItem).request(Long.MAX_VALUE);
+    }
+
+    private static class RecyclingSubscriber extends Subscriber<Line> {
+
+        private final Blackhole blackhole;
+
+        RecyclingSubscriber(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onCompleted() { }
+
+        @Override
+        public void onError(Throwable e) {
+            throw new RuntimeException(e);
+        }
+
+        @Override
+        public void onNext(Line line) {
+            blackhole.consume(line.getRGB());
+            line.recycle();
+        }
+    }
+}
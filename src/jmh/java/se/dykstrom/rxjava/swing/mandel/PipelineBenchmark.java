@@ -0,0 +1,83 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Measures the time it takes to render a whole image, from dividing the image into tiles, through
+ * calculating the tiles in parallel, to consuming and recycling the lines. This is the same pipeline
+ * as in {@link MandelController}, except that the lines are not drawn. A new cache is used for every
+ * image, so nothing is served from the cache.
+ *
+ * @author Johan Dykstrom
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PipelineBenchmark {
+
+    @Param({"FULL_SET", "DEEP_EDGE", "INTERIOR"})
+    public String view;
+
+    @Param({"LINE_BY_LINE", "SUBDIVISION"})
+    public String strategy;
+
+    /** The tile size decides the number of tiles, from 256 tiles of size 32 to 4 tiles of size 256. */
+    @Param({"32", "64", "128", "256"})
+    public int tileSize;
+
+    private ImageAttributes imageAttributes;
+    private RenderStrategy renderStrategy;
+    private Precision precision;
+    private ExecutorService executor;
+    private Scheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        imageAttributes = BenchmarkView.valueOf(view).imageAttributes();
+        renderStrategy = RenderStrategy.valueOf(strategy);
+        precision = Precision.select(imageAttributes, BenchmarkView.SIZE, BenchmarkView.SIZE);
+        executor = Executors.newWorkStealingPool();
+        scheduler = Schedulers.from(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        final int size = BenchmarkView.SIZE;
+        IterationBuffer iterationBuffer = new IterationBuffer(size, size, imageAttributes.maxIterations());
+        RenderStatistics statistics = new RenderStatistics(size * size);
+        Observable<Parameters> paramObs = MandelController.paramObs(tileSize, size, size, imageAttributes, null, iterationBuffer, precision);
+        MandelController.lineObs(paramObs, renderStrategy, scheduler, statistics, new TileCache())
+                .toBlocking()
+                .forEach(line -> {
+                    blackhole.consume(line.getRGB());
+                    line.recycle();
+                });
+    }
+}
@@ -1,8 +1,10 @@
 package se.dykstrom.rxjava.swing.common;
 
 import rx.Observable;
+import se.dykstrom.rxjava.swing.common.sources.DragPanEventSource;
 import se.dykstrom.rxjava.swing.common.sources.HyperlinkEventSource;
 import se.dykstrom.rxjava.swing.common.sources.RubberBandSelectionEventSource;
+import se.dykstrom.rxjava.swing.components.DragPanEvent;
 import se.dykstrom.rxjava.swing.components.RubberBandSelectionEvent;
 
 import javax.swing.*;
@@ -31,4 +33,14 @@ public final class SwingObservables {
     public static Observable<RubberBandSelectionEvent> fromRubberBandSelectionEvents(JComponent component) {
         return RubberBandSelectionEventSource.fromRubberBandSelectionEventsOf(component);
     }
+
+    /**
+     * Creates an Observable corresponding to drag pan events from a {@code JComponent}.
+     *
+     * @param component The {@code JComponent} to register the observable for.
+     * @return Observable emitting the drag pan events.
+     */
+    public static Observable<DragPanEvent> fromDragPanEvents(JComponent component) {
+        return DragPanEventSource.fromDragPanEventsOf(component);
+    }
 }
@@ -0,0 +1,26 @@
+package se.dykstrom.rxjava.swing.common.sources;
+
+import javax.swing.JComponent;
+
+import rx.Observable;
+import rx.schedulers.SwingScheduler;
+import rx.subscriptions.Subscriptions;
+import se.dykstrom.rxjava.swing.common.SwingObservables;
+import se.dykstrom.rxjava.swing.components.DragPanEvent;
+import se.dykstrom.rxjava.swing.components.DragPanListener;
+import se.dykstrom.rxjava.swing.components.DragPanner;
+
+public enum DragPanEventSource { ; // no instances
+
+    /**
+     * @see SwingObservables#fromDragPanEvents(JComponent)
+     */
+    public static Observable<DragPanEvent> fromDragPanEventsOf(JComponent component) {
+        return Observable.create((Observable.OnSubscribe<DragPanEvent>) subscriber -> {
+            DragPanListener listener = subscriber::onNext;
+            DragPanner dragPanner = new DragPanner(component);
+            dragPanner.addDragPanListener(listener);
+            subscriber.add(Subscriptions.create(() -> dragPanner.removeDragPanListener(listener)));
+        }).subscribeOn(SwingScheduler.getInstance()).unsubscribeOn(SwingScheduler.getInstance());
+    }
+}
@@ -0,0 +1,46 @@
+package se.dykstrom.rxjava.swing.components;
+
+import java.awt.Point;
+import java.util.EventObject;
+
+/**
+ * An event which indicates that the user is dragging, or has dragged, the contents of a component.
+ *
+ * @author Johan Dykstrom
+ */
+public class DragPanEvent extends EventObject {
+
+    /** The distance the contents have been dragged, in pixels. */
+    private final Point offset;
+
+    /** True if the user has released the mouse. */
+    private final boolean finished;
+
+    /**
+     * Creates a new drag event with the given source, offset, and state.
+     */
+    DragPanEvent(Object source, Point offset, boolean finished) {
+        super(source);
+        this.offset = offset;
+        this.finished = finished;
+    }
+
+    @Override
+    public String toString() {
+        return DragPanEvent.class.getSimpleName() + "[" + (finished ? "DRAG_FINISHED," : "DRAGGING,") + offset + "] on " + source;
+    }
+
+    /**
+     * Returns the distance the contents have been dragged since the user pressed the mouse.
+     */
+    public Point getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns true if the user has released the mouse, and false if the user is still dragging.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,18 @@
+package se.dykstrom.rxjava.swing.components;
+
+import java.util.EventListener;
+
+/**
+ * Interface to be implemented by classes interested in receiving {@link DragPanEvent}s.
+ *
+ * @author Johan Dykstrom
+ */
+public interface DragPanListener extends EventListener {
+
+    /**
+     * Called whenever the contents are dragged, and when the user releases the mouse.
+     *
+     * @param event The event that characterizes the drag.
+     */
+    void dragged(DragPanEvent event);
+}
@@ -0,0 +1,107 @@
+package se.dykstrom.rxjava.swing.components;
+
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Point;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class enables the user to pan the contents of the given component by dragging them with
+ * the right mouse button. While the user drags, a {@code DragPanEvent} is fired to all registered
+ * {@code DragPanListener}s for each mouse movement, and when the user releases the mouse, a final
+ * event is fired. The offset of each event is the distance from where the mouse was pressed.
+ *
+ * @author Johan Dykstrom
+ * @see DragPanEvent
+ * @see DragPanListener
+ */
+@SuppressWarnings("unused")
+public class DragPanner {
+
+    /** The component to pan. */
+    private final Component component;
+
+    /** The list of registered event listeners. */
+    private final List<DragPanListener> listeners = new ArrayList<>();
+
+    public DragPanner(Component component) {
+        this.component = component;
+
+        // Add mouse event listeners to the component, so we can track mouse movement
+        MouseRecorder recorder = new MouseRecorder();
+        component.addMouseListener(recorder);
+        component.addMouseMotionListener(recorder);
+    }
+
+    /**
+     * Adds the specified listener to receive events from this component.
+     */
+    public void addDragPanListener(DragPanListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes the given listener, so it will no longer receive any events from this component.
+     */
+    public void removeDragPanListener(DragPanListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Fires a {@link DragPanEvent} to all registered listeners.
+     */
+    private void fireDragPanEvent(Point offset, boolean finished) {
+        synchronized (listeners) {
+            for (DragPanListener listener : listeners) {
+                listener.dragged(new DragPanEvent(component, offset, finished));
+            }
+        }
+    }
+
+    /**
+     * Private helper class that records mouse movement while the right mouse button is pressed.
+     *
+     * @author Johan Dykstrom
+     */
+    private class MouseRecorder extends MouseAdapter {
+
+        private int startX, startY;
+
+        /** True while the user is dragging with the right mouse button. */
+        private boolean dragging;
+
+        @Override
+        public void mousePressed(MouseEvent event) {
+            if (SwingUtilities.isRightMouseButton(event)) {
+                startX = event.getX();
+                startY = event.getY();
+                dragging = true;
+                component.setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+            }
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent event) {
+            if (dragging && SwingUtilities.isRightMouseButton(event)) {
+                dragging = false;
+                component.setCursor(Cursor.getDefaultCursor());
+                fireDragPanEvent(new Point(event.getX() - startX, event.getY() - startY), true);
+            }
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent event) {
+            if (dragging) {
+                fireDragPanEvent(new Point(event.getX() - startX, event.getY() - startY), false);
+            }
+        }
+    }
+}
@@ -8,9 +8,10 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import javax.swing.SwingUtilities;
 
 /**
- * This class enables the user to select a rectangular area of the given component using the mouse.
+ * This class enables the user to select a rectangular area of the given component using the left mouse button.
  * A rubber band rectangle is drawn on top of the component to visualize the selected area. When
  * the user releases the mouse, a {@code RubberBandSelectionEvent} is fired to all registered
  * {@code RubberBandSelectionListener}s.
@@ -75,12 +76,19 @@ public class RubberBandSelector {
 
         private int startX,  startY,  lastX,  lastY;
 
+        /** True while the user is selecting with the left mouse button. */
+        private boolean selecting;
+
         /**
          * Records the location of the top-left corner of rectangle, and starts
          * to draw the rubber band rectangle.
          */
         @Override
         public void mousePressed(MouseEvent event) {
+            if (!SwingUtilities.isLeftMouseButton(event)) {
+                return;
+            }
+            selecting = true;
             startX = event.getX();
             startY = event.getY();
             lastX = startX;
@@ -98,6 +106,10 @@ public class RubberBandSelector {
          */
         @Override
         public void mouseReleased(MouseEvent event) {
+            if (!selecting || !SwingUtilities.isLeftMouseButton(event)) {
+                return;
+            }
+            selecting = false;
             Rectangle rectangle = toRectangle(startX, startY, lastX, lastY);
 
             Graphics2D g = (Graphics2D) component.getGraphics();
@@ -115,6 +127,9 @@ public class RubberBandSelector {
          */
         @Override
         public void mouseDragged(MouseEvent event) {
+            if (!selecting) {
+                return;
+            }
             int x = event.getX();
             int y = event.getY();
 
@@ -1,19 +1,54 @@
 package se.dykstrom.rxjava.swing.mandel;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+
 /**
  * Represents the coordinates in the Mandelbrot coordinate space used to calculate the image,
  * or one part of the image.
  *
+ * The coordinates are stored both as doubles, that are used when calculating normal images, and
+ * as BigDecimals, that keep the precision needed to calculate the reference orbit of a deep zoom image.
+ *
  * @author Johan Dykstrom
  */
-record Coordinates(double minX, double minY) {
+record Coordinates(double minX, double minY, BigDecimal preciseMinX, BigDecimal preciseMinY) {
 
     static final Coordinates INITIAL_COORDINATES = new Coordinates(-2.0, -1.5);
 
     static final double INITIAL_SIZE = 3.0;
 
-    Coordinates withMinY(double minY) {
-        return new Coordinates(minX, minY);
+    /** The number of extra digits to keep, in addition to those needed to tell two pixels apart. */
+    private static final int GUARD_DIGITS = 10;
+
+    Coordinates(double minX, double minY) {
+        this(minX, minY, new BigDecimal(minX), new BigDecimal(minY));
+    }
+
+    Coordinates(BigDecimal preciseMinX, BigDecimal preciseMinY) {
+        this(preciseMinX.doubleValue(), preciseMinY.doubleValue(), preciseMinX, preciseMinY);
+    }
+
+    /**
+     * Returns new coordinates, moved the given distance from these coordinates. The new coordinates
+     * are calculated with a precision that is high enough to tell two pixels apart at the given scale.
+     *
+     * @param dx The distance to move in the X direction.
+     * @param dy The distance to move in the Y direction.
+     * @param scale The scale of the image the coordinates will be used for.
+     * @return The new coordinates.
+     */
+    Coordinates translate(double dx, double dy, double scale) {
+        MathContext mc = mathContext(scale);
+        return new Coordinates(preciseMinX.add(new BigDecimal(dx), mc), preciseMinY.add(new BigDecimal(dy), mc));
+    }
+
+    /**
+     * Returns a math context with a precision that is high enough to tell two pixels apart at the given scale.
+     */
+    static MathContext mathContext(double scale) {
+        int digits = (int) Math.ceil(-Math.log10(scale)) + GUARD_DIGITS;
+        return new MathContext(Math.max(MathContext.DECIMAL64.getPrecision(), digits));
     }
 
     @Override
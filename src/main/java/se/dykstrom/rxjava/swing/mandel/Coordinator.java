@@ -0,0 +1,163 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Distributes the tiles of an image over a number of {@link TileWorker} processes. Each tile is calculated
+ * by a {@link RemoteTileCalculator}, that sends the tile to a worker, and turns the escape times that
+ * stream back into lines. If a worker dies in the middle of a tile, the rest of the tile is sent to
+ * another worker. A dead worker is not used again until {@link #RETRY_DELAY_MILLIS} has passed. If
+ * there are no live workers at all, the tiles are calculated locally. A worker that does not send a line
+ * within the read timeout is also considered dead. The timeout in milliseconds can be set with the system
+ * property {@code mandel.worker.timeout}.
+ *
+ * The workers are specified as a comma separated list of host:port pairs in the system property
+ * {@code mandel.workers}.
+ *
+ * @author Johan Dykstrom
+ */
+class Coordinator {
+
+    private static final Logger TLOG = Logger.getLogger(Coordinator.class.getName());
+
+    /** The time to wait before trying a dead worker again. */
+    static final long RETRY_DELAY_MILLIS = 5000;
+
+    /** The default time to wait for a line, before the worker is considered dead. */
+    static final int READ_TIMEOUT_MILLIS = Integer.getInteger("mandel.worker.timeout", 5000);
+
+    /** The number of tiles to send to each worker at the same time. */
+    private static final int TILES_PER_WORKER = Integer.getInteger("mandel.worker.tiles", Runtime.getRuntime().availableProcessors());
+
+    /** The scheduler the remote tiles are calculated on. */
+    private static final Scheduler IO_SCHEDULER = RenderExecutor.VIRTUAL.createScheduler();
+
+    private static Coordinator defaultCoordinator;
+
+    private final List<InetSocketAddress> workers;
+
+    /** The time to wait for a line, before the worker is considered dead. */
+    private final int readTimeoutMillis;
+
+    /** Maps each dead worker to the time when it may be tried again. */
+    private final Map<InetSocketAddress, Long> deadWorkers = new HashMap<>();
+
+    /** The index of the next worker to use. */
+    private int nextIndex;
+
+    /** The number of times a tile has been moved to another worker, because a worker died. */
+    private final AtomicLong reassignments = new AtomicLong();
+
+    Coordinator(List<InetSocketAddress> workers) {
+        this(workers, READ_TIMEOUT_MILLIS);
+    }
+
+    Coordinator(List<InetSocketAddress> workers, int readTimeoutMillis) {
+        this.workers = new ArrayList<>(workers);
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Returns the coordinator for the workers specified in the system property {@code mandel.workers}.
+     */
+    static synchronized Coordinator getDefault() {
+        if (defaultCoordinator == null) {
+            defaultCoordinator = new Coordinator(parseWorkers(System.getProperty("mandel.workers", "")));
+            TLOG.info("Workers = " + defaultCoordinator.workers);
+        }
+        return defaultCoordinator;
+    }
+
+    /**
+     * Parses a comma separated list of host:port pairs.
+     */
+    static List<InetSocketAddress> parseWorkers(String workers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String worker : workers.split(",")) {
+            if (!worker.isBlank()) {
+                String[] parts = worker.trim().split(":");
+                int port = (parts.length > 1) ? Integer.parseInt(parts[1]) : TileWorker.DEFAULT_PORT;
+                addresses.add(new InetSocketAddress(parts[0], port));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Returns an Observable that calculates the tiles emitted by {@code paramObs} on the workers,
+     * and emits the resulting lines. Each tile is stored in the cache when it has been calculated.
+     * The tiles are calculated on virtual threads, since most of the time is spent waiting for
+     * the workers, see {@link RenderExecutor#VIRTUAL}.
+     *
+     * @param paramObs An Observable that emits one Parameters object per tile.
+     * @param statistics The statistics to update while calculating the tiles.
+     * @param cache The cache to store the calculated tiles in.
+     * @return An Observable that emits image lines.
+     */
+    Observable<Line> lineObs(Observable<Parameters> paramObs, RenderStatistics statistics, TileCache cache) {
+        int maxConcurrent = Math.max(1, workers.size()) * TILES_PER_WORKER;
+        return paramObs.flatMap(params -> cache.store(params, LineObservable.blocksFromCalculator(
+                new RemoteTileCalculator(params, Kernel.DEFAULT, statistics, this))
+                .subscribeOn(IO_SCHEDULER)), maxConcurrent);
+    }
+
+    /**
+     * Returns the next live worker to send a tile to, or {@code null} if there are no live workers.
+     */
+    synchronized InetSocketAddress nextWorker() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < workers.size(); i++) {
+            InetSocketAddress worker = workers.get(nextIndex);
+            nextIndex = (nextIndex + 1) % workers.size();
+            Long retryTime = deadWorkers.get(worker);
+            if (retryTime == null || retryTime <= now) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks the given worker as dead, so it will not be used for a while.
+     */
+    synchronized void markDead(InetSocketAddress worker) {
+        TLOG.warning("Worker " + worker + " failed");
+        deadWorkers.put(worker, System.currentTimeMillis() + RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Marks the given worker as alive, after it has answered a request.
+     */
+    synchronized void markAlive(InetSocketAddress worker) {
+        deadWorkers.remove(worker);
+    }
+
+    /**
+     * Records that a tile has been moved to another worker.
+     */
+    void addReassignment() {
+        reassignments.incrementAndGet();
+    }
+
+    int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    long getReassignments() {
+        return reassignments.get();
+    }
+
+    synchronized int getLiveWorkerCount() {
+        long now = System.currentTimeMillis();
+        return (int) workers.stream().filter(worker -> deadWorkers.getOrDefault(worker, 0L) <= now).count();
+    }
+}
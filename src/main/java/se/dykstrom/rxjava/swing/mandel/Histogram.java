@@ -0,0 +1,90 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations, that can be updated from several threads without locking. The durations
+ * are counted in buckets whose limits are powers of two microseconds, so percentiles are only accurate
+ * within a factor of two. That is enough to tell whether a tile took a millisecond or a second, and
+ * recording a duration costs no more than a few atomic increments.
+ *
+ * @author Johan Dykstrom
+ */
+class Histogram {
+
+    /** Bucket i counts durations less than 2^i microseconds, and at least 2^(i-1) microseconds. */
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one duration.
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    double getMeanMillis() {
+        long n = count.get();
+        return (n == 0) ? 0.0 : totalNanos.get() / 1e6 / n;
+    }
+
+    double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded durations, in milliseconds.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     */
+    double getPercentileMillis(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long target = (long) Math.ceil(percentile / 100 * total);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                // No duration in the bucket is larger than the largest duration recorded
+                return Math.min((1L << i) / 1e3, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[count %d, mean %.1f ms, p50 %.1f ms, p99 %.1f ms, max %.1f ms]",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+    }
+}
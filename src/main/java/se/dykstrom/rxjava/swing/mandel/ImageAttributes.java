@@ -6,14 +6,51 @@ import static se.dykstrom.rxjava.swing.mandel.MandelPanel.INITIAL_IMAGE_SIZE;
 
 /**
  * Defines attributes needed to draw an image, that is coordinates for the upper left corner in the Mandelbrot
- * coordinate space, and a scale to convert between Mandelbrot coordinates and pixels.
+ * coordinate space, a scale to convert between Mandelbrot coordinates and pixels, and the palette used to
+ * convert escape times to colors.
  */
-public record ImageAttributes(Coordinates coordinates, double scale) {
+public record ImageAttributes(Coordinates coordinates, double scale, Palette palette) {
 
     static final ImageAttributes INITIAL_ATTRIBUTES = new ImageAttributes(INITIAL_COORDINATES, INITIAL_SIZE / INITIAL_IMAGE_SIZE);
 
+    /** Images with a scale smaller than this cannot be calculated with doubles, but need deep zoom. */
+    static final double DEEP_ZOOM_SCALE = 1e-12;
+
+    /** The maximum number of iterations for images that do not need deep zoom. */
+    static final int NUM_ITERATIONS = 100;
+
+    /** The upper limit for the maximum number of iterations, however deep we zoom. */
+    static final int MAX_NUM_ITERATIONS = 50_000;
+
+    public ImageAttributes(Coordinates coordinates, double scale) {
+        this(coordinates, scale, Palette.DEFAULT);
+    }
+
     public ImageAttributes withCoordinates(Coordinates coordinates) {
-        return new ImageAttributes(coordinates, scale);
+        return new ImageAttributes(coordinates, scale, palette);
+    }
+
+    public ImageAttributes withPalette(Palette palette) {
+        return new ImageAttributes(coordinates, scale, palette);
+    }
+
+    /**
+     * Returns true if this image is zoomed in so deeply that it must be calculated using perturbation theory.
+     */
+    boolean isDeepZoom() {
+        return scale < DEEP_ZOOM_SCALE;
+    }
+
+    /**
+     * Returns the maximum number of iterations to use when calculating this image. Deep zoom images
+     * show finer details, and need more iterations the deeper they are zoomed in.
+     */
+    int maxIterations() {
+        if (!isDeepZoom()) {
+            return NUM_ITERATIONS;
+        }
+        double depth = Math.log10(DEEP_ZOOM_SCALE / scale);
+        return (int) Math.min(MAX_NUM_ITERATIONS, NUM_ITERATIONS * (1 + depth));
     }
 
     @Override
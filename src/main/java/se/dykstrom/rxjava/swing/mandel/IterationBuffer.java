@@ -0,0 +1,136 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.stream.IntStream;
+
+/**
+ * Stores the escape times of all pixels in one image. The escape times are the raw output of the
+ * calculation, and the RGB colors of the image can be recreated from them at any time, for example
+ * when the palette is changed, without calculating the image again.
+ *
+ * The escape times are stored as 16-bit values, which is enough since the maximum number of iterations
+ * is limited to {@link ImageAttributes#MAX_NUM_ITERATIONS}. Different threads may store the escape
+ * times of different tiles at the same time, but the tiles must not overlap.
+ *
+ * A buffer may also cover only a part of an image, for example a single tile, in which case its origin
+ * is the image position of its upper left pixel. All positions are still given in image coordinates.
+ *
+ * @author Johan Dykstrom
+ */
+class IterationBuffer {
+
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final int maxIterations;
+
+    /** The escape times of all pixels, line by line. */
+    private final char[] iterations;
+
+    IterationBuffer(int width, int height, int maxIterations) {
+        this(0, 0, width, height, maxIterations);
+    }
+
+    /**
+     * Creates a buffer that covers the rectangle of the image with the given origin and size.
+     */
+    IterationBuffer(int originX, int originY, int width, int height, int maxIterations) {
+        if (maxIterations > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("max iterations too large: " + maxIterations);
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+        this.maxIterations = maxIterations;
+        this.iterations = new char[width * height];
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns the escape time of the pixel at the given position.
+     */
+    int get(int x, int y) {
+        return iterations[index(x, y)];
+    }
+
+    /**
+     * Stores the escape times of a number of consecutive pixels on one line.
+     *
+     * @param x The X position of the first pixel.
+     * @param y The Y position of the line.
+     * @param source The array to copy the escape times from.
+     * @param offset The offset in the source array of the first escape time.
+     * @param length The number of pixels to store.
+     */
+    void set(int x, int y, int[] source, int offset, int length) {
+        int index = index(x, y);
+        for (int i = 0; i < length; i++) {
+            iterations[index + i] = (char) source[offset + i];
+        }
+    }
+
+    /**
+     * Copies the escape times of a number of consecutive pixels on one line to the given array.
+     */
+    void get(int x, int y, int[] destination, int offset, int length) {
+        int index = index(x, y);
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = iterations[index + i];
+        }
+    }
+
+    /**
+     * Returns a copy of the escape times of all pixels in the given rectangle, line by line.
+     */
+    char[] copyOf(int x, int y, int width, int height) {
+        char[] copy = new char[width * height];
+        for (int line = 0; line < height; line++) {
+            System.arraycopy(iterations, index(x, y + line), copy, line * width, width);
+        }
+        return copy;
+    }
+
+    /**
+     * Stores the escape times of all pixels in the given rectangle, copied from an array
+     * returned by {@link #copyOf(int, int, int, int)}.
+     */
+    void set(int x, int y, int width, int height, char[] source) {
+        for (int line = 0; line < height; line++) {
+            System.arraycopy(source, line * width, iterations, index(x, y + line), width);
+        }
+    }
+
+    /**
+     * Returns the index in the escape time array of the pixel at the given image position.
+     */
+    private int index(int x, int y) {
+        return (y - originY) * width + (x - originX);
+    }
+
+    /**
+     * Converts the escape times of all pixels to RGB colors using the given palette, and stores them
+     * in the given array, line by line. The lines are converted in parallel.
+     *
+     * @param palette The palette to use.
+     * @param rgb The array to store the RGB colors in, with one element per pixel.
+     */
+    void toRGB(Palette palette, int[] rgb) {
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int index = y * width; index < (y + 1) * width; index++) {
+                rgb[index] = palette.toRGB(iterations[index], maxIterations);
+            }
+        });
+    }
+}
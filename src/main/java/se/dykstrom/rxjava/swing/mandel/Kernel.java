@@ -0,0 +1,235 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.logging.Logger;
+
+/**
+ * The kernels that can be used to calculate the "escape times" of one line of pixels.
+ * All kernels produce exactly the same result, they only differ in speed. Each kernel can calculate
+ * with doubles, or with floats, see {@link Precision}. With floats, the vector kernel processes twice
+ * as many pixels in each run.
+ *
+ * The kernel to use can be selected with the system property {@code mandel.kernel}.
+ * If no kernel is selected, the vector kernel is used if the Vector API is available,
+ * and otherwise the scalar kernel.
+ *
+ * @author Johan Dykstrom
+ */
+enum Kernel {
+
+    /**
+     * Calculates one pixel at a time. Works on all platforms.
+     */
+    SCALAR {
+        @Override
+        void calc(double minX, int firstX, int step, double y0, double scale, int maxIterations, int[] iterations) {
+            for (int x = 0; x < iterations.length; x++) {
+                iterations[x] = Kernel.calc(minX + (firstX + x * step) * scale, y0, maxIterations);
+            }
+        }
+
+        @Override
+        void calcFloat(float minX, int firstX, int step, float y0, float scale, int maxIterations, int[] iterations) {
+            for (int x = 0; x < iterations.length; x++) {
+                iterations[x] = Kernel.calcFloat(minX + (firstX + x * step) * scale, y0, maxIterations);
+            }
+        }
+    },
+
+    /**
+     * Calculates a whole run of pixels at a time using the Vector API, which must be added
+     * to the module graph with the JVM option {@code --add-modules jdk.incubator.vector}.
+     */
+    VECTOR {
+        @Override
+        void calc(double minX, int firstX, int step, double y0, double scale, int maxIterations, int[] iterations) {
+            VectorKernel.calc(minX, firstX, step, y0, scale, maxIterations, iterations);
+        }
+
+        @Override
+        void calcFloat(float minX, int firstX, int step, float y0, float scale, int maxIterations, int[] iterations) {
+            VectorKernel.calcFloat(minX, firstX, step, y0, scale, maxIterations, iterations);
+        }
+    };
+
+    private static final Logger TLOG = Logger.getLogger(Kernel.class.getName());
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** The kernel to use if nothing else is specified. */
+    static final Kernel DEFAULT = defaultKernel();
+
+    /**
+     * Calculates the "escape time" of each pixel in one line of the image, or one line of a tile, and
+     * stores it in the given array. Only every step:th pixel is calculated, and the X start value of
+     * element x in the array is {@code minX + (firstX + x * step) * scale}. Calculating the X start value
+     * from the left edge of the image, rather than from the left edge of the tile, makes the result
+     * independent of how the image is divided into tiles.
+     *
+     * @param minX The X start value of the first pixel in the image.
+     * @param firstX The X position of the first pixel in the line.
+     * @param step The distance in pixels between two calculated pixels.
+     * @param y0 The Y start value of all pixels in the line.
+     * @param scale The distance between two pixels in the Mandelbrot coordinate space.
+     * @param maxIterations The maximum number of iterations.
+     * @param iterations The array to store the escape times in, one element per pixel.
+     */
+    abstract void calc(double minX, int firstX, int step, double y0, double scale, int maxIterations, int[] iterations);
+
+    /**
+     * Calculates the "escape time" of each pixel in one line of the image using floats, which is faster,
+     * but only precise enough for images that are not zoomed in very much.
+     *
+     * @see #calc(double, int, int, double, double, int, int[])
+     */
+    abstract void calcFloat(float minX, int firstX, int step, float y0, float scale, int maxIterations, int[] iterations);
+
+    /**
+     * Returns the "escape time" for the given point, that is, the number of iterations it takes
+     * before the point reaches the escape condition. A point that does not reach the escape
+     * condition within "the maximum number of iterations" is said to belong to the Mandelbrot set.
+     * See also <a href="http://en.wikipedia.org/wiki/Mandelbrot_set">Wikipedia</a>.
+     *
+     * Points inside the set are the most expensive to calculate, since they use up all iterations.
+     * To find them early, points in the main cardioid and the period-2 bulb are detected analytically,
+     * and the orbit of all other points is checked for cycles using Brent's method: the orbit point
+     * is saved at iteration 1, 2, 4, 8, and so on, and compared to every following orbit point. If the
+     * orbit returns exactly to a saved point, it will repeat forever, and never escape. This gives
+     * exactly the same result as iterating until the maximum number of iterations.
+     *
+     * @param x0 The X start value.
+     * @param y0 The Y start value.
+     * @param maxIterations The maximum number of iterations.
+     * @return The "escape time" of the given point.
+     */
+    static int calc(double x0, double y0, int maxIterations) {
+        if (isInCardioidOrBulb(x0, y0)) {
+            return maxIterations;
+        }
+
+        double x = x0;
+        double y = y0;
+
+        // The orbit point saved for cycle detection, and the iteration when to save the next one
+        double savedX = x;
+        double savedY = y;
+        int nextSave = 1;
+
+        int iteration = 0;
+
+        while ((x * x + y * y <= (2 * 2)) && (iteration < maxIterations)) {
+            double tempX = x * x - y * y + x0;
+            y = 2 * x * y + y0;
+            x = tempX;
+            iteration++;
+
+            if (x == savedX && y == savedY) {
+                return maxIterations;
+            }
+            if (iteration == nextSave) {
+                savedX = x;
+                savedY = y;
+                nextSave *= 2;
+            }
+        }
+
+        return iteration;
+    }
+
+    /**
+     * Returns the "escape time" for the given point, calculated using floats.
+     *
+     * @see #calc(double, double, int)
+     */
+    static int calcFloat(float x0, float y0, int maxIterations) {
+        if (isInCardioidOrBulb(x0, y0)) {
+            return maxIterations;
+        }
+
+        float x = x0;
+        float y = y0;
+
+        // The orbit point saved for cycle detection, and the iteration when to save the next one
+        float savedX = x;
+        float savedY = y;
+        int nextSave = 1;
+
+        int iteration = 0;
+
+        while ((x * x + y * y <= (2 * 2)) && (iteration < maxIterations)) {
+            float tempX = x * x - y * y + x0;
+            y = 2 * x * y + y0;
+            x = tempX;
+            iteration++;
+
+            if (x == savedX && y == savedY) {
+                return maxIterations;
+            }
+            if (iteration == nextSave) {
+                savedX = x;
+                savedY = y;
+                nextSave *= 2;
+            }
+        }
+
+        return iteration;
+    }
+
+    /**
+     * Returns true if the given point is inside the main cardioid, or inside the period-2 bulb,
+     * of the Mandelbrot set. All such points belong to the Mandelbrot set.
+     *
+     * @param x0 The X start value.
+     * @param y0 The Y start value.
+     * @return True if the point is in the main cardioid or the period-2 bulb.
+     */
+    static boolean isInCardioidOrBulb(double x0, double y0) {
+        double yy = y0 * y0;
+        double xm = x0 - 0.25;
+        double q = xm * xm + yy;
+        if (q * (q + xm) <= yy * 0.25) {
+            return true;
+        }
+        double xp = x0 + 1;
+        return xp * xp + yy <= 0.0625;
+    }
+
+    /**
+     * Returns true if the given point is inside the main cardioid, or inside the period-2 bulb,
+     * calculated using floats.
+     *
+     * @see #isInCardioidOrBulb(double, double)
+     */
+    static boolean isInCardioidOrBulb(float x0, float y0) {
+        float yy = y0 * y0;
+        float xm = x0 - 0.25f;
+        float q = xm * xm + yy;
+        if (q * (q + xm) <= yy * 0.25f) {
+            return true;
+        }
+        float xp = x0 + 1;
+        return xp * xp + yy <= 0.0625f;
+    }
+
+    /**
+     * Returns true if the Vector API module is present in the boot layer.
+     */
+    static boolean isVectorApiAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    private static Kernel defaultKernel() {
+        String name = System.getProperty("mandel.kernel");
+        Kernel kernel;
+        if (name != null) {
+            kernel = valueOf(name.toUpperCase());
+        } else {
+            kernel = isVectorApiAvailable() ? VECTOR : SCALAR;
+        }
+        if (kernel == VECTOR && !isVectorApiAvailable()) {
+            TLOG.warning("Module " + VECTOR_MODULE + " not available, falling back to scalar kernel");
+            kernel = SCALAR;
+        }
+        TLOG.info("Using kernel " + kernel);
+        return kernel;
+    }
+}
@@ -1,17 +1,39 @@
 package se.dykstrom.rxjava.swing.mandel;
 
 /**
- * Contains RGB color data for a single line in an image.
+ * Contains RGB color data for a single line in an image, or a single line in one tile of an image.
+ * See also {@link LineBlock}, that contains several consecutive lines.
+ *
+ * A line may belong to a {@link LinePool}. Such a line should be recycled when it has been drawn,
+ * and must not be used after that.
  */
 class Line {
 
-    private final int y;
+    private int x;
+
+    private int y;
 
     private final int[] rgb;
 
-    Line(int y, int[] rgb) {
+    /** The pool this line belongs to, or {@code null} if it is not pooled. */
+    private final LinePool pool;
+
+    Line(int x, int y, int[] rgb) {
+        this(x, y, rgb, null);
+    }
+
+    Line(int x, int y, int[] rgb, LinePool pool) {
+        this.x = x;
         this.y = y;
         this.rgb = rgb;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the X position of the first pixel in the line.
+     */
+    int getX() {
+        return x;
     }
 
     /**
@@ -21,10 +43,41 @@ class Line {
         return y;
     }
 
+    /**
+     * Returns the number of pixels in each line.
+     */
+    int getWidth() {
+        return rgb.length;
+    }
+
+    /**
+     * Returns the number of lines, which is always 1 for a single line.
+     */
+    int getHeight() {
+        return 1;
+    }
+
     /**
      * Returns an array of RGB color data for this line.
      */
     int[] getRGB() {
         return rgb;
     }
+
+    /**
+     * Moves a pooled line to a new position, before it is reused.
+     */
+    void moveTo(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Returns this line to its pool, if it belongs to one.
+     */
+    void recycle() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Contains RGB color data for a block of consecutive lines in one tile of an image. The block is emitted
+ * as a single item, which spreads the overhead of emitting an item over several lines. The RGB colors
+ * of all lines are stored in one array, line by line, and {@link #getY()} returns the first line number.
+ *
+ * A pooled block may be reused for another block of the same total size, but with a different shape.
+ *
+ * @author Johan Dykstrom
+ */
+class LineBlock extends Line {
+
+    private int width;
+
+    private int height;
+
+    LineBlock(int x, int y, int width, int height, int[] rgb, LinePool pool) {
+        super(x, y, rgb, pool);
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    int getWidth() {
+        return width;
+    }
+
+    @Override
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Moves and reshapes a pooled block, before it is reused. The total size must be the same.
+     */
+    void moveTo(int x, int y, int width, int height) {
+        moveTo(x, y);
+        this.width = width;
+        this.height = height;
+    }
+}
@@ -0,0 +1,35 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Calculates the lines of a tile one at a time, from top to bottom, at full resolution.
+ *
+ * @author Johan Dykstrom
+ */
+class LineByLineCalculator extends TileCalculator {
+
+    LineByLineCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics) {
+        super(parameters, kernel, statistics);
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        // Calculate the escape times, and then convert them to RGB colors in place
+        final Line line = acquireLine(y);
+        final int[] rgb = line.getRGB();
+        calcEscapeTimes(0, 1, y, rgb);
+        if (isCancelled()) {
+            line.recycle();
+            return null;
+        }
+        storeIterations(y, rgb, 0);
+        for (int x = 0; x < rgb.length; x++) {
+            rgb[x] = toRGB(rgb[x]);
+        }
+        return line;
+    }
+}
@@ -4,8 +4,19 @@ import rx.Observable;
 
 final class LineObservable {
 
+    /** The approximate number of pixels to emit in each block of lines. */
+    private static final int BLOCK_PIXELS = Integer.getInteger("mandel.block.pixels", 4096);
+
     private LineObservable() { }
 
+    /**
+     * Returns the number of lines to emit in each block, for tiles of the given width. Narrow tiles get
+     * more lines per block, so the number of pixels emitted in each item stays about the same.
+     */
+    static int linesPerBlock(int width) {
+        return Math.max(1, BLOCK_PIXELS / Math.max(1, width));
+    }
+
     /**
      * Returns an Observable that emits a number of {@link Line} objects that together make up
      * one segment of the image. The lines are calculated by a {@link LineProducer}.
@@ -16,4 +27,30 @@ final class LineObservable {
     static Observable<Line> fromParameters(Parameters parameters) {
         return Observable.create(subscriber -> subscriber.setProducer(new LineProducer(parameters, subscriber)));
     }
+
+    /**
+     * Returns an Observable that emits the {@link Line} objects calculated by the given {@link TileCalculator}.
+     * The lines are emitted by a {@link LineProducer}. Since the calculator may keep state between lines,
+     * the returned Observable can only be subscribed to once.
+     *
+     * @param calculator The calculator that calculates the lines.
+     * @return An Observable that emits image lines.
+     */
+    static Observable<Line> fromCalculator(TileCalculator calculator) {
+        return Observable.create(subscriber -> subscriber.setProducer(new LineProducer(calculator, subscriber)));
+    }
+
+    /**
+     * Returns an Observable that emits the lines calculated by the given {@link TileCalculator} in blocks,
+     * see {@link LineBlock}. Each block contains {@link #linesPerBlock(int)} lines, except perhaps the last
+     * one, and counts as one item when handling backpressure. Since the calculator may keep state between
+     * lines, the returned Observable can only be subscribed to once.
+     *
+     * @param calculator The calculator that calculates the lines.
+     * @return An Observable that emits blocks of image lines.
+     */
+    static Observable<Line> blocksFromCalculator(TileCalculator calculator) {
+        final int linesPerBlock = linesPerBlock(calculator.parameters.getWidth());
+        return Observable.create(subscriber -> subscriber.setProducer(new LineProducer(calculator, subscriber, linesPerBlock)));
+    }
 }
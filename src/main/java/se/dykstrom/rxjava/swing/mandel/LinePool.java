@@ -0,0 +1,118 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of {@link Line} objects, that makes it possible to draw images without allocating new lines
+ * and RGB arrays for every line of every image. Lines are acquired by the tile calculators, and
+ * recycled by the view when they have been drawn. Lines that are never recycled, for example because
+ * the image was cancelled, are simply left to the garbage collector.
+ *
+ * The pool keeps one ring of lines per line width. The rings are bounded, so the memory used by the
+ * pool is limited even if many lines are recycled at once. Lines wider than {@link #MAX_WIDTH} are
+ * not pooled at all. Blocks of lines, see {@link LineBlock}, are kept in separate rings, indexed by
+ * the total number of pixels in the block.
+ *
+ * This class is thread safe.
+ *
+ * @author Johan Dykstrom
+ */
+class LinePool {
+
+    /** The widest line that is pooled. */
+    static final int MAX_WIDTH = 8192;
+
+    /** The pool shared by all tile calculators. */
+    static final LinePool SHARED = new LinePool();
+
+    /** The largest block, in pixels, that is pooled. */
+    static final int MAX_BLOCK_SIZE = 2 * MAX_WIDTH;
+
+    /** The maximum number of lines in one ring. */
+    private static final int MAX_LINES = 1024;
+
+    /** The approximate maximum memory used by the lines in one ring. */
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+
+    /** The rings of free lines, indexed by line width, and created when first needed. */
+    private final AtomicReferenceArray<ArrayBlockingQueue<Line>> rings = new AtomicReferenceArray<>(MAX_WIDTH + 1);
+
+    /** The rings of free blocks, indexed by block size, and created when first needed. */
+    private final AtomicReferenceArray<ArrayBlockingQueue<Line>> blockRings = new AtomicReferenceArray<>(MAX_BLOCK_SIZE + 1);
+
+    /**
+     * Returns a line with the given position and width. The contents of the RGB array are undefined,
+     * and must be overwritten by the caller.
+     */
+    Line acquire(int x, int y, int width) {
+        Line line = null;
+        if (width <= MAX_WIDTH) {
+            line = ring(rings, width).poll();
+        }
+        if (line == null) {
+            line = new Line(x, y, new int[width], this);
+        } else {
+            line.moveTo(x, y);
+        }
+        return line;
+    }
+
+    /**
+     * Returns a block of lines with the given position, width, and height. The contents of the RGB array
+     * are undefined, and must be overwritten by the caller.
+     */
+    LineBlock acquireBlock(int x, int y, int width, int height) {
+        int size = width * height;
+        LineBlock block = null;
+        if (size <= MAX_BLOCK_SIZE) {
+            block = (LineBlock) ring(blockRings, size).poll();
+        }
+        if (block == null) {
+            block = new LineBlock(x, y, width, height, new int[size], this);
+        } else {
+            block.moveTo(x, y, width, height);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the given line, or block of lines, to the pool. If the ring for this size is full, the line is dropped.
+     */
+    void release(Line line) {
+        int size = line.getRGB().length;
+        if (line instanceof LineBlock) {
+            if (size <= MAX_BLOCK_SIZE) {
+                ring(blockRings, size).offer(line);
+            }
+        } else if (size <= MAX_WIDTH) {
+            ring(rings, size).offer(line);
+        }
+    }
+
+    /**
+     * Returns the number of free lines of the given width.
+     */
+    int getFreeLines(int width) {
+        ArrayBlockingQueue<Line> ring = rings.get(width);
+        return (ring == null) ? 0 : ring.size();
+    }
+
+    /**
+     * Returns the number of free blocks with the given size in pixels.
+     */
+    int getFreeBlocks(int size) {
+        ArrayBlockingQueue<Line> ring = blockRings.get(size);
+        return (ring == null) ? 0 : ring.size();
+    }
+
+    private static ArrayBlockingQueue<Line> ring(AtomicReferenceArray<ArrayBlockingQueue<Line>> rings, int size) {
+        ArrayBlockingQueue<Line> ring = rings.get(size);
+        if (ring == null) {
+            int capacity = Math.max(1, Math.min(MAX_LINES, MAX_BYTES / (size * Integer.BYTES + 1)));
+            rings.compareAndSet(size, null, new ArrayBlockingQueue<>(capacity));
+            ring = rings.get(size);
+        }
+        return ring;
+    }
+}
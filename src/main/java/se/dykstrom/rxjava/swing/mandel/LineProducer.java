@@ -1,6 +1,5 @@
 package se.dykstrom.rxjava.swing.mandel;
 
-import java.awt.Color;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
@@ -8,6 +7,7 @@ import java.util.logging.Logger;
 import rx.Producer;
 import rx.Subscriber;
 import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
 
 /**
  * A {@link Producer} class that produces the lines to be emitted by the LineObservable.
@@ -24,36 +24,49 @@ class LineProducer implements Producer {
 
     private static final Logger TLOG = Logger.getLogger(LineProducer.class.getName());
 
-    private static final int NUM_ITERATIONS = 100;
-
-    /** The RGB colors to use when drawing the image. */
-    private static final int[] COLORS = new int[256 * 2];
+    private final TileCalculator calculator;
+    private final Subscriber<? super Line> subscriber;
 
-    /** The factor used to convert the "escape time" value to an RGB color. */
-    private static final double FACTOR = (double) (COLORS.length - 1) / NUM_ITERATIONS;
+    /** The number of lines to emit in each item, 1 for single lines, or more for blocks of lines. */
+    private final int linesPerItem;
 
-    static {
-        int index = 0;
-        for (int red = 0; red < 256; red++) {
-            COLORS[index++] = (new Color(red, 0, 0)).getRGB();
-        }
-        for (int green = 0; green < 256; green++) {
-            COLORS[index++] = (new Color(255, green, 0)).getRGB();
-        }
-    }
-
-    private final Parameters parameters;
-    private final Subscriber<? super Line> subscriber;
+    /** The number of items to emit. */
+    private final int itemCount;
 
     /** The number of requested lines. */
     private final AtomicLong requested = new AtomicLong(0);
-    /** The Y value (line number) to use in next request. */
-    private final AtomicInteger nextY = new AtomicInteger(0);
+    /** The index of the line to use in next request. */
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    /** The time when the producer was created, that is, when the tile was taken from the queue. */
+    private final long startNanos = System.nanoTime();
 
     public LineProducer(Parameters parameters, Subscriber<? super Line> subscriber) {
-        TLOG.info("Creating producer from parameters " + parameters + " on thread " + Thread.currentThread().getName());
-        this.parameters = parameters;
+        this(parameters, subscriber, Kernel.DEFAULT);
+    }
+
+    LineProducer(Parameters parameters, Subscriber<? super Line> subscriber, Kernel kernel) {
+        this(new LineByLineCalculator(parameters, kernel, new RenderStatistics(parameters.getWidth() * (long) parameters.getHeight())), subscriber);
+    }
+
+    LineProducer(TileCalculator calculator, Subscriber<? super Line> subscriber) {
+        this(calculator, subscriber, 1);
+    }
+
+    /**
+     * Creates a producer that emits the lines calculated by the given calculator in blocks of
+     * {@code linesPerItem} lines, see {@link LineBlock}. Each block counts as one item when
+     * handling backpressure. The last block of the tile may have fewer lines.
+     */
+    LineProducer(TileCalculator calculator, Subscriber<? super Line> subscriber, int linesPerItem) {
+        TLOG.fine("Creating producer from parameters " + calculator.parameters + " on thread " + Thread.currentThread().getName());
+        this.calculator = calculator;
         this.subscriber = subscriber;
+        this.linesPerItem = linesPerItem;
+        this.itemCount = (calculator.getLineCount() + linesPerItem - 1) / linesPerItem;
+
+        // Stop calculating as soon as the subscriber unsubscribes, the calculator checks after each chunk of pixels
+        subscriber.add(Subscriptions.create(calculator::cancel));
     }
 
     @Override
@@ -72,26 +85,28 @@ class LineProducer implements Producer {
     }
 
     private void fastPath() {
-        for (int y = 0; y < parameters.getHeight(); y++) {
-            if (!subscriber.isUnsubscribed()) produceLine(y);
+        for (int index = 0; index < itemCount && !subscriber.isUnsubscribed(); index++) {
+            produceItem(index);
         }
-        if (!subscriber.isUnsubscribed()) subscriber.onCompleted();
+        if (!subscriber.isUnsubscribed()) complete();
     }
 
     private void slowPath(long r) {
-        int height = parameters.getHeight();
         while (true) {
-            // Get y to start with this time, and increase with number of requested for next time
-            int y = nextY.getAndAdd((int) r);
+            // Get index to start with this time, and increase with number of requested for next time
+            int index = nextIndex.getAndAdd((int) r);
 
-            boolean complete = y < height && nextY.get() >= height;
+            boolean complete = index < itemCount && nextIndex.get() >= itemCount;
 
-            for (int count = 0; count < r && y < height; count++, y++) {
-                produceLine(y);
+            for (int count = 0; count < r && index < itemCount; count++, index++) {
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+                produceItem(index);
             }
 
             if (complete) {
-                if (!subscriber.isUnsubscribed()) subscriber.onCompleted();
+                if (!subscriber.isUnsubscribed()) complete();
             }
 
             // Now we have produced the number of requested lines, so reduce 'requested' with that
@@ -104,45 +119,56 @@ class LineProducer implements Producer {
     }
 
     /**
-     * Produces a single line, and emits it to the subscriber.
+     * Records the time it took to calculate the tile, and signals completion to the subscriber.
+     */
+    private void complete() {
+        calculator.statistics.addTile(calculator.queuedNanos, startNanos, System.nanoTime());
+        subscriber.onCompleted();
+    }
+
+    /**
+     * Produces a single line, or a block of lines, and emits it to the subscriber.
      *
-     * @param y The line number of the line to produce.
+     * @param index The index of the item to produce.
      */
-    private void produceLine(int y) {
-        Coordinates coordinates = parameters.getImageAttributes().coordinates();
-        double scale = parameters.getImageAttributes().scale();
-
-        final int[] rgb = new int[parameters.getWidth()];
-        for (int x = 0; x < rgb.length; x++) {
-            int escapeTime = NUM_ITERATIONS - calc(coordinates.minX() + x * scale, coordinates.minY() + y * scale);
-            rgb[x] = COLORS[(int) (escapeTime * FACTOR)];
+    private void produceItem(int index) {
+        Line item = (linesPerItem == 1) ? calculator.calculateLine(index) : produceBlock(index * linesPerItem);
+        if (item != null) {
+            if (subscriber.isUnsubscribed()) {
+                item.recycle();
+            } else {
+                subscriber.onNext(item);
+            }
         }
-        if (!subscriber.isUnsubscribed()) subscriber.onNext(new Line(y + parameters.getFirstY(), rgb));
     }
 
     /**
-     * Returns the "escape time" for the given point, that is, the number of iterations it takes
-     * before the point reaches the escape condition. A point that does not reach the escape
-     * condition within "the maximum number of iterations" is said to belong to the Mandelbrot set.
-     * See also <a href="http://en.wikipedia.org/wiki/Mandelbrot_set">Wikipedia</a>.
+     * Produces a block of lines, starting with the line with the given index. The lines are copied
+     * to the block, and then recycled. If the calculation is cancelled, the block is recycled too.
      *
-     * @param x0 The X start value.
-     * @param y0 The Y start value.
-     * @return The "escape time" of the given point.
+     * @param firstIndex The index of the first line in the block.
+     * @return The block, or {@code null} if the calculation was cancelled.
      */
-    private int calc(double x0, double y0) {
-        double x = x0;
-        double y = y0;
-
-        int iteration = 0;
-
-        while ((x * x + y * y <= (2 * 2)) && (iteration < NUM_ITERATIONS)) {
-            double tempX = x * x - y * y + x0;
-            y = 2 * x * y + y0;
-            x = tempX;
-            iteration++;
+    private LineBlock produceBlock(int firstIndex) {
+        final int height = Math.min(linesPerItem, calculator.getLineCount() - firstIndex);
+        LineBlock block = null;
+        for (int i = 0; i < height; i++) {
+            Line line = calculator.calculateLine(firstIndex + i);
+            if (line == null || subscriber.isUnsubscribed()) {
+                if (line != null) {
+                    line.recycle();
+                }
+                if (block != null) {
+                    block.recycle();
+                }
+                return null;
+            }
+            if (block == null) {
+                block = LinePool.SHARED.acquireBlock(line.getX(), line.getY(), line.getWidth(), height);
+            }
+            System.arraycopy(line.getRGB(), 0, block.getRGB(), i * line.getWidth(), line.getWidth());
+            line.recycle();
         }
-
-        return iteration;
+        return block;
     }
 }
@@ -4,18 +4,22 @@ import javax.swing.*;
 
 /**
  * This is the main class of the Mandelbrot application. It takes one optional command line argument,
- * and that is the number of segments to divide the image into when drawing. All image segments are
- * calculated in parallel and put together when actually drawing them. The default number of segments
- * is 1.
+ * and that is the width and height of the tiles to divide the image into when drawing. All tiles are
+ * calculated in parallel and put together when actually drawing them. The default tile size is 64.
  *
  * @author Johan Dykstrom
  */
 class Mandel {
+
+    /** The default width and height of the image tiles. */
+    static final int DEFAULT_TILE_SIZE = 64;
+
     public static void main(String[] args) {
-        int segments = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+        int tileSize = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TILE_SIZE;
+        RenderMetrics.register();
         SwingUtilities.invokeLater(() -> {
             MandelView view = new MandelView();
-            new MandelController(view, segments);
+            new MandelController(view, tileSize);
             view.setVisible(true);
             view.setLocationRelativeTo(null);
         });
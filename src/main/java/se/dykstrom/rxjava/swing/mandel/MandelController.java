@@ -1,15 +1,21 @@
 package se.dykstrom.rxjava.swing.mandel;
 
 import java.awt.Dimension;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import rx.Observable;
-import rx.schedulers.Schedulers;
+import rx.Scheduler;
 import se.dykstrom.rxjava.swing.components.RubberBandSelectionEvent;
 
 class MandelController {
@@ -18,15 +24,53 @@ class MandelController {
 
     private final MandelView view;
 
-    /** The number of segments to divide the image into. */
-    private final int segments;
+    /** The width and height of the tiles to divide the image into. */
+    private final int tileSize;
+
+    /**
+     * The scheduler used to calculate the tiles. The tasks are executed by a pool of their own, by default
+     * a work stealing pool, so idle threads can pick up new tiles as long as there are any left.
+     */
+    private final Scheduler scheduler = RenderExecutor.DEFAULT.createScheduler();
+
+    /** The strategy used to calculate the tiles. */
+    private RenderStrategy strategy = RenderStrategy.LINE_BY_LINE;
+
+    /** The order in which the tiles are calculated. */
+    private TileOrder order = TileOrder.DEFAULT;
 
     /** Stack used to store undo objects, that is, {@code ImageAttributes} objects.  */
     private final Stack<ImageAttributes> undoStack = new Stack<>();
 
-    public MandelController(MandelView view, int segments) {
+    /** Stack used to store redo objects, that is, images that have been undone. */
+    private final Stack<ImageAttributes> redoStack = new Stack<>();
+
+    /** The total number of pixels that did not have to be calculated because a render was cancelled. */
+    private long avoidedPixels;
+
+    /** Cache of calculated tiles, used to redraw images that have been drawn before, also after a restart. */
+    private final TileCache cache;
+
+    /** True if images are drawn using a tile pyramid, see {@link TilePyramid}. */
+    private boolean pyramid = Boolean.getBoolean("mandel.pyramid");
+
+    /** Calculates the tiles of the views the user is likely to look at next, while the application is idle. */
+    private final Prefetcher prefetcher;
+
+    /**
+     * The attributes and size of the image drawn in the view, or null if its pixels cannot be kept when
+     * the next image is drawn. Images drawn using the tile pyramid are always drawn from the cache.
+     */
+    private ImageAttributes shownAttributes;
+    private Dimension shownSize;
+
+    public MandelController(MandelView view, int tileSize) {
         this.view = view;
-        this.segments = segments;
+        this.tileSize = tileSize;
+        this.cache = new TileCache(TileStore.openDefault(tileSize));
+        this.prefetcher = new Prefetcher(cache);
+        // The store is closed however the application exits, to write all tiles to disk and release the file
+        Runtime.getRuntime().addShutdownHook(new Thread(cache::close, "tile-store-close"));
         undoStack.push(ImageAttributes.INITIAL_ATTRIBUTES);
         initSubscriptions();
     }
@@ -40,10 +84,19 @@ class MandelController {
         // Rubber band selection events
         view.rubberBandObs().subscribe(this::rubberBandAction);
 
+        // Drag events
+        view.panObs().subscribe(this::panAction);
+
         // Menu selection events
         view.newActionObs().subscribe(event -> newAction());
         view.exitActionObs().subscribe(event -> exitAction());
         view.undoActionObs().subscribe(event -> undoAction());
+        view.redoActionObs().subscribe(event -> redoAction());
+        view.zoomInActionObs().subscribe(event -> zoomInAction());
+        view.pyramidObs().subscribe(this::pyramidAction);
+        view.strategyObs().subscribe(this::strategyAction);
+        view.orderObs().subscribe(this::orderAction);
+        view.paletteObs().subscribe(this::paletteAction);
     }
 
     // --- Actions ---
@@ -59,8 +112,8 @@ class MandelController {
             scale = Coordinates.INITIAL_SIZE / size.getWidth();
             bounds = new Rectangle(0, 0, (int) size.getWidth(), (int) size.getWidth());
         }
-        Coordinates coordinates = centerImage(size, bounds, scale,
-                Coordinates.INITIAL_COORDINATES.minX(), Coordinates.INITIAL_COORDINATES.minY());
+        Coordinates coordinates = centerImage(size, bounds, scale, Coordinates.INITIAL_COORDINATES);
+        redoStack.clear();
         undoStack.push(createImage(new ImageAttributes(coordinates, scale)));
     }
 
@@ -70,14 +123,58 @@ class MandelController {
 
     private void undoAction() {
         if (undoStack.size() > 1) {
-            // Throw away the top item, since that was used to create the current image
-            undoStack.pop();
+            // Move the top item to the redo stack, since that was used to create the current image
+            redoStack.push(undoStack.pop());
 
             // Use next item to create a new image, identical to the previous image
             createImage(undoStack.peek());
         }
     }
 
+    private void redoAction() {
+        if (!redoStack.isEmpty()) {
+            undoStack.push(createImage(redoStack.pop()));
+        }
+    }
+
+    private void zoomInAction() {
+        redoStack.clear();
+        undoStack.push(createImage(zoomIn(undoStack.peek(), view.getImageSize())));
+    }
+
+    private void pyramidAction(boolean pyramid) {
+        this.pyramid = pyramid;
+        TLOG.info("Tile pyramid = " + pyramid);
+        ImageAttributes imageAttributes = createImage(undoStack.peek());
+        if (!imageAttributes.equals(undoStack.peek())) {
+            // The image was snapped to the pyramid
+            redoStack.clear();
+            undoStack.push(imageAttributes);
+        }
+    }
+
+    private void strategyAction(RenderStrategy strategy) {
+        this.strategy = strategy;
+        TLOG.info("Render strategy = " + strategy);
+    }
+
+    private void orderAction(TileOrder order) {
+        this.order = order;
+        TLOG.info("Tile order = " + order);
+    }
+
+    private void paletteAction(Palette palette) {
+        ImageAttributes imageAttributes = undoStack.peek().withPalette(palette);
+        redoStack.clear();
+        if (view.recolorImage(palette)) {
+            // The escape times of the current image were available, so there was no need to calculate it again
+            TLOG.info("Recolored " + imageAttributes);
+            undoStack.push(imageAttributes);
+        } else {
+            undoStack.push(createImage(imageAttributes));
+        }
+    }
+
     private void resizeAction(Dimension dimension) {
         createImage(undoStack.peek());
     }
@@ -86,16 +183,75 @@ class MandelController {
         Rectangle bounds = event.getSelectionBounds();
         TLOG.finest("Selected area = " + bounds);
 
-        ImageAttributes imageAttributes = undoStack.peek();
+        redoStack.clear();
+        undoStack.push(createImage(zoom(undoStack.peek(), view.getImageSize(), bounds)));
+    }
+
+    private void panAction(Point offset) {
+        if (offset.x != 0 || offset.y != 0) {
+            redoStack.clear();
+            undoStack.push(createImage(pan(undoStack.peek(), offset)));
+        }
+    }
+
+    /**
+     * Returns the image attributes of the image that results from dragging an image the given distance.
+     *
+     * @param imageAttributes The attributes of the image to drag.
+     * @param offset The distance in pixels the image is dragged to the right and down.
+     * @return The image attributes of the new image.
+     */
+    static ImageAttributes pan(ImageAttributes imageAttributes, Point offset) {
+        final double scale = imageAttributes.scale();
+        Coordinates coordinates = imageAttributes.coordinates().translate(-offset.x * scale, -offset.y * scale, scale);
+        return new ImageAttributes(coordinates, scale, imageAttributes.palette());
+    }
+
+    /**
+     * Returns the distance in pixels that pixel (x, y) of the image {@code from} is moved in the image {@code to},
+     * or null if the images do not share the same pixels, because they have different scales or palettes, or
+     * are not aligned on the same pixel grid.
+     */
+    static Point offset(ImageAttributes from, ImageAttributes to) {
+        if (from.scale() != to.scale() || from.palette() != to.palette()) {
+            return null;
+        }
+        double dx = from.coordinates().preciseMinX().subtract(to.coordinates().preciseMinX()).doubleValue() / from.scale();
+        double dy = from.coordinates().preciseMinY().subtract(to.coordinates().preciseMinY()).doubleValue() / from.scale();
+        long x = Math.round(dx);
+        long y = Math.round(dy);
+        if (Math.abs(dx - x) > 1e-6 || Math.abs(dy - y) > 1e-6 || Math.abs(x) > Short.MAX_VALUE || Math.abs(y) > Short.MAX_VALUE) {
+            return null;
+        }
+        return new Point((int) x, (int) y);
+    }
+
+    /**
+     * Returns the image attributes of the image that results from zooming in on the given area of an image.
+     *
+     * @param imageAttributes The attributes of the image to zoom in on.
+     * @param size The size of the image in pixels.
+     * @param bounds The bounds of the selected area in pixels.
+     * @return The image attributes of the new image.
+     */
+    static ImageAttributes zoom(ImageAttributes imageAttributes, Dimension size, Rectangle bounds) {
         Coordinates coordinates = imageAttributes.coordinates();
         final double scale = imageAttributes.scale();
 
-        final double newMinX = coordinates.minX() + bounds.getX() * scale;
-        final double newMinY = coordinates.minY() + bounds.getY() * scale;
-        final double newScale = calculateNewScale(view.getImageSize(), bounds, scale);
-        final Coordinates newCoordinates = centerImage(view.getImageSize(), bounds, newScale, newMinX, newMinY);
+        final double newScale = calculateNewScale(size, bounds, scale);
+        final Coordinates newMinCoordinates = coordinates.translate(bounds.getX() * scale, bounds.getY() * scale, newScale);
+        final Coordinates newCoordinates = centerImage(size, bounds, newScale, newMinCoordinates);
+        return new ImageAttributes(newCoordinates, newScale);
+    }
 
-        undoStack.push(createImage(new ImageAttributes(newCoordinates, newScale)));
+    /**
+     * Returns the image attributes of the image that results from zooming in 2x on the center of an image.
+     * This is the same image as when selecting the middle half of the image with the rubber band.
+     */
+    static ImageAttributes zoomIn(ImageAttributes imageAttributes, Dimension size) {
+        int width = (int) size.getWidth();
+        int height = (int) size.getHeight();
+        return zoom(imageAttributes, size, new Rectangle(width / 4, height / 4, width / 2, height / 2));
     }
 
     /**
@@ -105,11 +261,10 @@ class MandelController {
      * @param size The size of the image in pixels.
      * @param bounds The bounds of the selected area in pixels.
      * @param scale The new scale after zooming in.
-     * @param minX The new min X after zooming in.
-     * @param minY The new min Y after zooming in.
+     * @param minCoordinates The new min X and min Y after zooming in.
      * @return The coordinates for a centered image.
      */
-    private Coordinates centerImage(Dimension size, Rectangle bounds, double scale, double minX, double minY) {
+    private static Coordinates centerImage(Dimension size, Rectangle bounds, double scale, Coordinates minCoordinates) {
         final double x1 = size.getWidth();
         final double x2 = bounds.getWidth();
         final double y1 = size.getHeight();
@@ -119,12 +274,12 @@ class MandelController {
             // Calculate the width of the selected area after zooming in
             double x3 = y1 / y2 * x2;
             double pixelsLeftOfArea = (x1 - x3) / 2;
-            return new Coordinates(minX - pixelsLeftOfArea * scale, minY);
+            return minCoordinates.translate(-pixelsLeftOfArea * scale, 0, scale);
         } else {
             // Calculate the height of the selected area after zooming in
             double y3 = x1 / x2 * y2;
             double pixelsAboveArea = (y1 - y3) / 2;
-            return new Coordinates(minX, minY - pixelsAboveArea * scale);
+            return minCoordinates.translate(0, -pixelsAboveArea * scale, scale);
         }
     }
 
@@ -137,7 +292,7 @@ class MandelController {
      * @param scale The old scale.
      * @return The new scale.
      */
-    private double calculateNewScale(Dimension size, Rectangle bounds, double scale) {
+    private static double calculateNewScale(Dimension size, Rectangle bounds, double scale) {
         final double x1 = size.getWidth();
         final double x2 = bounds.getWidth();
         final double y1 = size.getHeight();
@@ -152,48 +307,404 @@ class MandelController {
     /**
      * Creates a new fractal image that fits the current size of the image panel.
      *
-     * @param imageAttributes The image attributes that defines the image to create.
+     * @param requestedAttributes The image attributes that defines the image to create.
      * @return The actual coordinates use the draw the image.
      */
-    private ImageAttributes createImage(final ImageAttributes imageAttributes) {
+    private ImageAttributes createImage(final ImageAttributes requestedAttributes) {
+        // An interactive render always takes precedence over prefetching
+        final long generation = prefetcher.cancel();
+
         Dimension imageSize = view.getImageSize();
         int width = (int) imageSize.getWidth();
         int height = (int) imageSize.getHeight();
 
-        Observable<Line> lineObs = paramObs(segments, width, height, imageAttributes)
-                .flatMap(params -> LineObservable.fromParameters(params)
-                        .subscribeOn(Schedulers.computation()));
-        view.drawImage(lineObs);
-
+        // Images drawn using the tile pyramid are snapped to the nearest level of the pyramid
+        final boolean usePyramid = pyramid && TilePyramid.isSupported(requestedAttributes);
+        final ImageAttributes imageAttributes = usePyramid ? TilePyramid.snap(requestedAttributes, width, height) : requestedAttributes;
+
+        // The precision depends on how deep we have zoomed in
+        Precision precision = Precision.select(imageAttributes, width, height);
+
+        // Deep zoom images share one reference orbit for all tiles
+        final boolean perturbation = precision.usePerturbation(imageAttributes);
+        Observable<ReferenceOrbit> orbitObs = referenceOrbitObs(imageAttributes, width, height, perturbation, scheduler);
+
+        // The escape times are kept, so the image can be recolored without calculating it again,
+        // except for images drawn using the tile pyramid, that are recolored from the cache
+        IterationBuffer iterationBuffer = usePyramid ? null : new IterationBuffer(width, height, imageAttributes.maxIterations());
+
+        // The pixels of the image drawn in the view that are also part of the new image are kept,
+        // so resizing the window or panning only calculates the newly exposed pixels
+        final Point offset = usePyramid ? null : keptOffset(imageAttributes, imageSize);
+        List<Rectangle> exposedAreas = (offset == null) ? List.of(new Rectangle(imageSize))
+                : exposedAreas(width, height, new Rectangle(offset, shownSize).intersection(new Rectangle(imageSize)));
+
+        RenderStatistics statistics = new RenderStatistics(exposedAreas.stream().mapToLong(area -> area.width * (long) area.height).sum());
+        String calculation = (usePyramid ? "pyramid level " + TilePyramid.level(imageAttributes.scale()) : describe(precision, perturbation))
+                + ((offset == null) ? "" : ", keeping pixels moved by [" + offset.x + ", " + offset.y + "]");
+        List<ImageAttributes> nextViews = likelyNextViews(imageAttributes, imageSize);
+        Point mouse = view.getImageMousePosition();
+        Observable<Line> lineObs;
+        if (usePyramid) {
+            lineObs = TilePyramid.lineObs(imageAttributes, width, height, tileSize, strategy, scheduler, statistics, cache);
+        } else if (offset == null) {
+            lineObs = lineObs(orbitObs.flatMap(referenceOrbit -> order.sort(
+                    paramObs(tileSize, width, height, imageAttributes, referenceOrbit, iterationBuffer, precision),
+                    width, height, mouse)), strategy, scheduler, statistics, cache);
+        } else {
+            lineObs = lineObs(orbitObs.flatMap(referenceOrbit -> order.sort(
+                    exposedParamObs(tileSize, exposedAreas, imageAttributes, referenceOrbit, iterationBuffer, precision),
+                    width, height, mouse)), strategy, scheduler, statistics, cache);
+        }
+        lineObs = lineObs
+                .doOnCompleted(() -> {
+                    statistics.complete();
+                    TLOG.info("Rendered " + imageAttributes + " using " + strategy + ", " + order + " order, and " + calculation
+                            + ": " + statistics + ", cache = " + cache);
+                    if (usePyramid) {
+                        prefetcher.prefetchTiles(generation, nextViews.stream()
+                                .filter(TilePyramid::isSupported)
+                                .flatMap(next -> TilePyramid.tiles(TilePyramid.snap(next, width, height), width, height, tileSize, false).stream())
+                                .toList());
+                    } else {
+                        prefetcher.prefetch(generation, nextViews, tileSize, width, height);
+                    }
+                })
+                .doOnUnsubscribe(() -> {
+                    if (statistics.cancel()) {
+                        avoidedPixels += statistics.getAvoidedPixels();
+                        TLOG.info("Cancelled " + imageAttributes + ": " + statistics + ", total avoided " + avoidedPixels);
+                    }
+                });
+        view.drawImage(lineObs, offset, iterationBuffer, statistics);
+
+        shownAttributes = usePyramid ? null : imageAttributes;
+        shownSize = imageSize;
         return imageAttributes;
     }
 
     /**
-     * Returns an Observable that emits one Parameters object per image segment to draw.
+     * Returns the distance in pixels the image drawn in the view is moved in the new image, if the pixels of
+     * the image drawn in the view can be kept, and some of them are part of the new image. Otherwise null.
      */
-    private static Observable<Parameters> paramObs(int segments, int width, int height, ImageAttributes imageAttributes) {
-        final int linesPerSegment = height / segments;
-        TLOG.info("Number of lines = " + height + ", lines per segment = " + linesPerSegment);
+    private Point keptOffset(ImageAttributes imageAttributes, Dimension size) {
+        if (shownAttributes == null || !view.isImageComplete()) {
+            return null;
+        }
+        Point offset = offset(shownAttributes, imageAttributes);
+        if (offset == null || new Rectangle(offset, shownSize).intersection(new Rectangle(size)).isEmpty()) {
+            return null;
+        }
+        return offset;
+    }
 
-        // Divide the coordinate space among the segments
-        Coordinates coordinates = imageAttributes.coordinates();
-        double coordinatesPerSegment = height * imageAttributes.scale() / segments;
+    /**
+     * Returns the areas of an image of the given size that are not covered by the kept area: the full width
+     * bands above and below the kept area, and the areas to the left and to the right of it.
+     */
+    static List<Rectangle> exposedAreas(int width, int height, Rectangle kept) {
+        final int bottom = kept.y + kept.height;
+        final int right = kept.x + kept.width;
+        return Stream.of(new Rectangle(0, 0, width, kept.y),
+                        new Rectangle(0, bottom, width, height - bottom),
+                        new Rectangle(0, kept.y, kept.x, kept.height),
+                        new Rectangle(right, kept.y, width - right, kept.height))
+                .filter(area -> !area.isEmpty())
+                .toList();
+    }
 
-        List<Parameters> parametersList = new ArrayList<>();
+    /**
+     * Returns the views the user is likely to look at after the given view, the most likely first.
+     * Users tend to zoom in on the center of the image, or to go back to the previous image.
+     */
+    private List<ImageAttributes> likelyNextViews(ImageAttributes imageAttributes, Dimension size) {
+        List<ImageAttributes> views = new ArrayList<>();
+        views.add(zoomIn(imageAttributes, size));
+        for (int i = undoStack.size() - 1; i >= 0; i--) {
+            ImageAttributes previous = undoStack.get(i);
+            if (!previous.coordinates().equals(imageAttributes.coordinates()) || previous.scale() != imageAttributes.scale()) {
+                views.add(previous);
+                break;
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Returns a description of how the escape times are calculated, for logging.
+     */
+    private static String describe(Precision precision, boolean perturbation) {
+        return perturbation ? precision + " precision and perturbation" : precision + " precision";
+    }
 
-        // Create parameters for all segments
-        for (int s = 0; s < (segments - 1); s++) {
-            double minY = coordinates.minY() + (coordinatesPerSegment * s);
-            ImageAttributes segmentAttributes = imageAttributes.withCoordinates(coordinates.withMinY(minY));
-            parametersList.add(new Parameters(linesPerSegment * s, width, linesPerSegment, segmentAttributes));
+    /**
+     * Returns an Observable that emits the reference orbit of the given image, or {@code null} if the image
+     * is calculated without perturbation. The orbit is calculated with arbitrary precision, which can take
+     * seconds for deep images, so it is calculated on the given scheduler, and not on the event dispatch thread.
+     */
+    static Observable<ReferenceOrbit> referenceOrbitObs(ImageAttributes imageAttributes, int width, int height,
+                                                        boolean perturbation, Scheduler scheduler) {
+        if (!perturbation) {
+            return Observable.just(null);
         }
+        return Observable.fromCallable(() -> ReferenceOrbit.compute(imageAttributes, width, height)).subscribeOn(scheduler);
+    }
+
+    /**
+     * Returns an Observable that emits the lines of all tiles emitted by {@code paramObs}. Tiles that are
+     * found in the cache are emitted first, without being calculated. The cache is looked up on the given
+     * scheduler, since reading the tiles from the store takes time, and the Observable may be subscribed
+     * to on the event dispatch thread. The other tiles are calculated
+     * using the given render strategy, and stored in the cache. Tiles that are mirror images of other
+     * tiles are copied from the lines of those tiles, so each of them is emitted as soon as the tiles
+     * it is copied from are complete, and the mirror images of the first tiles are not drawn last.
+     * With the progressive render strategy, the lines of the coarse passes are also mirrored directly,
+     * so the mirrored tiles are drawn from coarse to fine, like the tiles they are copied from.
+     */
+    static Observable<Line> lineObs(Observable<Parameters> paramObs, RenderStrategy strategy, Scheduler scheduler,
+                                    RenderStatistics statistics, TileCache cache) {
+        return paramObs.toList().flatMap(tiles -> {
+            List<Line> cachedLines = new ArrayList<>();
+            List<Parameters> missingTiles = tiles.stream().filter(tile -> !cache.getLines(tile, cachedLines)).toList();
+            List<Parameters> calculatedTiles = missingTiles.stream().filter(tile -> !tile.isMirrored()).toList();
+            MirroredTiles mirroredTiles = new MirroredTiles(missingTiles.stream().filter(Parameters::isMirrored).toList(), calculatedTiles);
+
+            // A mirrored tile that waits for other tiles is copied on the thread that completed the last of them, since
+            // copying is cheap, and a task on the scheduler would have to wait for all tiles that are queued before it
+            Observable<Line> readyLineObs = Observable.from(mirroredTiles.ready())
+                    .flatMap(params -> mirroredLineObs(params, strategy, statistics, cache).subscribeOn(scheduler));
+            Observable<Line> waitingLineObs = cache.completedObs()
+                    .flatMap(tile -> Observable.from(mirroredTiles.complete(tile)))
+                    .take(mirroredTiles.waiting())
+                    .flatMap(params -> mirroredLineObs(params, strategy, statistics, cache).toList().flatMap(Observable::from));
+
+            Observable<Line> calculatedLineObs = strategy.lineObs(Observable.from(calculatedTiles), scheduler, statistics, cache);
+            if (strategy == RenderStrategy.PROGRESSIVE && mirroredTiles.waiting() > 0) {
+                calculatedLineObs = calculatedLineObs.concatMap(line -> Observable.just(line).concatWith(
+                        Observable.from(mirroredTiles.preview(line))));
+            }
+
+            // The mirrored tiles are subscribed to first, so they do not miss any completed tile
+            return Observable.from(cachedLines)
+                    .concatWith(Observable.merge(readyLineObs, waitingLineObs, calculatedLineObs));
+        }).subscribeOn(scheduler);
+    }
 
-        // Assign the rest of the lines to the last segment
-        double minY = coordinates.minY() + (coordinatesPerSegment * (segments - 1));
-        ImageAttributes segmentAttributes = imageAttributes.withCoordinates(coordinates.withMinY(minY));
-        int segmentHeight = height - ((segments - 1) * linesPerSegment);
-        parametersList.add(new Parameters(linesPerSegment * (segments - 1), width, segmentHeight, segmentAttributes));
+    /**
+     * Returns an Observable that emits the lines of the given mirrored tile, copied from the iteration buffer,
+     * and that stores the tile in the cache, if the tiles it is copied from were calculated exactly.
+     */
+    private static Observable<Line> mirroredLineObs(Parameters params, RenderStrategy strategy, RenderStatistics statistics,
+                                                    TileCache cache) {
+        Observable<Line> lineObs = LineObservable.blocksFromCalculator(new MirrorCalculator(params, Kernel.DEFAULT, statistics));
+        return strategy.isExact() ? cache.store(params, lineObs) : cache.complete(params, lineObs);
+    }
 
+    /**
+     * Keeps track of the calculated tiles that each mirrored tile is copied from, to find out when the
+     * lines of a mirrored tile can be copied. This class is thread safe.
+     */
+    private static class MirroredTiles {
+
+        /** The mirrored tiles that can be copied right away, since they are not copied from any calculated tile. */
+        private final List<Parameters> ready = new ArrayList<>();
+
+        /** The mirrored tiles that wait for calculated tiles, mapped to the calculated tiles they wait for. */
+        private final Map<Parameters, List<Parameters>> waiting = new LinkedHashMap<>();
+
+        /** All mirrored tiles that wait for calculated tiles, also those that are no longer waiting. */
+        private final List<Parameters> waitingTiles;
+
+        MirroredTiles(List<Parameters> mirroredTiles, List<Parameters> calculatedTiles) {
+            for (Parameters mirrored : mirroredTiles) {
+                // Line y in the mirrored tile is a mirror image of line mirrorY - y
+                Rectangle sourceLines = new Rectangle(mirrored.getFirstX(), mirrored.getMirrorY() - mirrored.getHeight() + 1,
+                        mirrored.getWidth(), mirrored.getHeight());
+                List<Parameters> sources = calculatedTiles.stream()
+                        .filter(tile -> sourceLines.intersects(tile.getFirstX(), tile.getFirstY(), tile.getWidth(), tile.getHeight()))
+                        .collect(Collectors.toCollection(ArrayList::new));
+                if (sources.isEmpty()) {
+                    ready.add(mirrored);
+                } else {
+                    waiting.put(mirrored, sources);
+                }
+            }
+            waitingTiles = List.copyOf(waiting.keySet());
+        }
+
+        List<Parameters> ready() {
+            return ready;
+        }
+
+        int waiting() {
+            return waitingTiles.size();
+        }
+
+        /**
+         * Returns copies of the lines in the given line, or block of lines, moved to the lines that are mirror
+         * images of them in the mirrored tiles that wait for calculated tiles. The copies are previews, that are
+         * overwritten when the mirrored tiles are copied.
+         */
+        List<Line> preview(Line line) {
+            List<Line> lines = new ArrayList<>();
+            for (Parameters mirrored : waitingTiles) {
+                if (mirrored.getFirstX() != line.getX() || mirrored.getWidth() != line.getWidth()) {
+                    continue;
+                }
+                for (int i = 0; i < line.getHeight(); i++) {
+                    // Line y in the mirrored tile is a mirror image of line mirrorY - y
+                    int y = mirrored.getMirrorY() - (line.getY() + i);
+                    if (y >= 0 && y < mirrored.getHeight()) {
+                        Line copy = LinePool.SHARED.acquire(line.getX(), mirrored.getFirstY() + y, line.getWidth());
+                        System.arraycopy(line.getRGB(), i * line.getWidth(), copy.getRGB(), 0, line.getWidth());
+                        lines.add(copy);
+                    }
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * Marks the given tile as complete, and returns the mirrored tiles that no longer wait for any tile.
+         */
+        synchronized List<Parameters> complete(Parameters tile) {
+            List<Parameters> completed = new ArrayList<>();
+            Iterator<Map.Entry<Parameters, List<Parameters>>> iterator = waiting.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Parameters, List<Parameters>> entry = iterator.next();
+                if (entry.getValue().remove(tile) && entry.getValue().isEmpty()) {
+                    completed.add(entry.getKey());
+                    iterator.remove();
+                }
+            }
+            return completed;
+        }
+    }
+
+    /**
+     * Returns an Observable that emits one Parameters object per image tile to draw. The tiles are
+     * square, except for the tiles along the right and bottom edges, that get what is left of the image.
+     * Small tiles make it possible to spread the work evenly over all threads, even if some parts of
+     * the image take much longer to calculate than others.
+     */
+    static Observable<Parameters> paramObs(int tileSize, int width, int height, ImageAttributes imageAttributes,
+                                           ReferenceOrbit referenceOrbit) {
+        return paramObs(tileSize, width, height, imageAttributes, referenceOrbit, null);
+    }
+
+    /**
+     * Returns an Observable that emits one Parameters object per image tile to draw, like
+     * {@link #paramObs(int, int, int, ImageAttributes, ReferenceOrbit)}, with all tiles sharing
+     * the given iteration buffer.
+     */
+    static Observable<Parameters> paramObs(int tileSize, int width, int height, ImageAttributes imageAttributes,
+                                           ReferenceOrbit referenceOrbit, IterationBuffer iterationBuffer) {
+        return paramObs(tileSize, width, height, imageAttributes, referenceOrbit, iterationBuffer, Precision.DOUBLE);
+    }
+
+    /**
+     * Returns an Observable that emits one Parameters object per image tile to draw, like
+     * {@link #paramObs(int, int, int, ImageAttributes, ReferenceOrbit)}, with all tiles sharing
+     * the given iteration buffer, and calculated with the given precision.
+     *
+     * If the image contains lines on both sides of the real axis, the lines on the side with fewer lines
+     * are mirror images of lines on the other side. These lines are divided into tiles of their own, that
+     * are copied from the iteration buffer rather than calculated, see {@link MirrorCalculator}. Deep zoom
+     * images, and images without an iteration buffer, are never mirrored.
+     */
+    static Observable<Parameters> paramObs(int tileSize, int width, int height, ImageAttributes imageAttributes,
+                                           ReferenceOrbit referenceOrbit, IterationBuffer iterationBuffer, Precision precision) {
+        TLOG.info("Image size = " + width + "x" + height + ", tile size = " + tileSize + ", precision = " + precision);
+        TileFactory factory = (x, y, tileWidth, tileHeight, mirrorY) ->
+                new Parameters(x, y, tileWidth, tileHeight, imageAttributes, referenceOrbit, iterationBuffer, precision, mirrorY);
+        return Observable.from(tiles(tileSize, width, height, imageAttributes, referenceOrbit == null && iterationBuffer != null, factory));
+    }
+
+    /**
+     * Returns the parameters of all tiles of an image, created by the given factory, in the same layout as
+     * {@link #paramObs(int, int, int, ImageAttributes, ReferenceOrbit, IterationBuffer, Precision)}.
+     *
+     * @param mirror True if lines that are mirror images of other lines should be divided into tiles of their own.
+     */
+    static List<Parameters> tiles(int tileSize, int width, int height, ImageAttributes imageAttributes, boolean mirror,
+                                  TileFactory factory) {
+        // The lines from firstMirrorLine to lastMirrorLine, inclusive, are mirror images of other lines
+        int mirrorSum = -1;
+        int firstMirrorLine = height;
+        int lastMirrorLine = height - 1;
+        if (mirror) {
+            mirrorSum = MirrorCalculator.mirrorSum(imageAttributes);
+        }
+        if (mirrorSum > 0 && mirrorSum < 2 * height - 2) {
+            // Mirror the lines below the axis if there are at least as many lines above it, and vice versa
+            int linesBelow = Math.min(height - 1, mirrorSum) - mirrorSum / 2;
+            int linesAbove = (mirrorSum + 1) / 2 - Math.max(0, mirrorSum - height + 1);
+            if (linesBelow >= linesAbove) {
+                firstMirrorLine = mirrorSum / 2 + 1;
+                lastMirrorLine = Math.min(height - 1, mirrorSum);
+            } else {
+                firstMirrorLine = Math.max(0, mirrorSum - height + 1);
+                lastMirrorLine = (mirrorSum + 1) / 2 - 1;
+            }
+            TLOG.info("Mirrored lines = " + firstMirrorLine + "-" + lastMirrorLine);
+        }
+
+        List<Parameters> parametersList = new ArrayList<>();
+
+        // Create parameters for all tiles, dividing the mirrored lines into tiles of their own
+        addTiles(parametersList, 0, firstMirrorLine, -1, tileSize, width, factory);
+        addTiles(parametersList, firstMirrorLine, lastMirrorLine + 1, mirrorSum, tileSize, width, factory);
+        addTiles(parametersList, lastMirrorLine + 1, height, -1, tileSize, width, factory);
+        return parametersList;
+    }
+
+    /**
+     * Returns an Observable that emits one Parameters object per tile to draw in the given areas of an image,
+     * like {@link #paramObs(int, int, int, ImageAttributes, ReferenceOrbit, IterationBuffer, Precision)}.
+     * The areas are divided into tiles of their own, and are never mirrored, since the lines they would be
+     * copied from may not have been calculated yet.
+     */
+    static Observable<Parameters> exposedParamObs(int tileSize, List<Rectangle> areas, ImageAttributes imageAttributes,
+                                                  ReferenceOrbit referenceOrbit, IterationBuffer iterationBuffer, Precision precision) {
+        TLOG.info("Exposed areas = " + areas + ", tile size = " + tileSize + ", precision = " + precision);
+
+        List<Parameters> parametersList = new ArrayList<>();
+        TileFactory factory = (x, y, tileWidth, tileHeight, mirrorY) ->
+                new Parameters(x, y, tileWidth, tileHeight, imageAttributes, referenceOrbit, iterationBuffer, precision, mirrorY);
+        for (Rectangle area : areas) {
+            addTiles(parametersList, area.x, area.x + area.width, area.y, area.y + area.height, -1, tileSize, factory);
+        }
         return Observable.from(parametersList);
     }
+
+    /**
+     * Adds parameters for all tiles in the lines from firstY to lastY, exclusive, to the given list.
+     * If mirrorSum is not -1, line y in the image is a mirror image of line mirrorSum - y.
+     */
+    private static void addTiles(List<Parameters> parametersList, int firstY, int lastY, int mirrorSum, int tileSize, int width,
+                                 TileFactory factory) {
+        addTiles(parametersList, 0, width, firstY, lastY, mirrorSum, tileSize, factory);
+    }
+
+    /**
+     * Adds parameters for all tiles in the area from (firstX, firstY) to (lastX, lastY), exclusive, to the given list.
+     */
+    private static void addTiles(List<Parameters> parametersList, int firstX, int lastX, int firstY, int lastY, int mirrorSum,
+                                 int tileSize, TileFactory factory) {
+        for (int y = firstY; y < lastY; y += tileSize) {
+            for (int x = firstX; x < lastX; x += tileSize) {
+                int tileWidth = Math.min(tileSize, lastX - x);
+                int tileHeight = Math.min(tileSize, lastY - y);
+                int mirrorY = (mirrorSum == -1) ? -1 : mirrorSum - y;
+                parametersList.add(factory.create(x, y, tileWidth, tileHeight, mirrorY));
+            }
+        }
+    }
+
+    /**
+     * Creates the parameters for one tile, with everything that is common to all tiles of the image already filled in.
+     */
+    interface TileFactory {
+        Parameters create(int firstX, int firstY, int width, int height, int mirrorY);
+    }
 }
@@ -3,10 +3,20 @@ package se.dykstrom.rxjava.swing.mandel;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 /**
- * Displays the Mandelbrot fractal image in a panel. The image is drawn pixel by pixel,
- * using the RGB colors stored in the given {@link Line} objects.
+ * Displays the Mandelbrot fractal image in a panel. The lines are copied straight into the
+ * pixel array of the image, using the RGB colors stored in the given {@link Line} and {@link LineBlock} objects.
+ *
+ * The panel does not repaint itself for every line drawn. Instead, it keeps track of the range
+ * of lines that have changed since the last repaint, and repaints that range at most
+ * {@link #FRAMES_PER_SECOND} times per second while the image is being drawn.
+ *
+ * When the new image overlaps the current image at the same scale, for example after resizing the window
+ * or panning, the overlapping pixels, and their escape times, can be kept, see
+ * {@link #shift(int, int, IterationBuffer, RenderStatistics)}. Then only the newly exposed pixels are drawn.
  *
  * @author Johan Dykstrom
  */
@@ -15,41 +25,245 @@ class MandelPanel extends JComponent {
     /** The initial width and height of the image in pixels. */
     public static final int INITIAL_IMAGE_SIZE = 500;
 
+    /** The maximum number of times per second the panel is repainted while drawing. */
+    private static final int FRAMES_PER_SECOND = 30;
+
     /** The off-screen image buffer. */
     private BufferedImage image;
 
+    /** The pixels of the off-screen image buffer, line by line. */
+    private int[] pixels;
+
+    /** The escape times of the image, or {@code null} if they are not known. */
+    private IterationBuffer iterationBuffer;
+
+    /** The statistics of the image being drawn, that paint times are added to, or {@code null} if none. */
+    private RenderStatistics statistics;
+
+    /** True if the image has been completely drawn. */
+    private boolean complete;
+
+    /** The distance the image is drawn from its normal position while the user drags it, in pixels. */
+    private int panX;
+    private int panY;
+
+    /** The first and last line that has been drawn since the last repaint, or -1 if no line has been drawn. */
+    private int firstDirtyLine = -1;
+    private int lastDirtyLine = -1;
+
+    /** Timer that repaints the dirty lines while the image is being drawn. */
+    private final Timer repaintTimer = new Timer(1000 / FRAMES_PER_SECOND, event -> repaintDirtyLines());
+
     public MandelPanel() {
         setPreferredSize(new Dimension(INITIAL_IMAGE_SIZE, INITIAL_IMAGE_SIZE));
     }
 
     @Override
     public void paintComponent(Graphics graphics) {
-        graphics.drawImage(image, 0, 0, null);
+        if (panX != 0 || panY != 0) {
+            graphics.clearRect(0, 0, getWidth(), getHeight());
+        }
+        graphics.drawImage(image, panX, panY, null);
     }
 
     /**
-     * Clears the image and panel.
+     * Clears the image and panel. The image is reused if the size of the panel has not changed.
      */
     void clear() {
-        image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+        clear(null);
+    }
+
+    /**
+     * Clears the image and panel, and prepares for drawing an image whose escape times will
+     * be stored in the given iteration buffer.
+     */
+    void clear(IterationBuffer iterationBuffer) {
+        clear(iterationBuffer, null);
+    }
+
+    /**
+     * Clears the image and panel, and prepares for drawing an image whose escape times will
+     * be stored in the given iteration buffer. The time spent drawing the image is added to
+     * the given statistics, and the frame is recorded when it has been finished.
+     */
+    void clear(IterationBuffer iterationBuffer, RenderStatistics statistics) {
+        this.iterationBuffer = iterationBuffer;
+        this.statistics = statistics;
+        this.complete = false;
+
+        int width = Math.max(getWidth(), 1);
+        int height = Math.max(getHeight(), 1);
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            Arrays.fill(pixels, 0);
+        }
+        prepare();
+    }
+
+    /**
+     * Clears the newly exposed parts of the image and panel, and prepares for drawing them, keeping the pixels of
+     * the current image that are also part of the new image. Pixel (x, y) of the current image becomes pixel
+     * (x + dx, y + dy) of the new image, whose size is the size of the panel. The escape times of the kept pixels
+     * are copied to the given iteration buffer, if the escape times of the current image are known.
+     *
+     * @param dx The distance to move the current image to the right, in pixels.
+     * @param dy The distance to move the current image down, in pixels.
+     * @param iterationBuffer The iteration buffer of the new image.
+     * @param statistics The statistics of the new image.
+     */
+    void shift(int dx, int dy, IterationBuffer iterationBuffer, RenderStatistics statistics) {
+        if (image == null) {
+            clear(iterationBuffer, statistics);
+            return;
+        }
+
+        int width = Math.max(getWidth(), 1);
+        int height = Math.max(getHeight(), 1);
+        int oldWidth = image.getWidth();
+        int oldHeight = image.getHeight();
+        int[] oldPixels = pixels;
+        if (dx != 0 || dy != 0 || oldWidth != width || oldHeight != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        Rectangle kept = new Rectangle(dx, dy, oldWidth, oldHeight).intersection(new Rectangle(0, 0, width, height));
+        if (!kept.isEmpty()) {
+            if (pixels != oldPixels) {
+                for (int y = kept.y; y < kept.y + kept.height; y++) {
+                    System.arraycopy(oldPixels, (y - dy) * oldWidth + kept.x - dx, pixels, y * width + kept.x, kept.width);
+                }
+            }
+            if (this.iterationBuffer != null && iterationBuffer != null) {
+                iterationBuffer.set(kept.x, kept.y, kept.width, kept.height,
+                        this.iterationBuffer.copyOf(kept.x - dx, kept.y - dy, kept.width, kept.height));
+            }
+        }
+
+        this.iterationBuffer = iterationBuffer;
+        this.statistics = statistics;
+        this.complete = false;
+        prepare();
+    }
+
+    /**
+     * Starts drawing a new image, that is repainted as a whole.
+     */
+    private void prepare() {
+        panX = 0;
+        panY = 0;
+        firstDirtyLine = -1;
+        lastDirtyLine = -1;
         repaint(new Rectangle(0, 0, getWidth(), getHeight()));
     }
 
     /**
-     * Draws one line in the image.
+     * Draws the image the given distance from its normal position, to show the user where it is dragged.
+     */
+    void pan(Point offset) {
+        panX = offset.x;
+        panY = offset.y;
+        repaint();
+    }
+
+    /**
+     * Draws one line, or a block of lines, in the image. Lines, or parts of lines, outside the image are ignored.
      */
     void draw(Line line) {
-        int y = line.getY();
-        int[] rgb = line.getRGB();
-        for (int x = 0; x < rgb.length; x++) {
-            image.setRGB(x, y, rgb[x]);
+        final long start = System.nanoTime();
+        final int firstX = line.getX();
+        final int firstY = line.getY();
+        final int lineWidth = line.getWidth();
+        final int length = Math.min(lineWidth, image.getWidth() - firstX);
+        final int height = Math.min(line.getHeight(), image.getHeight() - firstY);
+        if (height <= 0 || length <= 0) {
+            return;
+        }
+
+        final int[] rgb = line.getRGB();
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(rgb, i * lineWidth, pixels, (firstY + i) * image.getWidth() + firstX, length);
+        }
+
+        final int lastY = firstY + height - 1;
+        if (firstDirtyLine == -1) {
+            firstDirtyLine = firstY;
+            lastDirtyLine = lastY;
+        } else {
+            firstDirtyLine = Math.min(firstDirtyLine, firstY);
+            lastDirtyLine = Math.max(lastDirtyLine, lastY);
+        }
+        if (!repaintTimer.isRunning()) {
+            repaintTimer.start();
+        }
+        if (statistics != null) {
+            statistics.addPaintTime(System.nanoTime() - start);
         }
     }
 
     /**
-     * Finishes by repainting the panel when the image is complete.
+     * Finishes by repainting the panel when the image is complete, and recording the frame in the statistics.
      */
     void finish() {
+        complete = true;
+        repaintTimer.stop();
+        firstDirtyLine = -1;
+        lastDirtyLine = -1;
+        repaint(new Rectangle(0, 0, getWidth(), getHeight()));
+        if (statistics != null) {
+            statistics.painted();
+            statistics = null;
+        }
+    }
+
+    /**
+     * Recolors the image using the given palette, if the image is complete, and its escape times are known.
+     *
+     * @return True if the image was recolored.
+     */
+    boolean recolor(Palette palette) {
+        if (!complete || iterationBuffer == null
+                || iterationBuffer.getWidth() != image.getWidth() || iterationBuffer.getHeight() != image.getHeight()) {
+            return false;
+        }
+        iterationBuffer.toRGB(palette, pixels);
         repaint(new Rectangle(0, 0, getWidth(), getHeight()));
+        return true;
+    }
+
+    /**
+     * Repaints the lines that have been drawn since the last repaint, or stops the timer if there are none.
+     */
+    private void repaintDirtyLines() {
+        if (firstDirtyLine == -1) {
+            repaintTimer.stop();
+        } else {
+            repaint(new Rectangle(0, firstDirtyLine, getWidth(), lastDirtyLine - firstDirtyLine + 1));
+            firstDirtyLine = -1;
+            lastDirtyLine = -1;
+        }
+    }
+
+    /**
+     * Returns true if the image has been completely drawn.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the off-screen image buffer.
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns true if some lines have been drawn, but not yet repainted.
+     */
+    boolean isDirty() {
+        return firstDirtyLine != -1;
     }
 }
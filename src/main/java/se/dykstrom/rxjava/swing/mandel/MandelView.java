@@ -1,23 +1,30 @@
 package se.dykstrom.rxjava.swing.mandel;
 
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 
 import rx.Observable;
+import rx.Subscription;
 import rx.observables.SwingObservable;
 import rx.schedulers.SwingScheduler;
+import rx.subscriptions.Subscriptions;
 import se.dykstrom.rxjava.swing.common.SwingObservables;
+import se.dykstrom.rxjava.swing.components.DragPanEvent;
 import se.dykstrom.rxjava.swing.components.RubberBandSelectionEvent;
 
 /**
@@ -32,6 +39,22 @@ class MandelView extends JFrame {
     private JMenuItem exitMenuItem;
     private JMenuItem newMenuItem;
     private JMenuItem undoMenuItem;
+    private JMenuItem redoMenuItem;
+    private JMenuItem zoomInMenuItem;
+    private JCheckBoxMenuItem pyramidMenuItem;
+    private JRadioButtonMenuItem lineByLineMenuItem;
+    private JRadioButtonMenuItem progressiveMenuItem;
+    private JRadioButtonMenuItem subdivisionMenuItem;
+    private JRadioButtonMenuItem distributedMenuItem;
+    private JRadioButtonMenuItem rowMajorMenuItem;
+    private JRadioButtonMenuItem spiralMenuItem;
+    private JRadioButtonMenuItem mouseFirstMenuItem;
+    private JRadioButtonMenuItem fireMenuItem;
+    private JRadioButtonMenuItem iceMenuItem;
+    private JRadioButtonMenuItem grayscaleMenuItem;
+
+    /** The subscription of the image currently being drawn. */
+    private Subscription subscription = Subscriptions.unsubscribed();
 
     MandelView() {
         initComponents();
@@ -51,6 +74,17 @@ class MandelView extends JFrame {
         return SwingObservables.fromRubberBandSelectionEvents(mandelPanel);
     }
 
+    /**
+     * Returns an Observable that emits the distance in pixels the user has dragged the image with the
+     * right mouse button, when the user releases the mouse. While the user drags, the image follows the mouse.
+     */
+    Observable<Point> panObs() {
+        return SwingObservables.fromDragPanEvents(mandelPanel)
+                .doOnNext(event -> mandelPanel.pan(event.getOffset()))
+                .filter(DragPanEvent::isFinished)
+                .map(DragPanEvent::getOffset);
+    }
+
     /**
      * Returns an Observable that emits action events resulting from menu selections.
      */
@@ -72,6 +106,58 @@ class MandelView extends JFrame {
         return SwingObservable.fromButtonAction(undoMenuItem);
     }
 
+    /**
+     * Returns an Observable that emits action events resulting from menu selections.
+     */
+    Observable<ActionEvent> redoActionObs() {
+        return SwingObservable.fromButtonAction(redoMenuItem);
+    }
+
+    /**
+     * Returns an Observable that emits action events resulting from menu selections.
+     */
+    Observable<ActionEvent> zoomInActionObs() {
+        return SwingObservable.fromButtonAction(zoomInMenuItem);
+    }
+
+    /**
+     * Returns an Observable that emits true when the tile pyramid is turned on in the menu, and false when it is turned off.
+     */
+    Observable<Boolean> pyramidObs() {
+        return SwingObservable.fromButtonAction(pyramidMenuItem).map(event -> pyramidMenuItem.isSelected());
+    }
+
+    /**
+     * Returns an Observable that emits the render strategies selected in the menu.
+     */
+    Observable<RenderStrategy> strategyObs() {
+        return Observable.merge(
+                SwingObservable.fromButtonAction(lineByLineMenuItem).map(event -> RenderStrategy.LINE_BY_LINE),
+                SwingObservable.fromButtonAction(progressiveMenuItem).map(event -> RenderStrategy.PROGRESSIVE),
+                SwingObservable.fromButtonAction(subdivisionMenuItem).map(event -> RenderStrategy.SUBDIVISION),
+                SwingObservable.fromButtonAction(distributedMenuItem).map(event -> RenderStrategy.DISTRIBUTED));
+    }
+
+    /**
+     * Returns an Observable that emits the tile orders selected in the menu.
+     */
+    Observable<TileOrder> orderObs() {
+        return Observable.merge(
+                SwingObservable.fromButtonAction(rowMajorMenuItem).map(event -> TileOrder.ROW_MAJOR),
+                SwingObservable.fromButtonAction(spiralMenuItem).map(event -> TileOrder.SPIRAL),
+                SwingObservable.fromButtonAction(mouseFirstMenuItem).map(event -> TileOrder.MOUSE_FIRST));
+    }
+
+    /**
+     * Returns an Observable that emits the palettes selected in the menu.
+     */
+    Observable<Palette> paletteObs() {
+        return Observable.merge(
+                SwingObservable.fromButtonAction(fireMenuItem).map(event -> Palette.FIRE),
+                SwingObservable.fromButtonAction(iceMenuItem).map(event -> Palette.ICE),
+                SwingObservable.fromButtonAction(grayscaleMenuItem).map(event -> Palette.GRAYSCALE));
+    }
+
     /**
      * Returns the size of the image as a Dimension object.
      */
@@ -81,18 +167,64 @@ class MandelView extends JFrame {
 
     /**
      * Draws a new fractal image using the image line data emitted by the given Observable.
+     * The escape times of the image are stored in the given iteration buffer while drawing,
+     * and can be used to recolor the image when it is complete. The time spent painting the
+     * image is added to the given statistics.
+     */
+    void drawImage(Observable<Line> lineObs, IterationBuffer iterationBuffer, RenderStatistics statistics) {
+        drawImage(lineObs, null, iterationBuffer, statistics);
+    }
+
+    /**
+     * Draws a new fractal image like {@link #drawImage(Observable, IterationBuffer, RenderStatistics)}. If
+     * offset is not null, the pixels of the current image that are also part of the new image are kept,
+     * moved by offset, and the given Observable only has to emit the lines of the newly exposed pixels.
      */
-    void drawImage(Observable<Line> lineObs) {
-        mandelPanel.clear();
-        lineObs.observeOn(SwingScheduler.getInstance())
+    void drawImage(Observable<Line> lineObs, Point offset, IterationBuffer iterationBuffer, RenderStatistics statistics) {
+        // Cancel the previous image, if it has not been completed yet
+        subscription.unsubscribe();
+
+        if (offset == null) {
+            mandelPanel.clear(iterationBuffer, statistics);
+        } else {
+            mandelPanel.shift(offset.x, offset.y, iterationBuffer, statistics);
+        }
+        subscription = lineObs.observeOn(SwingScheduler.getInstance())
                 .doOnError(this::showError)
                 .retry()
                 .subscribe(
-                        mandelPanel::draw,
+                        line -> {
+                            mandelPanel.draw(line);
+                            // The line has been copied to the image, so it can be reused
+                            line.recycle();
+                        },
                         throwable -> System.err.println("Error: " + throwable),
                         mandelPanel::finish);
     }
 
+    /**
+     * Returns the position of the mouse pointer in the image, or {@code null} if the mouse pointer is not over the image.
+     */
+    Point getImageMousePosition() {
+        return mandelPanel.getMousePosition();
+    }
+
+    /**
+     * Returns true if the current image has been completely drawn.
+     */
+    boolean isImageComplete() {
+        return mandelPanel.isComplete();
+    }
+
+    /**
+     * Recolors the current image using the given palette, if it is complete.
+     *
+     * @return True if the image was recolored, false if it must be drawn again.
+     */
+    boolean recolorImage(Palette palette) {
+        return mandelPanel.recolor(palette);
+    }
+
     private void showError(Throwable throwable) {
         SwingUtilities.invokeLater(() ->
                 JOptionPane.showMessageDialog(this, "Failed to calculate image:\n" + throwable.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
@@ -135,9 +267,96 @@ class MandelView extends JFrame {
         undoMenuItem.setText("Undo");
         editMenu.add(undoMenuItem);
 
+        redoMenuItem = new JMenuItem();
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redoMenuItem.setText("Redo");
+        editMenu.add(redoMenuItem);
+
+        JMenu viewMenu = new JMenu();
+        viewMenu.setText("View");
+        viewMenu.setMnemonic('V');
+
+        zoomInMenuItem = new JMenuItem();
+        zoomInMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_DOWN_MASK));
+        zoomInMenuItem.setText("Zoom In");
+        viewMenu.add(zoomInMenuItem);
+
+        pyramidMenuItem = new JCheckBoxMenuItem();
+        pyramidMenuItem.setText("Tile Pyramid");
+        pyramidMenuItem.setSelected(Boolean.getBoolean("mandel.pyramid"));
+        viewMenu.add(pyramidMenuItem);
+
+        viewMenu.addSeparator();
+
+        lineByLineMenuItem = new JRadioButtonMenuItem();
+        lineByLineMenuItem.setText("Line by Line");
+        lineByLineMenuItem.setSelected(true);
+        viewMenu.add(lineByLineMenuItem);
+
+        progressiveMenuItem = new JRadioButtonMenuItem();
+        progressiveMenuItem.setText("Progressive");
+        viewMenu.add(progressiveMenuItem);
+
+        subdivisionMenuItem = new JRadioButtonMenuItem();
+        subdivisionMenuItem.setText("Subdivision");
+        viewMenu.add(subdivisionMenuItem);
+
+        distributedMenuItem = new JRadioButtonMenuItem();
+        distributedMenuItem.setText("Distributed");
+        viewMenu.add(distributedMenuItem);
+
+        ButtonGroup strategyGroup = new ButtonGroup();
+        strategyGroup.add(lineByLineMenuItem);
+        strategyGroup.add(progressiveMenuItem);
+        strategyGroup.add(subdivisionMenuItem);
+        strategyGroup.add(distributedMenuItem);
+
+        viewMenu.addSeparator();
+
+        rowMajorMenuItem = new JRadioButtonMenuItem();
+        rowMajorMenuItem.setText("Row Major");
+        rowMajorMenuItem.setSelected(TileOrder.DEFAULT == TileOrder.ROW_MAJOR);
+        viewMenu.add(rowMajorMenuItem);
+
+        spiralMenuItem = new JRadioButtonMenuItem();
+        spiralMenuItem.setText("Spiral");
+        spiralMenuItem.setSelected(TileOrder.DEFAULT == TileOrder.SPIRAL);
+        viewMenu.add(spiralMenuItem);
+
+        mouseFirstMenuItem = new JRadioButtonMenuItem();
+        mouseFirstMenuItem.setText("Mouse First");
+        mouseFirstMenuItem.setSelected(TileOrder.DEFAULT == TileOrder.MOUSE_FIRST);
+        viewMenu.add(mouseFirstMenuItem);
+
+        ButtonGroup orderGroup = new ButtonGroup();
+        orderGroup.add(rowMajorMenuItem);
+        orderGroup.add(spiralMenuItem);
+        orderGroup.add(mouseFirstMenuItem);
+
+        viewMenu.addSeparator();
+
+        fireMenuItem = new JRadioButtonMenuItem();
+        fireMenuItem.setText("Fire");
+        fireMenuItem.setSelected(true);
+        viewMenu.add(fireMenuItem);
+
+        iceMenuItem = new JRadioButtonMenuItem();
+        iceMenuItem.setText("Ice");
+        viewMenu.add(iceMenuItem);
+
+        grayscaleMenuItem = new JRadioButtonMenuItem();
+        grayscaleMenuItem.setText("Grayscale");
+        viewMenu.add(grayscaleMenuItem);
+
+        ButtonGroup paletteGroup = new ButtonGroup();
+        paletteGroup.add(fireMenuItem);
+        paletteGroup.add(iceMenuItem);
+        paletteGroup.add(grayscaleMenuItem);
+
         JMenuBar menuBar = new JMenuBar();
         menuBar.add(fileMenu);
         menuBar.add(editMenu);
+        menuBar.add(viewMenu);
         return menuBar;
     }
 }
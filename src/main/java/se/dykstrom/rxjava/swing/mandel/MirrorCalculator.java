@@ -0,0 +1,63 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Calculates a tile whose lines are mirror images of other lines in the same image. The Mandelbrot set
+ * is symmetric about the real axis, and the escape time calculation is symmetric too, down to the last
+ * bit. Thus, two lines whose imaginary start values are exact negations of each other have exactly the
+ * same escape times, and the escape times of the mirrored line can simply be copied from the iteration
+ * buffer of the image. Lines that are not exact mirror images, because of rounding, are calculated as usual.
+ *
+ * The lines that are mirrored must be complete before this calculator is used.
+ *
+ * @author Johan Dykstrom
+ */
+class MirrorCalculator extends TileCalculator {
+
+    /** The escape times of the current line. */
+    private final int[] iterations;
+
+    MirrorCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics) {
+        super(parameters, kernel, statistics);
+        this.iterations = new int[parameters.getWidth()];
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        final int imageY = parameters.getFirstY() + y;
+        final int mirrorY = parameters.getMirrorY() - y;
+        if (parameters.getPrecision().isMirror(parameters.getImageAttributes(), imageY, mirrorY)) {
+            parameters.getIterationBuffer().get(parameters.getFirstX(), mirrorY, iterations, 0, iterations.length);
+        } else {
+            calcEscapeTimes(0, 1, y, iterations);
+        }
+        if (isCancelled()) {
+            return null;
+        }
+
+        storeIterations(y, iterations, 0);
+        final Line line = acquireLine(y);
+        final int[] rgb = line.getRGB();
+        for (int x = 0; x < rgb.length; x++) {
+            rgb[x] = toRGB(iterations[x]);
+        }
+        return line;
+    }
+
+    /**
+     * Returns the sum of the Y positions of two lines that are mirror images of each other in an image with
+     * the given attributes, or -1 if there are no such lines. The sum is the same for all pairs of lines.
+     */
+    static int mirrorSum(ImageAttributes imageAttributes) {
+        final double sum = -2 * imageAttributes.coordinates().minY() / imageAttributes.scale();
+        final long rounded = Math.round(sum);
+        if (rounded <= 0 || rounded > Integer.MAX_VALUE || Math.abs(sum - rounded) > 1e-6) {
+            return -1;
+        }
+        return (int) rounded;
+    }
+}
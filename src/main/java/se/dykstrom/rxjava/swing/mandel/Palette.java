@@ -0,0 +1,70 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.Color;
+
+/**
+ * The palettes that can be used to convert escape times to RGB colors. Each palette is a table
+ * of 512 colors, that is stretched to cover all escape times from 0 to the maximum number of
+ * iterations. Pixels inside the set, that never escape, get the first color in the table.
+ *
+ * @author Johan Dykstrom
+ */
+enum Palette {
+
+    /** From black to red, and then from red to yellow. */
+    FIRE {
+        @Override
+        Color color(int index) {
+            return (index < 256) ? new Color(index, 0, 0) : new Color(255, index - 256, 0);
+        }
+    },
+
+    /** From black to blue, and then from blue to white. */
+    ICE {
+        @Override
+        Color color(int index) {
+            return (index < 256) ? new Color(0, 0, index) : new Color(index - 256, index - 256, 255);
+        }
+    },
+
+    /** From black to white. */
+    GRAYSCALE {
+        @Override
+        Color color(int index) {
+            return new Color(index / 2, index / 2, index / 2);
+        }
+    };
+
+    /** The palette used if nothing else is selected. */
+    static final Palette DEFAULT = FIRE;
+
+    /** The number of colors in each palette. */
+    private static final int SIZE = 256 * 2;
+
+    /** The RGB colors of this palette. */
+    private final int[] colors = new int[SIZE];
+
+    Palette() {
+        for (int index = 0; index < SIZE; index++) {
+            colors[index] = color(index).getRGB();
+        }
+    }
+
+    /**
+     * Returns the color with the given index in the palette, between 0 and 511.
+     */
+    abstract Color color(int index);
+
+    /**
+     * Converts the given "escape time" to an RGB color.
+     *
+     * @param iterations The escape time of the pixel, or the maximum number of iterations if it did not escape.
+     * @param maxIterations The maximum number of iterations used when calculating the image.
+     * @return The RGB color of the pixel.
+     */
+    int toRGB(int iterations, int maxIterations) {
+        double factor = (double) (SIZE - 1) / maxIterations;
+        int escapeTime = maxIterations - iterations;
+        return colors[(int) (escapeTime * factor)];
+    }
+}
@@ -1,22 +1,54 @@
 package se.dykstrom.rxjava.swing.mandel;
 
 /**
- * Contains parameters for calculating one segment of the image, including the y-coordinate for the
- * first pixel line in the segment, the width and height of the segment in pixels, and the image
- * attributes that defines coordinates and scale.
+ * Contains parameters for calculating one tile of the image, including the position of the upper left
+ * pixel in the tile, the width and height of the tile in pixels, and the image attributes that defines
+ * coordinates and scale of the whole image. If the image is a deep zoom image, the parameters also
+ * include the reference orbit, which is shared by all tiles of the image. The parameters may also include
+ * an iteration buffer, shared by all tiles of the image, to store the calculated escape times in.
+ * A tile below or above the real axis may be a mirror image of lines in another part of the image,
+ * see {@link MirrorCalculator}. Finally, the parameters include the precision to calculate the tile with.
  */
 class Parameters {
 
+    private final int firstX;
     private final int firstY;
     private final int width;
     private final int height;
     private final ImageAttributes imageAttributes;
+    private final ReferenceOrbit referenceOrbit;
+    private final IterationBuffer iterationBuffer;
+    private final Precision precision;
+    private final int mirrorY;
 
     Parameters(int firstY, int width, int height, ImageAttributes imageAttributes) {
+        this(0, firstY, width, height, imageAttributes, null);
+    }
+
+    Parameters(int firstX, int firstY, int width, int height, ImageAttributes imageAttributes, ReferenceOrbit referenceOrbit) {
+        this(firstX, firstY, width, height, imageAttributes, referenceOrbit, null);
+    }
+
+    Parameters(int firstX, int firstY, int width, int height, ImageAttributes imageAttributes, ReferenceOrbit referenceOrbit,
+               IterationBuffer iterationBuffer) {
+        this(firstX, firstY, width, height, imageAttributes, referenceOrbit, iterationBuffer, Precision.DOUBLE, -1);
+    }
+
+    Parameters(int firstX, int firstY, int width, int height, ImageAttributes imageAttributes, ReferenceOrbit referenceOrbit,
+               IterationBuffer iterationBuffer, Precision precision, int mirrorY) {
+        this.firstX = firstX;
         this.firstY = firstY;
         this.width = width;
         this.height = height;
         this.imageAttributes = imageAttributes;
+        this.referenceOrbit = referenceOrbit;
+        this.iterationBuffer = iterationBuffer;
+        this.precision = precision;
+        this.mirrorY = mirrorY;
+    }
+
+    int getFirstX() {
+        return firstX;
     }
 
     int getFirstY() {
@@ -35,8 +67,41 @@ class Parameters {
         return imageAttributes;
     }
 
+    /**
+     * Returns the reference orbit to use for deep zoom images, or {@code null} if this is not a deep zoom image.
+     */
+    ReferenceOrbit getReferenceOrbit() {
+        return referenceOrbit;
+    }
+
+    /**
+     * Returns the buffer to store the escape times of the whole image in, or {@code null} if they should not be stored.
+     */
+    IterationBuffer getIterationBuffer() {
+        return iterationBuffer;
+    }
+
+    /**
+     * Returns the precision to calculate the escape times with, if this is not a deep zoom image.
+     */
+    Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the Y position in the image of the line that the first line of this tile is a mirror image of,
+     * or -1 if this tile is not a mirror image. Line y in the tile is a mirror image of line mirrorY - y.
+     */
+    int getMirrorY() {
+        return mirrorY;
+    }
+
+    boolean isMirrored() {
+        return mirrorY >= 0;
+    }
+
     @Override
     public String toString() {
-        return "[" + firstY + ", " + width + "x" + height + ", " + imageAttributes + "]";
+        return "[" + firstX + ", " + firstY + ", " + width + "x" + height + ", " + imageAttributes + "]";
     }
 }
@@ -0,0 +1,167 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an RGB image in PNG format, one line at a time, without keeping the image in memory.
+ * The compressed image data is written in chunks of limited size as it is produced, so the memory
+ * used by the writer does not depend on the size of the image. This makes it possible to write
+ * images that are much too large to fit in memory, which is not possible with {@code ImageIO}.
+ *
+ * Each line is filtered with the PNG "Sub" filter, that stores the difference to the pixel to the
+ * left, before it is compressed. The Mandelbrot images have large areas of the same color, so this
+ * makes the image much smaller.
+ *
+ * @author Johan Dykstrom
+ */
+class PngWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /** The maximum size of the data in one IDAT chunk. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The PNG filter type "Sub". */
+    private static final byte FILTER_SUB = 1;
+
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ChunkOutputStream chunkStream = new ChunkOutputStream();
+    private final DeflaterOutputStream deflaterStream;
+
+    /** The filtered line, including the leading filter type byte. */
+    private final byte[] filtered;
+
+    private int lines;
+
+    /**
+     * Creates a new writer, and writes the PNG header.
+     *
+     * @param out The stream to write the image to.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    PngWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.filtered = new byte[1 + width * BYTES_PER_PIXEL];
+        this.deflaterStream = new DeflaterOutputStream(chunkStream, deflater, CHUNK_SIZE);
+
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerStream = new DataOutputStream(header);
+        headerStream.writeInt(width);
+        headerStream.writeInt(height);
+        headerStream.writeByte(8); // Bit depth
+        headerStream.writeByte(2); // Color type RGB
+        headerStream.writeByte(0); // Compression method
+        headerStream.writeByte(0); // Filter method
+        headerStream.writeByte(0); // No interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+    }
+
+    /**
+     * Writes the next line of the image.
+     *
+     * @param rgb An array that contains the RGB colors of the line.
+     * @param offset The offset in the array of the first pixel in the line.
+     */
+    void writeLine(int[] rgb, int offset) throws IOException {
+        if (lines == height) {
+            throw new IllegalStateException("all " + height + " lines already written");
+        }
+
+        filtered[0] = FILTER_SUB;
+        int previous = 0;
+        for (int x = 0, i = 1; x < width; x++, i += BYTES_PER_PIXEL) {
+            int color = rgb[offset + x];
+            filtered[i] = (byte) ((color >> 16) - (previous >> 16));
+            filtered[i + 1] = (byte) ((color >> 8) - (previous >> 8));
+            filtered[i + 2] = (byte) (color - previous);
+            previous = color;
+        }
+        deflaterStream.write(filtered);
+        lines++;
+    }
+
+    /**
+     * Finishes the image data, and writes the PNG trailer. All lines must have been written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lines != height) {
+                throw new IllegalStateException("only " + lines + " of " + height + " lines written");
+            }
+            deflaterStream.finish();
+            chunkStream.flush();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * An output stream that collects the compressed image data, and writes it as IDAT chunks.
+     */
+    private class ChunkOutputStream extends OutputStream {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, buffer.length - size);
+                System.arraycopy(bytes, offset, buffer, size, count);
+                size += count;
+                offset += count;
+                length -= count;
+                if (size == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk("IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
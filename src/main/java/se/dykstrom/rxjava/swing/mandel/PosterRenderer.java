@@ -0,0 +1,193 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Renders Mandelbrot images without a display, and writes them to disk in PNG format. This makes it
+ * possible to render images that are much too large to fit in memory, for example posters.
+ *
+ * The image is rendered in bands, as high as one tile, from top to bottom. The tiles in one band
+ * are calculated in parallel, and the lines are collected in a band buffer. When a band is complete,
+ * it is written to a {@link PngWriter} on a separate thread, while the next band is calculated. Thus,
+ * only two bands are kept in memory at the same time, regardless of the size of the image.
+ *
+ * For print quality, the edges of the image can be anti-aliased using adaptive supersampling, see
+ * {@link SupersamplingCalculator}. The number of samples per pixel along each axis is set with the
+ * system property {@code mandel.supersample}.
+ *
+ * Usage: PosterRenderer &lt;width&gt; &lt;height&gt; &lt;file&gt; [&lt;min x&gt; &lt;min y&gt; &lt;scale&gt;]
+ *
+ * @author Johan Dykstrom
+ */
+class PosterRenderer {
+
+    private static final Logger TLOG = Logger.getLogger(PosterRenderer.class.getName());
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final ImageAttributes imageAttributes;
+    private final Scheduler scheduler;
+
+    /** The precision to calculate the image with. */
+    private final Precision precision;
+
+    /** The number of samples per edge pixel along each axis, or 1 if the image is not supersampled. */
+    private final int samples;
+
+    /** The throughput of the last render, in megapixels per second. */
+    private double megapixelsPerSecond;
+
+    PosterRenderer(int width, int height, int tileSize, ImageAttributes imageAttributes, Scheduler scheduler) {
+        this(width, height, tileSize, imageAttributes, scheduler, SupersamplingCalculator.SAMPLES);
+    }
+
+    PosterRenderer(int width, int height, int tileSize, ImageAttributes imageAttributes, Scheduler scheduler, int samples) {
+        this.samples = samples;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.imageAttributes = imageAttributes;
+        this.scheduler = scheduler;
+        this.precision = Precision.select(imageAttributes, width, height);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 6) {
+            System.err.println("Usage: PosterRenderer <width> <height> <file> [<min x> <min y> <scale>]");
+            System.exit(1);
+        }
+
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        ImageAttributes imageAttributes;
+        if (args.length == 6) {
+            Coordinates coordinates = new Coordinates(new BigDecimal(args[3]), new BigDecimal(args[4]));
+            imageAttributes = new ImageAttributes(coordinates, Double.parseDouble(args[5]));
+        } else {
+            imageAttributes = new ImageAttributes(Coordinates.INITIAL_COORDINATES, Coordinates.INITIAL_SIZE / Math.min(width, height));
+        }
+
+        Scheduler scheduler = RenderExecutor.DEFAULT.createScheduler();
+        PosterRenderer renderer = new PosterRenderer(width, height, Mandel.DEFAULT_TILE_SIZE, imageAttributes, scheduler);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]))) {
+            RenderStatistics statistics = renderer.render(out);
+            System.out.printf("Rendered %dx%d pixels to %s with %s precision, %.1f MP/s %s%n",
+                    width, height, args[2], renderer.getPrecision(), renderer.getMegapixelsPerSecond(), statistics);
+        }
+    }
+
+    /**
+     * Renders the image, and writes it to the given stream in PNG format.
+     *
+     * @param out The stream to write the image to.
+     * @return The statistics of the render.
+     */
+    RenderStatistics render(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+
+        // Deep zoom images share one reference orbit for all bands
+        ReferenceOrbit referenceOrbit = null;
+        if (precision.usePerturbation(imageAttributes)) {
+            referenceOrbit = ReferenceOrbit.compute(imageAttributes, width, height);
+        }
+
+        RenderStatistics statistics = new RenderStatistics(width * (long) height);
+        int[][] bands = {new int[width * tileSize], new int[width * tileSize]};
+        ExecutorService encoder = Executors.newSingleThreadExecutor();
+
+        try (PngWriter writer = new PngWriter(out, width, height)) {
+            Future<?> encoding = CompletableFuture.completedFuture(null);
+            for (int bandY = 0, index = 0; bandY < height; bandY += tileSize, index++) {
+                int bandHeight = Math.min(tileSize, height - bandY);
+                int[] band = bands[index % 2];
+                calculateBand(band, bandY, bandHeight, referenceOrbit, statistics);
+
+                // Wait until the previous band has been written, before writing this band
+                await(encoding);
+                encoding = encoder.submit(() -> {
+                    for (int y = 0; y < bandHeight; y++) {
+                        writer.writeLine(band, y * width);
+                    }
+                    return null;
+                });
+            }
+            await(encoding);
+        } finally {
+            encoder.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        megapixelsPerSecond = width * (double) height / 1e6 / seconds;
+        TLOG.info(String.format("Rendered %s with %s precision in %.1f s, %.1f MP/s: %s",
+                imageAttributes, precision, seconds, megapixelsPerSecond, statistics));
+        statistics.painted();
+        return statistics;
+    }
+
+    double getMegapixelsPerSecond() {
+        return megapixelsPerSecond;
+    }
+
+    Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Calculates all tiles in the band that starts at line bandY, and copies the lines to the band buffer.
+     */
+    private void calculateBand(int[] band, int bandY, int bandHeight, ReferenceOrbit referenceOrbit, RenderStatistics statistics) {
+        List<Parameters> tiles = new ArrayList<>();
+        for (int x = 0; x < width; x += tileSize) {
+            tiles.add(new Parameters(x, bandY, Math.min(tileSize, width - x), bandHeight, imageAttributes, referenceOrbit,
+                    null, precision, -1));
+        }
+
+        Observable.from(tiles)
+                .flatMap(params -> LineObservable.blocksFromCalculator(createCalculator(params, statistics)).subscribeOn(scheduler))
+                .toBlocking()
+                .forEach(block -> {
+                    for (int i = 0; i < block.getHeight(); i++) {
+                        System.arraycopy(block.getRGB(), i * block.getWidth(),
+                                band, (block.getY() + i - bandY) * width + block.getX(), block.getWidth());
+                    }
+                    block.recycle();
+                });
+    }
+
+    private TileCalculator createCalculator(Parameters params, RenderStatistics statistics) {
+        if (samples > 1) {
+            return new SupersamplingCalculator(params, Kernel.DEFAULT, statistics, samples, SupersamplingCalculator.THRESHOLD);
+        }
+        return new LineByLineCalculator(params, Kernel.DEFAULT, statistics);
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing image", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("failed to write image", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.logging.Logger;
+
+/**
+ * The precisions that can be used to calculate the escape times of an image. Floats are faster than
+ * doubles, especially with the vector kernel that processes twice as many floats as doubles in each
+ * run, but can only be used for images that are not zoomed in very much. Double-doubles are much
+ * slower, but can be used for images that are zoomed in too deep for doubles.
+ *
+ * The precision is selected automatically for each image, depending on its scale and coordinates,
+ * see {@link #select(ImageAttributes, int, int)}. A precision can also be selected explicitly with the
+ * system property {@code mandel.precision} ({@code float}, {@code double}, or {@code double_double}).
+ *
+ * Deep zoom images are calculated using perturbation theory, with doubles, unless double-double
+ * precision has been selected explicitly.
+ *
+ * @author Johan Dykstrom
+ */
+enum Precision {
+
+    FLOAT {
+        @Override
+        void calc(Kernel kernel, ImageAttributes imageAttributes, int firstX, int step, int y, int maxIterations, int[] iterations) {
+            Coordinates coordinates = imageAttributes.coordinates();
+            float scale = (float) imageAttributes.scale();
+            kernel.calcFloat((float) coordinates.minX(), firstX, step, startY(imageAttributes, y), scale, maxIterations, iterations);
+        }
+
+        @Override
+        boolean isMirror(ImageAttributes imageAttributes, int y, int mirrorY) {
+            return startY(imageAttributes, y) == -startY(imageAttributes, mirrorY);
+        }
+
+        private float startY(ImageAttributes imageAttributes, int y) {
+            return (float) imageAttributes.coordinates().minY() + y * (float) imageAttributes.scale();
+        }
+    },
+
+    DOUBLE {
+        @Override
+        void calc(Kernel kernel, ImageAttributes imageAttributes, int firstX, int step, int y, int maxIterations, int[] iterations) {
+            Coordinates coordinates = imageAttributes.coordinates();
+            double scale = imageAttributes.scale();
+            kernel.calc(coordinates.minX(), firstX, step, startY(imageAttributes, y), scale, maxIterations, iterations);
+        }
+
+        @Override
+        boolean isMirror(ImageAttributes imageAttributes, int y, int mirrorY) {
+            return startY(imageAttributes, y) == -startY(imageAttributes, mirrorY);
+        }
+
+        private double startY(ImageAttributes imageAttributes, int y) {
+            return imageAttributes.coordinates().minY() + y * imageAttributes.scale();
+        }
+    },
+
+    DOUBLE_DOUBLE {
+        @Override
+        void calc(Kernel kernel, ImageAttributes imageAttributes, int firstX, int step, int y, int maxIterations, int[] iterations) {
+            Coordinates coordinates = imageAttributes.coordinates();
+            DoubleDoubleKernel.calc(coordinates.preciseMinX(), coordinates.preciseMinY(), firstX, step, y,
+                    imageAttributes.scale(), maxIterations, iterations);
+        }
+
+        @Override
+        boolean isMirror(ImageAttributes imageAttributes, int y, int mirrorY) {
+            return DoubleDoubleKernel.isMirror(imageAttributes.coordinates().preciseMinY(), imageAttributes.scale(), y, mirrorY);
+        }
+    };
+
+    private static final Logger TLOG = Logger.getLogger(Precision.class.getName());
+
+    /**
+     * The minimum distance between two pixels, measured in units in the last place of the largest
+     * coordinate in the image. A larger distance means that fewer bits are lost in rounding errors.
+     * For doubles, the distance must be large enough that double-double is selected before the scale
+     * reaches {@link ImageAttributes#DEEP_ZOOM_SCALE}, where perturbation takes over. With coordinates
+     * between 0.25 and 2, double-double takes over from double at a scale between 4e-12 and 3e-11.
+     */
+    private static final double FLOAT_MIN_ULPS = 4096;
+    private static final double DOUBLE_MIN_ULPS = 65536;
+
+    /** The precision selected with a system property, or {@code null} if it should be selected automatically. */
+    private static final Precision OVERRIDE = override();
+
+    /**
+     * Calculates the "escape time" of each pixel in one line of the image, using this precision.
+     *
+     * @param kernel The kernel to use, if this precision has kernels.
+     * @param imageAttributes The attributes of the image.
+     * @param firstX The X position of the first pixel in the line.
+     * @param step The distance in pixels between two calculated pixels.
+     * @param y The Y position of the line.
+     * @param maxIterations The maximum number of iterations.
+     * @param iterations The array to store the escape times in, one element per pixel.
+     */
+    abstract void calc(Kernel kernel, ImageAttributes imageAttributes, int firstX, int step, int y, int maxIterations, int[] iterations);
+
+    /**
+     * Returns true if the Y start values of the lines y and mirrorY, calculated using this
+     * precision, are exact negations of each other.
+     */
+    abstract boolean isMirror(ImageAttributes imageAttributes, int y, int mirrorY);
+
+    /**
+     * Returns the precision to use for an image with the given attributes and size. The lowest precision
+     * that keeps the distance between two pixels well above the rounding error of the coordinates is used.
+     */
+    static Precision select(ImageAttributes imageAttributes, int width, int height) {
+        if (OVERRIDE != null) {
+            return OVERRIDE;
+        }
+        if (imageAttributes.isDeepZoom()) {
+            // The deltas from the reference orbit are calculated with doubles
+            return DOUBLE;
+        }
+
+        Coordinates coordinates = imageAttributes.coordinates();
+        double scale = imageAttributes.scale();
+        double maxCoordinate = Math.max(
+                Math.max(Math.abs(coordinates.minX()), Math.abs(coordinates.minX() + width * scale)),
+                Math.max(Math.abs(coordinates.minY()), Math.abs(coordinates.minY() + height * scale)));
+        if (scale >= FLOAT_MIN_ULPS * Math.ulp((float) maxCoordinate)) {
+            return FLOAT;
+        } else if (scale >= DOUBLE_MIN_ULPS * Math.ulp(maxCoordinate)) {
+            return DOUBLE;
+        } else {
+            return DOUBLE_DOUBLE;
+        }
+    }
+
+    /**
+     * Returns true if images calculated using this precision and the given attributes
+     * should be calculated using perturbation theory.
+     */
+    boolean usePerturbation(ImageAttributes imageAttributes) {
+        return imageAttributes.isDeepZoom() && this != DOUBLE_DOUBLE;
+    }
+
+    private static Precision override() {
+        String name = System.getProperty("mandel.precision");
+        if (name == null) {
+            return null;
+        }
+        Precision precision = valueOf(name.toUpperCase());
+        TLOG.info("Using precision " + precision);
+        return precision;
+    }
+}
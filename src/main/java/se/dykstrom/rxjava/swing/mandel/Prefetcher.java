@@ -0,0 +1,194 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.observables.ConnectableObservable;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Calculates the tiles of views the user is likely to look at next, and stores them in the {@link TileCache},
+ * so they can be drawn without being calculated when the user actually goes there. Prefetching is speculative,
+ * and is cancelled as soon as an interactive render starts. Tiles that are cancelled in the middle are not
+ * stored, but the tiles that were completed before remain in the cache.
+ *
+ * The tiles are calculated on a pool of threads of its own, whose size is the CPU budget of the prefetcher.
+ * The number of threads can be set with the system property {@code mandel.prefetch.threads} (default half of
+ * the cores), which leaves the other cores to the rest of the application. Thread priorities are not used,
+ * since most platforms, including Linux, ignore them by default. The memory budget is the maximum amount of
+ * tile data prefetched for each image, set in megabytes with the system property {@code mandel.prefetch.size}
+ * (default 32), or 0 to disable prefetching. Each prefetched tile has an iteration buffer of its own, that
+ * is not allocated until the tile is known to be within the budget.
+ *
+ * Every render gets a new generation from {@link #cancel()}, and a prefetch is only started if no render has
+ * started since the render that requested it, so a prefetch requested when a render completes cannot cancel
+ * or run alongside a later render.
+ *
+ * Only the tiles that are calculated, and not mirrored, are prefetched. Deep zoom views are not prefetched,
+ * since they need a reference orbit that takes long to calculate, and cannot be cancelled.
+ *
+ * @author Johan Dykstrom
+ */
+class Prefetcher {
+
+    private static final Logger TLOG = Logger.getLogger(Prefetcher.class.getName());
+
+    private static final int DEFAULT_THREADS = Integer.getInteger("mandel.prefetch.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final long DEFAULT_SIZE_MB = Long.getLong("mandel.prefetch.size", 32);
+
+    private final TileCache cache;
+    private final int threads;
+    private final long maxBytes;
+    private final Scheduler scheduler;
+
+    /** Prefetched tiles are not included in the render metrics. */
+    private final RenderMetrics metrics = new RenderMetrics();
+
+    /** The generation of the latest render, incremented by {@link #cancel()}. */
+    private long generation;
+
+    /** The subscription of the prefetch in progress. */
+    private Subscription subscription = Subscriptions.unsubscribed();
+
+    /** The total number of tiles prefetched. */
+    private final AtomicLong prefetchedTiles = new AtomicLong();
+
+    Prefetcher(TileCache cache) {
+        this(cache, DEFAULT_THREADS, DEFAULT_SIZE_MB * 1024 * 1024);
+    }
+
+    Prefetcher(TileCache cache, int threads, long maxBytes) {
+        this.cache = cache;
+        this.threads = threads;
+        this.maxBytes = maxBytes;
+        AtomicInteger count = new AtomicInteger();
+        this.scheduler = Schedulers.from(Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mandel-prefetch-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Starts prefetching the tiles of the given views, in order, cancelling any prefetch in progress.
+     * The tiles are the same as the tiles created by {@link MandelController#paramObs}, so they are
+     * found in the cache when the view is drawn. Nothing is prefetched if a render has started since
+     * the render of the given generation.
+     *
+     * @param generation The generation of the render that requested the prefetch.
+     * @param views The views to prefetch, the most likely view first.
+     * @param tileSize The width and height of the tiles.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @return An Observable that completes when all tiles within the budget have been prefetched, mostly for testing.
+     */
+    synchronized Observable<Integer> prefetch(long generation, List<ImageAttributes> views, int tileSize, int width, int height) {
+        if (generation != this.generation || maxBytes <= 0) {
+            return Observable.just(0);
+        }
+        List<Parameters> tiles = new ArrayList<>();
+        for (ImageAttributes view : views) {
+            Precision precision = Precision.select(view, width, height);
+            if (precision.usePerturbation(view)) {
+                continue;
+            }
+            MandelController.tiles(tileSize, width, height, view, true, (x, y, tileWidth, tileHeight, mirrorY) ->
+                            new Parameters(x, y, tileWidth, tileHeight, view, null, null, precision, mirrorY)).stream()
+                    .filter(tile -> !tile.isMirrored())
+                    .forEach(tiles::add);
+        }
+        return prefetchTiles(generation, tiles);
+    }
+
+    /**
+     * Starts prefetching the given tiles, in order, cancelling any prefetch in progress. Tiles that are
+     * already in the cache are skipped, and the tiles after the memory budget has been used up are ignored.
+     * Tiles without an iteration buffer get one of their own, so they can be stored in the cache. Nothing is
+     * prefetched if a render has started since the render of the given generation.
+     *
+     * @param generation The generation of the render that requested the prefetch.
+     * @param candidates The tiles to prefetch, the most likely tile first.
+     * @return An Observable that completes when all tiles within the budget have been prefetched, mostly for testing.
+     */
+    synchronized Observable<Integer> prefetchTiles(long generation, List<Parameters> candidates) {
+        if (generation != this.generation) {
+            return Observable.just(0);
+        }
+        subscription.unsubscribe();
+
+        List<Parameters> tiles = new ArrayList<>();
+        long bytes = 0;
+        for (Parameters tile : candidates) {
+            if (cache.contains(tile)) {
+                continue;
+            }
+            bytes += tile.getWidth() * (long) tile.getHeight() * Character.BYTES;
+            if (bytes > maxBytes) {
+                break;
+            }
+            tiles.add(withIterationBuffer(tile));
+        }
+        if (tiles.isEmpty()) {
+            return Observable.just(0);
+        }
+
+        long pixels = tiles.stream().mapToLong(tile -> tile.getWidth() * (long) tile.getHeight()).sum();
+        RenderStatistics statistics = new RenderStatistics(pixels, metrics);
+        ConnectableObservable<Integer> prefetchObs = Observable.from(tiles)
+                .flatMap(params -> cache.store(params, LineObservable.blocksFromCalculator(
+                        new LineByLineCalculator(params, Kernel.DEFAULT, statistics))
+                        .subscribeOn(scheduler)), threads)
+                .doOnNext(Line::recycle)
+                .ignoreElements()
+                .cast(Integer.class)
+                .concatWith(Observable.defer(() -> Observable.just((int) statistics.getTiles())))
+                .doOnNext(count -> {
+                    prefetchedTiles.addAndGet(count);
+                    TLOG.info("Prefetched " + count + " tiles: " + statistics + ", cache = " + cache);
+                })
+                .doOnError(throwable -> TLOG.warning("Prefetch failed: " + throwable))
+                .onErrorResumeNext(Observable.empty())
+                .replay();
+        subscription = prefetchObs.connect();
+        return prefetchObs;
+    }
+
+    /**
+     * Returns the given tile if it has an iteration buffer, or otherwise a copy of the tile with an iteration
+     * buffer that covers only the tile.
+     */
+    private static Parameters withIterationBuffer(Parameters tile) {
+        if (tile.getIterationBuffer() != null) {
+            return tile;
+        }
+        IterationBuffer iterationBuffer = new IterationBuffer(tile.getFirstX(), tile.getFirstY(), tile.getWidth(),
+                tile.getHeight(), tile.getImageAttributes().maxIterations());
+        return new Parameters(tile.getFirstX(), tile.getFirstY(), tile.getWidth(), tile.getHeight(), tile.getImageAttributes(),
+                tile.getReferenceOrbit(), iterationBuffer, tile.getPrecision(), -1);
+    }
+
+    /**
+     * Cancels the prefetch in progress, if any, and starts a new generation, that is to be called when a render
+     * starts. The calculations stop after the chunk of pixels they are calculating, see {@link TileCalculator#cancel()}.
+     *
+     * @return The new generation, to pass to {@link #prefetch} or {@link #prefetchTiles} when the render completes.
+     */
+    synchronized long cancel() {
+        subscription.unsubscribe();
+        return ++generation;
+    }
+
+    long getPrefetchedTiles() {
+        return prefetchedTiles.get();
+    }
+}
@@ -0,0 +1,125 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Calculates one pass of a progressive, coarse to fine, rendering of a tile. The first pass calculates
+ * every 8th pixel in every 8th line, and draws each calculated pixel as an 8x8 block. The following
+ * passes halve the block size, until the last pass draws the tile at full resolution.
+ *
+ * The escape times calculated in one pass are stored in a sample array that is shared by all passes
+ * of the same tile, so each pass only calculates the pixels that have not been calculated before.
+ * In total, all passes calculate each pixel exactly once, which is the same amount of work as when
+ * calculating the tile line by line.
+ *
+ * Each pass produces one line for every line in the tile, so the lines of a coarse pass fill the whole
+ * tile, and are then overwritten by the lines of the next pass. The lines in a block are copies of the
+ * first line in the block, so that each line can be recycled on its own.
+ *
+ * @author Johan Dykstrom
+ */
+class ProgressiveCalculator extends TileCalculator {
+
+    /** The block sizes of the passes, from coarse to fine. */
+    static final Integer[] STEPS = {8, 4, 2, 1};
+
+    /** The block size of this pass. */
+    private final int step;
+
+    /** The escape times of all pixels in the tile calculated so far, line by line. */
+    private final int[] samples;
+
+    /** The colors of the last calculated line, copied to all lines in the same block. */
+    private final int[] rgb;
+
+    /**
+     * Creates a calculator for one pass of a progressive rendering.
+     *
+     * @param parameters Parameters for calculating the tile.
+     * @param kernel The kernel to use for calculating escape times.
+     * @param statistics The statistics of the render this pass is part of.
+     * @param step The block size of this pass, one of {@link #STEPS}.
+     * @param samples The escape times calculated in all previous passes, with one element per pixel.
+     */
+    ProgressiveCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics, int step, int[] samples) {
+        super(parameters, kernel, statistics);
+        this.step = step;
+        this.samples = samples;
+        this.rgb = new int[parameters.getWidth()];
+    }
+
+    /**
+     * Creates a sample array for a tile with the given parameters.
+     */
+    static int[] createSamples(Parameters parameters) {
+        return new int[parameters.getWidth() * parameters.getHeight()];
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        // Only the first line in each block is calculated, the others are copies
+        if (y % step == 0) {
+            calculateSamples(y);
+            if (isCancelled()) {
+                return null;
+            }
+            createRGB(y);
+        }
+        if (step == 1) {
+            // All samples in this line have now been calculated
+            storeIterations(y, samples, y * parameters.getWidth());
+        }
+        Line line = acquireLine(y);
+        System.arraycopy(rgb, 0, line.getRGB(), 0, rgb.length);
+        return line;
+    }
+
+    /**
+     * Calculates the samples in line y that have not been calculated in a previous pass.
+     */
+    private void calculateSamples(int y) {
+        final int width = parameters.getWidth();
+
+        int firstX;
+        int sampleStep;
+        if (step == STEPS[0]) {
+            // This is the first pass, so nothing has been calculated yet
+            firstX = 0;
+            sampleStep = step;
+        } else if (y % (step * 2) == 0) {
+            // This line was also part of the previous pass, so every other sample has already been calculated
+            firstX = step;
+            sampleStep = step * 2;
+        } else {
+            // This line is new in this pass
+            firstX = 0;
+            sampleStep = step;
+        }
+
+        if (firstX < width) {
+            Line scratch = acquireScratch((width - firstX + sampleStep - 1) / sampleStep);
+            int[] iterations = scratch.getRGB();
+            calcEscapeTimes(firstX, sampleStep, y, iterations);
+            for (int i = 0; i < iterations.length; i++) {
+                samples[y * width + firstX + i * sampleStep] = iterations[i];
+            }
+            scratch.recycle();
+        }
+    }
+
+    /**
+     * Creates the RGB colors for line y, drawing each sample as a block as wide as the step.
+     */
+    private void createRGB(int y) {
+        final int width = parameters.getWidth();
+        for (int x = 0; x < width; x += step) {
+            int color = toRGB(samples[y * width + x]);
+            for (int i = x; i < Math.min(x + step, width); i++) {
+                rgb[i] = color;
+            }
+        }
+    }
+}
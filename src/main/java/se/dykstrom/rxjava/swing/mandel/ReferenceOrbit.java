@@ -0,0 +1,183 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A reference orbit used to calculate deep zoom images using perturbation theory.
+ *
+ * When zooming in deeper than about 1e-13, doubles can no longer tell two neighbouring pixels apart.
+ * Instead of calculating every pixel with arbitrary precision, we calculate the orbit of a single
+ * reference point, in the middle of the image, with arbitrary precision. The orbit of every other pixel
+ * is then calculated as a small delta from the reference orbit. The delta can be calculated using doubles,
+ * since it only needs relative precision, and not absolute precision.
+ *
+ * If the orbit of a pixel comes closer to zero than the delta itself, the delta calculation loses precision,
+ * and the pixel would be drawn incorrectly (a "glitch"). This is detected, and the pixel is then rebased,
+ * that is, the delta is reset to the full value of the pixel orbit, and the reference orbit is restarted
+ * from the beginning. The same thing happens if the reference orbit escapes before the pixel orbit.
+ * See also <a href="https://en.wikipedia.org/wiki/Plotting_algorithms_for_the_Mandelbrot_set">Wikipedia</a>.
+ *
+ * @author Johan Dykstrom
+ */
+final class ReferenceOrbit {
+
+    private static final Logger TLOG = Logger.getLogger(ReferenceOrbit.class.getName());
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal FOUR = BigDecimal.valueOf(4);
+
+    /** The X position of the reference point in pixels. */
+    private final int referenceX;
+    /** The Y position of the reference point in pixels. */
+    private final int referenceY;
+    /** The scale of the image. */
+    private final double scale;
+    /** The X values of the reference orbit, starting with Z0 = 0. */
+    private final double[] orbitX;
+    /** The Y values of the reference orbit, starting with Z0 = 0. */
+    private final double[] orbitY;
+
+    private ReferenceOrbit(int referenceX, int referenceY, double scale, double[] orbitX, double[] orbitY) {
+        this.referenceX = referenceX;
+        this.referenceY = referenceY;
+        this.scale = scale;
+        this.orbitX = orbitX;
+        this.orbitY = orbitY;
+    }
+
+    /**
+     * Calculates the reference orbit for an image with the given attributes and size.
+     * The reference point is the pixel in the middle of the image.
+     *
+     * @param imageAttributes The image attributes that defines the image.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @return The calculated reference orbit.
+     */
+    static ReferenceOrbit compute(ImageAttributes imageAttributes, int width, int height) {
+        return computeAt(imageAttributes, width / 2, height / 2);
+    }
+
+    /**
+     * Calculates the reference orbit for an image with the given attributes, using the given pixel as
+     * reference point. This makes it possible to calculate the same reference orbit in another process.
+     *
+     * @param imageAttributes The image attributes that defines the image.
+     * @param referenceX The X position of the reference pixel.
+     * @param referenceY The Y position of the reference pixel.
+     * @return The calculated reference orbit.
+     */
+    static ReferenceOrbit computeAt(ImageAttributes imageAttributes, int referenceX, int referenceY) {
+        final double scale = imageAttributes.scale();
+        final int maxIterations = imageAttributes.maxIterations();
+        final MathContext mc = Coordinates.mathContext(scale);
+
+        Coordinates reference = imageAttributes.coordinates().translate(referenceX * scale, referenceY * scale, scale);
+        final BigDecimal cx = reference.preciseMinX();
+        final BigDecimal cy = reference.preciseMinY();
+
+        // Z0 = 0, and Z1 = C
+        double[] orbitX = new double[maxIterations + 1];
+        double[] orbitY = new double[maxIterations + 1];
+        BigDecimal x = cx;
+        BigDecimal y = cy;
+        int length = 1;
+        while (length <= maxIterations) {
+            orbitX[length] = x.doubleValue();
+            orbitY[length] = y.doubleValue();
+            length++;
+
+            BigDecimal xx = x.multiply(x, mc);
+            BigDecimal yy = y.multiply(y, mc);
+            if (xx.add(yy, mc).compareTo(FOUR) > 0) {
+                break;
+            }
+            BigDecimal tempX = xx.subtract(yy, mc).add(cx, mc);
+            y = x.multiply(y, mc).multiply(TWO, mc).add(cy, mc);
+            x = tempX;
+        }
+
+        TLOG.info("Calculated reference orbit of length " + length + " with precision " + mc.getPrecision());
+        return new ReferenceOrbit(referenceX, referenceY, scale,
+                Arrays.copyOf(orbitX, length), Arrays.copyOf(orbitY, length));
+    }
+
+    /**
+     * Calculates the "escape time" of every step:th pixel in one line of the image, and stores it in the given array.
+     *
+     * @param firstX The X position of the first pixel in the line.
+     * @param step The distance in pixels between two calculated pixels.
+     * @param y The Y position of the line in the image.
+     * @param maxIterations The maximum number of iterations.
+     * @param iterations The array to store the escape times in, one element per calculated pixel.
+     */
+    void calc(int firstX, int step, int y, int maxIterations, int[] iterations) {
+        final double dcy = (y - referenceY) * scale;
+        for (int x = 0; x < iterations.length; x++) {
+            iterations[x] = calc((firstX + x * step - referenceX) * scale, dcy, maxIterations);
+        }
+    }
+
+    /**
+     * Returns the "escape time" for the point that differs from the reference point by the given delta.
+     * The number of iterations is counted in the same way as in {@link Kernel#calc(double, double, int)}.
+     *
+     * @param dcx The X distance from the reference point.
+     * @param dcy The Y distance from the reference point.
+     * @param maxIterations The maximum number of iterations.
+     * @return The "escape time" of the given point.
+     */
+    int calc(double dcx, double dcy, int maxIterations) {
+        final int last = orbitX.length - 1;
+
+        // Start with Z1 = C, and delta = dC, to count iterations like the normal kernels
+        int m = 1;
+        double dx = dcx;
+        double dy = dcy;
+
+        int iteration = 0;
+
+        while (iteration < maxIterations) {
+            double x = orbitX[m] + dx;
+            double y = orbitY[m] + dy;
+            double r = x * x + y * y;
+            if (r > (2 * 2)) {
+                break;
+            }
+
+            // Rebase if the pixel orbit is closer to zero than the delta, or the reference orbit has ended
+            if (r < dx * dx + dy * dy || m == last) {
+                dx = x;
+                dy = y;
+                m = 0;
+            }
+
+            // delta' = (2 * Z + delta) * delta + dC
+            double tx = 2 * orbitX[m] + dx;
+            double ty = 2 * orbitY[m] + dy;
+            double tempX = tx * dx - ty * dy + dcx;
+            dy = tx * dy + ty * dx + dcy;
+            dx = tempX;
+            m++;
+            iteration++;
+        }
+
+        return iteration;
+    }
+
+    int getReferenceX() {
+        return referenceX;
+    }
+
+    int getReferenceY() {
+        return referenceY;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + referenceX + ", " + referenceY + ", length " + orbitX.length + "]";
+    }
+}
@@ -0,0 +1,166 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Calculates a tile on a {@link TileWorker}, selected by the {@link Coordinator}. The tile is sent to the
+ * worker when the first line is requested, and the escape times of the lines are then read from the
+ * connection one line at a time. Since the worker streams the lines as soon as they are calculated,
+ * the lines can be drawn while the rest of the tile is being calculated.
+ *
+ * If the connection to the worker fails, the worker is marked as dead, and the remaining lines of the
+ * tile are requested from another worker. If there are no live workers left, the remaining lines are
+ * calculated locally. Cancelling the calculation closes the connection, which makes the worker stop.
+ *
+ * @author Johan Dykstrom
+ */
+class RemoteTileCalculator extends TileCalculator {
+
+    /** The time to wait for a worker to accept a connection. */
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final Coordinator coordinator;
+
+    /** The escape times of the current line. */
+    private final int[] iterations;
+
+    /** The escape times of the current line, as read from the connection. */
+    private final byte[] bytes;
+
+    /** The worker that calculates the tile, or {@code null} if not connected. */
+    private InetSocketAddress worker;
+    private volatile Socket socket;
+    private DataInputStream in;
+
+    RemoteTileCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics, Coordinator coordinator) {
+        super(parameters, kernel, statistics);
+        this.coordinator = coordinator;
+        this.iterations = new int[parameters.getWidth()];
+        this.bytes = new byte[parameters.getWidth() * Character.BYTES];
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        if (!readLine(y)) {
+            if (isCancelled()) {
+                return null;
+            }
+            // No live workers left, so calculate the line locally
+            calcEscapeTimes(0, 1, y, iterations);
+        }
+        if (y == getLineCount() - 1) {
+            disconnect();
+        }
+
+        storeIterations(y, iterations, 0);
+        final Line line = acquireLine(y);
+        final int[] rgb = line.getRGB();
+        for (int x = 0; x < rgb.length; x++) {
+            rgb[x] = toRGB(iterations[x]);
+        }
+        return line;
+    }
+
+    @Override
+    void cancel() {
+        super.cancel();
+        // Closing the socket makes any blocking read fail, and the worker stop
+        Socket current = socket;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    /**
+     * Reads the escape times of line y from a worker, connecting to a new worker if needed.
+     *
+     * @return True if the line was read, false if there are no live workers, or the calculation was cancelled.
+     */
+    private boolean readLine(int y) {
+        while (!isCancelled()) {
+            if (in == null && !connect(y)) {
+                return false;
+            }
+            try {
+                in.readFully(bytes);
+                for (int x = 0, i = 0; x < iterations.length; x++, i += 2) {
+                    iterations[x] = ((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff);
+                }
+                statistics.addCalculatedPixels(iterations.length);
+                return true;
+            } catch (IOException e) {
+                if (!isCancelled()) {
+                    // The worker died, so request the rest of the tile from another worker
+                    coordinator.markDead(worker);
+                    coordinator.addReassignment();
+                }
+                disconnect();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Connects to the next live worker, and requests the lines from y to the end of the tile.
+     *
+     * @return True if a connection was established, false if there are no live workers.
+     */
+    private boolean connect(int y) {
+        InetSocketAddress candidate;
+        while ((candidate = coordinator.nextWorker()) != null && !isCancelled()) {
+            Socket candidateSocket = new Socket();
+            // The socket is assigned before connecting, so cancel() can close it while connecting, and the
+            // cancelled flag is checked again after that, in case cancel() ran before the socket was assigned
+            socket = candidateSocket;
+            if (isCancelled()) {
+                disconnect();
+                return false;
+            }
+            try {
+                candidateSocket.connect(candidate, CONNECT_TIMEOUT_MILLIS);
+                candidateSocket.setSoTimeout(coordinator.getReadTimeoutMillis());
+                TileRequest.of(parameters, y).write(new DataOutputStream(new BufferedOutputStream(candidateSocket.getOutputStream())));
+                worker = candidate;
+                in = new DataInputStream(new BufferedInputStream(candidateSocket.getInputStream()));
+                coordinator.markAlive(candidate);
+                return true;
+            } catch (IOException e) {
+                disconnect();
+                if (isCancelled()) {
+                    // The socket was closed by cancel(), so the worker is not to blame
+                    return false;
+                }
+                coordinator.markDead(candidate);
+            }
+        }
+        return false;
+    }
+
+    private void disconnect() {
+        Socket current = socket;
+        socket = null;
+        in = null;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * The kinds of executors that the tiles can be calculated on. Each render executor is a pool of its own,
+ * so rendering does not compete with other work for the threads of a shared scheduler.
+ *
+ * The executor used to calculate the tiles can be selected with the system property {@code mandel.executor}.
+ * If no executor is selected, a fork/join pool is used. Tiles calculated by worker processes, that spend
+ * most of the time waiting for the network, are always calculated on virtual threads, if available.
+ *
+ * @author Johan Dykstrom
+ */
+enum RenderExecutor {
+
+    /**
+     * A fixed pool with one thread per core, and one shared queue.
+     */
+    FIXED {
+        @Override
+        ExecutorService create() {
+            return Executors.newFixedThreadPool(CORES, threadFactory("mandel-render-"));
+        }
+    },
+
+    /**
+     * A fork/join pool with one thread per core, where idle threads steal tiles from busy threads.
+     */
+    FORK_JOIN {
+        @Override
+        ExecutorService create() {
+            return new ForkJoinPool(CORES, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("mandel-fork-join-" + thread.getPoolIndex());
+                return thread;
+            }, null, true);
+        }
+    },
+
+    /**
+     * One virtual thread per tile. Virtual threads are best suited for I/O-bound work. Before Java 21,
+     * or if virtual threads are not available, a cached pool of platform threads is used instead.
+     */
+    VIRTUAL {
+        @Override
+        ExecutorService create() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                TLOG.warning("Virtual threads not available, falling back to cached thread pool");
+                return Executors.newCachedThreadPool(threadFactory("mandel-io-"));
+            }
+        }
+    };
+
+    private static final Logger TLOG = Logger.getLogger(RenderExecutor.class.getName());
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /** The executor selected by the system property {@code mandel.executor}, or the default executor. */
+    static final RenderExecutor DEFAULT = select(System.getProperty("mandel.executor"));
+
+    /**
+     * Creates a new executor service of this kind.
+     */
+    abstract ExecutorService create();
+
+    /**
+     * Creates a new scheduler that executes its tasks on a new executor service of this kind.
+     */
+    Scheduler createScheduler() {
+        return Schedulers.from(create());
+    }
+
+    /**
+     * Returns the executor with the given name, ignoring case, or {@link #FORK_JOIN} if the name is {@code null}.
+     */
+    static RenderExecutor select(String name) {
+        RenderExecutor executor = (name != null) ? valueOf(name.toUpperCase()) : FORK_JOIN;
+        TLOG.info("Using render executor " + executor);
+        return executor;
+    }
+
+    /**
+     * Returns a factory that creates daemon threads, so the pool does not keep the application alive.
+     */
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,214 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects metrics for all renders, and publishes them as an MBean, so they can be inspected with
+ * for example JConsole. While {@link RenderStatistics} describes one render, this class accumulates
+ * the statistics of all renders, and keeps histograms of the time it takes to calculate a tile, the
+ * time a tile waits in the queue before it is calculated, and the time it takes to paint a line or
+ * block of lines. A summary of each frame is also logged, when the frame has been painted.
+ *
+ * @author Johan Dykstrom
+ */
+class RenderMetrics implements RenderMetricsMBean {
+
+    private static final Logger TLOG = Logger.getLogger(RenderMetrics.class.getName());
+
+    /** The name the shared instance is registered with. */
+    static final String OBJECT_NAME = "se.dykstrom.rxjava.swing.mandel:type=RenderMetrics";
+
+    /** The metrics updated by all renders. */
+    static final RenderMetrics SHARED = new RenderMetrics();
+
+    private final AtomicLong frames = new AtomicLong();
+
+    /** Updated by every calculating thread, see {@link RenderStatistics}. */
+    private final LongAdder tiles = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder supersampledPixels = new LongAdder();
+
+    private final Histogram tileTime = new Histogram();
+    private final Histogram queueWait = new Histogram();
+    private final Histogram paintTime = new Histogram();
+
+    private volatile double lastFramePixelsPerSecond;
+    private volatile double lastFrameIterationsPerSecond;
+    private volatile String lastFrameSummary = "";
+
+    /**
+     * Registers the shared instance with the platform MBean server, unless it has already been registered.
+     */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(SHARED, name);
+            }
+        } catch (JMException e) {
+            TLOG.warning("Failed to register render metrics: " + e);
+        }
+    }
+
+    void addPixels(long count) {
+        pixels.add(count);
+    }
+
+    void addIterations(long count) {
+        iterations.add(count);
+    }
+
+    void addSupersampledPixels(long count) {
+        supersampledPixels.add(count);
+    }
+
+    /**
+     * Records one calculated tile.
+     *
+     * @param queueNanos The time the tile waited before the calculation started.
+     * @param tileNanos The time it took to calculate and emit the tile.
+     */
+    void recordTile(long queueNanos, long tileNanos) {
+        tiles.increment();
+        queueWait.record(queueNanos);
+        tileTime.record(tileNanos);
+    }
+
+    void recordPaint(long nanos) {
+        paintTime.record(nanos);
+    }
+
+    /**
+     * Records one completed frame, and logs a summary of it.
+     */
+    void recordFrame(RenderStatistics statistics) {
+        long frame = frames.incrementAndGet();
+        double seconds = statistics.getElapsedNanos() / 1e9;
+        lastFramePixelsPerSecond = (seconds == 0) ? 0.0 : statistics.getCalculatedPixels() / seconds;
+        lastFrameIterationsPerSecond = (seconds == 0) ? 0.0 : statistics.getIterations() / seconds;
+        lastFrameSummary = String.format("%.0f ms, %.2f MP/s, %.1f M iterations/s, %d tiles (mean %.1f ms, max %.1f ms), "
+                        + "max queue wait %.1f ms, paint %.1f ms",
+                seconds * 1e3, lastFramePixelsPerSecond / 1e6, lastFrameIterationsPerSecond / 1e6, statistics.getTiles(),
+                statistics.getMeanTileMillis(), statistics.getMaxTileMillis(), statistics.getMaxQueueMillis(),
+                statistics.getPaintMillis());
+        TLOG.info("Frame " + frame + ": " + lastFrameSummary);
+    }
+
+    @Override
+    public long getFramesRendered() {
+        return frames.get();
+    }
+
+    @Override
+    public long getTilesCalculated() {
+        return tiles.sum();
+    }
+
+    @Override
+    public long getPixelsCalculated() {
+        return pixels.sum();
+    }
+
+    @Override
+    public long getIterationsCalculated() {
+        return iterations.sum();
+    }
+
+    @Override
+    public long getPixelsSupersampled() {
+        return supersampledPixels.sum();
+    }
+
+    @Override
+    public double getLastFramePixelsPerSecond() {
+        return lastFramePixelsPerSecond;
+    }
+
+    @Override
+    public double getLastFrameIterationsPerSecond() {
+        return lastFrameIterationsPerSecond;
+    }
+
+    @Override
+    public String getLastFrameSummary() {
+        return lastFrameSummary;
+    }
+
+    @Override
+    public double getTileTimeMeanMillis() {
+        return tileTime.getMeanMillis();
+    }
+
+    @Override
+    public double getTileTimeP50Millis() {
+        return tileTime.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getTileTimeP99Millis() {
+        return tileTime.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getTileTimeMaxMillis() {
+        return tileTime.getMaxMillis();
+    }
+
+    @Override
+    public double getQueueWaitMeanMillis() {
+        return queueWait.getMeanMillis();
+    }
+
+    @Override
+    public double getQueueWaitP99Millis() {
+        return queueWait.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getQueueWaitMaxMillis() {
+        return queueWait.getMaxMillis();
+    }
+
+    @Override
+    public double getPaintTimeMeanMillis() {
+        return paintTime.getMeanMillis();
+    }
+
+    @Override
+    public double getPaintTimeP99Millis() {
+        return paintTime.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getPaintTimeMaxMillis() {
+        return paintTime.getMaxMillis();
+    }
+
+    @Override
+    public void reset() {
+        frames.set(0);
+        tiles.reset();
+        pixels.reset();
+        iterations.reset();
+        supersampledPixels.reset();
+        tileTime.reset();
+        queueWait.reset();
+        paintTime.reset();
+        lastFramePixelsPerSecond = 0.0;
+        lastFrameIterationsPerSecond = 0.0;
+        lastFrameSummary = "";
+    }
+
+    @Override
+    public String toString() {
+        return "[frames " + getFramesRendered() + ", tiles " + tileTime + ", queue wait " + queueWait + ", paint " + paintTime + "]";
+    }
+}
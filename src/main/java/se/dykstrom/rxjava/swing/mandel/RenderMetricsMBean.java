@@ -0,0 +1,50 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * The management interface of {@link RenderMetrics}. All durations are in milliseconds.
+ *
+ * @author Johan Dykstrom
+ */
+public interface RenderMetricsMBean {
+
+    long getFramesRendered();
+
+    long getTilesCalculated();
+
+    long getPixelsCalculated();
+
+    long getIterationsCalculated();
+
+    long getPixelsSupersampled();
+
+    double getLastFramePixelsPerSecond();
+
+    double getLastFrameIterationsPerSecond();
+
+    String getLastFrameSummary();
+
+    double getTileTimeMeanMillis();
+
+    double getTileTimeP50Millis();
+
+    double getTileTimeP99Millis();
+
+    double getTileTimeMaxMillis();
+
+    double getQueueWaitMeanMillis();
+
+    double getQueueWaitP99Millis();
+
+    double getQueueWaitMaxMillis();
+
+    double getPaintTimeMeanMillis();
+
+    double getPaintTimeP99Millis();
+
+    double getPaintTimeMaxMillis();
+
+    /**
+     * Resets all counters and histograms.
+     */
+    void reset();
+}
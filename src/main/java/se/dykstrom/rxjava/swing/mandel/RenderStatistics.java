@@ -0,0 +1,230 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects statistics for one render of an image. The statistics are updated by the tile calculators,
+ * possibly from several threads at once. All updates are also added to the {@link RenderMetrics}
+ * that accumulate the statistics of all renders.
+ *
+ * The counters are updated once per line by every calculating thread, but only read when the render
+ * is summarized, so they are {@link LongAdder}s rather than atomic longs, that would make all threads
+ * contend for the same cache line.
+ *
+ * @author Johan Dykstrom
+ */
+class RenderStatistics {
+
+    /** The number of pixels in the image. */
+    private final long totalPixels;
+
+    /** The number of pixels whose escape time has actually been calculated. */
+    private final LongAdder calculatedPixels = new LongAdder();
+
+    /** The number of pixels that have been supersampled, see {@link SupersamplingCalculator}. */
+    private final LongAdder supersampledPixels = new LongAdder();
+
+    /** The sum of the escape times of the calculated pixels. */
+    private final LongAdder iterations = new LongAdder();
+
+    /** The number of tiles calculated, and the total and maximum time it took to calculate them. */
+    private final LongAdder tiles = new LongAdder();
+    private final LongAdder tileNanos = new LongAdder();
+    private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+
+    /** The maximum time a tile waited before its calculation started. */
+    private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+    /** The total time spent painting the image. */
+    private final LongAdder paintNanos = new LongAdder();
+
+    /** The time when the render started. */
+    private final long startNanos = System.nanoTime();
+
+    private final RenderMetrics metrics;
+
+    private volatile boolean completed;
+    private volatile boolean cancelled;
+
+    RenderStatistics(long totalPixels) {
+        this(totalPixels, RenderMetrics.SHARED);
+    }
+
+    RenderStatistics(long totalPixels, RenderMetrics metrics) {
+        this.totalPixels = totalPixels;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds the given number of calculated pixels.
+     */
+    void addCalculatedPixels(long pixels) {
+        calculatedPixels.add(pixels);
+        metrics.addPixels(pixels);
+    }
+
+    /**
+     * Adds the given number of supersampled pixels. The samples themselves are added as calculated pixels.
+     */
+    void addSupersampledPixels(long pixels) {
+        supersampledPixels.add(pixels);
+        metrics.addSupersampledPixels(pixels);
+    }
+
+    /**
+     * Adds the given number of iterations, that is, the sum of the escape times of some calculated pixels.
+     * Pixels found to be inside the set without iterating them to the end still count as the maximum
+     * number of iterations, so this is an upper bound of the work actually done.
+     */
+    void addIterations(long count) {
+        iterations.add(count);
+        metrics.addIterations(count);
+    }
+
+    /**
+     * Adds one calculated tile. The queue wait is measured from the time the tile was queued, and not from
+     * the start of the render, so it is only the time the tile waited for a thread, and does not include
+     * the time before the tile was emitted to the scheduler.
+     *
+     * @param queuedNanos The time when the tile was queued on the scheduler.
+     * @param tileStartNanos The time when the calculation of the tile started.
+     * @param tileEndNanos The time when the last line of the tile had been emitted.
+     */
+    void addTile(long queuedNanos, long tileStartNanos, long tileEndNanos) {
+        long queue = tileStartNanos - queuedNanos;
+        long tile = tileEndNanos - tileStartNanos;
+        tiles.increment();
+        tileNanos.add(tile);
+        maxTileNanos.accumulate(tile);
+        maxQueueNanos.accumulate(queue);
+        metrics.recordTile(queue, tile);
+    }
+
+    /**
+     * Adds the time it took to paint one line, or block of lines.
+     */
+    void addPaintTime(long nanos) {
+        paintNanos.add(nanos);
+        metrics.recordPaint(nanos);
+    }
+
+    /**
+     * Marks the frame as painted, that is, all lines have been drawn, and records it in the metrics.
+     */
+    void painted() {
+        metrics.recordFrame(this);
+    }
+
+    /**
+     * Marks the render as completed, that is, all lines have been emitted.
+     */
+    void complete() {
+        completed = true;
+    }
+
+    /**
+     * Marks the render as cancelled, unless it has already completed.
+     *
+     * @return True if the render was cancelled, false if it had already completed.
+     */
+    boolean cancel() {
+        if (!completed) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    long getTotalPixels() {
+        return totalPixels;
+    }
+
+    long getCalculatedPixels() {
+        return calculatedPixels.sum();
+    }
+
+    long getSupersampledPixels() {
+        return supersampledPixels.sum();
+    }
+
+    /**
+     * Returns the fraction of the pixels in the image that have been supersampled.
+     */
+    double getSupersampledFraction() {
+        return (totalPixels == 0) ? 0.0 : (double) getSupersampledPixels() / totalPixels;
+    }
+
+    /**
+     * Returns the number of calculated pixels and samples per pixel in the image, that is, the cost of
+     * the render compared to calculating each pixel once.
+     */
+    double getSampleRatio() {
+        return (totalPixels == 0) ? 0.0 : (double) getCalculatedPixels() / totalPixels;
+    }
+
+    long getIterations() {
+        return iterations.sum();
+    }
+
+    long getTiles() {
+        return tiles.sum();
+    }
+
+    double getMeanTileMillis() {
+        long n = tiles.sum();
+        return (n == 0) ? 0.0 : tileNanos.sum() / 1e6 / n;
+    }
+
+    double getMaxTileMillis() {
+        return maxTileNanos.get() / 1e6;
+    }
+
+    double getMaxQueueMillis() {
+        return maxQueueNanos.get() / 1e6;
+    }
+
+    double getPaintMillis() {
+        return paintNanos.sum() / 1e6;
+    }
+
+    /**
+     * Returns the time since the render started.
+     */
+    long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Returns the fraction of the pixels in the image that did not have to be calculated,
+     * for example because they were filled in by the {@link SubdivisionCalculator}.
+     */
+    double getSkippedFraction() {
+        return (totalPixels == 0) ? 0.0 : 1.0 - (double) getCalculatedPixels() / totalPixels;
+    }
+
+    /**
+     * Returns the number of pixels that did not have to be calculated because the render was cancelled.
+     * This includes pixels that would have been skipped anyway, so it is an upper bound of the work avoided.
+     */
+    long getAvoidedPixels() {
+        return cancelled ? totalPixels - getCalculatedPixels() : 0;
+    }
+
+    @Override
+    public String toString() {
+        if (cancelled) {
+            return String.format("[pixels %d, calculated %d, cancelled, avoided %d]",
+                    totalPixels, getCalculatedPixels(), getAvoidedPixels());
+        }
+        if (getSupersampledPixels() > 0) {
+            return String.format("[pixels %d, calculated %d, supersampled %.1f%%, %.2f samples per pixel]",
+                    totalPixels, getCalculatedPixels(), getSupersampledFraction() * 100, getSampleRatio());
+        }
+        return String.format("[pixels %d, calculated %d, skipped %.1f%%]",
+                totalPixels, getCalculatedPixels(), getSkippedFraction() * 100);
+    }
+}
@@ -0,0 +1,101 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.List;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * The strategies that can be used to calculate the tiles of an image, and emit the resulting lines.
+ *
+ * @author Johan Dykstrom
+ */
+enum RenderStrategy {
+
+    /**
+     * Calculates all tiles in parallel, each tile line by line at full resolution.
+     */
+    LINE_BY_LINE {
+        @Override
+        Observable<Line> lineObs(Observable<Parameters> paramObs, Scheduler scheduler, RenderStatistics statistics, TileCache cache) {
+            return paramObs.flatMap(params -> cache.store(params, LineObservable.blocksFromCalculator(
+                    new LineByLineCalculator(params, Kernel.DEFAULT, statistics))
+                    .subscribeOn(scheduler)));
+        }
+    },
+
+    /**
+     * Calculates the image in several passes, from coarse to fine, see {@link ProgressiveCalculator}.
+     * All tiles are calculated in parallel in each pass, but a pass is not started until the previous
+     * pass has completed. Thus, the whole image is drawn at low resolution very quickly, and the
+     * details are then filled in.
+     */
+    PROGRESSIVE {
+        @Override
+        Observable<Line> lineObs(Observable<Parameters> paramObs, Scheduler scheduler, RenderStatistics statistics, TileCache cache) {
+            return paramObs.toList().flatMap(tiles -> {
+                List<int[]> samples = tiles.stream().map(ProgressiveCalculator::createSamples).toList();
+                return Observable.from(ProgressiveCalculator.STEPS)
+                        .concatMap(step -> Observable.range(0, tiles.size())
+                                .flatMap(i -> {
+                                    Observable<Line> lineObs = LineObservable.blocksFromCalculator(
+                                            new ProgressiveCalculator(tiles.get(i), Kernel.DEFAULT, statistics, step, samples.get(i)))
+                                            .subscribeOn(scheduler);
+                                    // Only the last pass produces the tile at full resolution
+                                    return (step == 1) ? cache.store(tiles.get(i), lineObs) : lineObs;
+                                }));
+            });
+        }
+    },
+
+    /**
+     * Calculates all tiles in parallel, each tile using rectangle subdivision, see {@link SubdivisionCalculator}.
+     * Subdivision may fill a rectangle that a thin filament passes through, so the tiles are not stored in the
+     * cache, from where they would also be drawn by the other strategies.
+     */
+    SUBDIVISION {
+        @Override
+        Observable<Line> lineObs(Observable<Parameters> paramObs, Scheduler scheduler, RenderStatistics statistics, TileCache cache) {
+            return paramObs.flatMap(params -> cache.complete(params, LineObservable.blocksFromCalculator(
+                    new SubdivisionCalculator(params, Kernel.DEFAULT, statistics))
+                    .subscribeOn(scheduler)));
+        }
+
+        @Override
+        boolean isExact() {
+            return false;
+        }
+    },
+
+    /**
+     * Calculates the tiles on a number of worker processes, see {@link Coordinator}. The scheduler is not
+     * used, since the tiles are calculated on virtual threads, while waiting for the workers.
+     */
+    DISTRIBUTED {
+        @Override
+        Observable<Line> lineObs(Observable<Parameters> paramObs, Scheduler scheduler, RenderStatistics statistics, TileCache cache) {
+            return Coordinator.getDefault().lineObs(paramObs, statistics, cache);
+        }
+    };
+
+    /**
+     * Returns an Observable that calculates the tiles emitted by {@code paramObs} on the given
+     * scheduler, and emits the resulting lines in blocks, see {@link LineBlock}. Each tile is stored
+     * in the cache when it has been calculated exactly at full resolution.
+     *
+     * @param paramObs An Observable that emits one Parameters object per tile.
+     * @param scheduler The scheduler to calculate the tiles on.
+     * @param statistics The statistics to update while calculating the tiles.
+     * @param cache The cache to store the calculated tiles in.
+     * @return An Observable that emits image lines.
+     */
+    abstract Observable<Line> lineObs(Observable<Parameters> paramObs, Scheduler scheduler, RenderStatistics statistics, TileCache cache);
+
+    /**
+     * Returns true if this strategy calculates the same escape times as calculating every pixel, so the
+     * tiles it calculates can be stored in the cache.
+     */
+    boolean isExact() {
+        return true;
+    }
+}
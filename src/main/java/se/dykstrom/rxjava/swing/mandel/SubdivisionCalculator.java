@@ -0,0 +1,160 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.Arrays;
+
+/**
+ * Calculates a tile using the Mariani-Silver algorithm, also known as rectangle subdivision. Only the
+ * border of a rectangle is calculated. If all pixels on the border have the same escape time, the whole
+ * rectangle is filled with that escape time. Otherwise, the rectangle is divided into four smaller
+ * rectangles, and the process is repeated for each of them. Rectangles that are too small to divide
+ * are calculated pixel by pixel.
+ *
+ * The algorithm relies on the Mandelbrot set being connected, and large areas of the same escape time
+ * being bounded by their own borders. This makes it possible to skip most pixels inside the set, and
+ * in the uniform bands around it. The result is an approximation, and is not guaranteed to be the same
+ * as calculating every pixel: a filament thinner than a pixel can pass between two border pixels, and
+ * the pixels it covers inside the rectangle are then filled with the escape time of the border. The
+ * minimum rectangle size makes this rare at normal zoom levels. Since the escape times may differ, tiles
+ * calculated by subdivision are never stored in the {@link TileCache}.
+ *
+ * The whole tile is calculated when the first line is requested. The lines are then produced from
+ * the calculated escape times. If the calculation is cancelled, no more rectangles are calculated.
+ *
+ * @author Johan Dykstrom
+ */
+class SubdivisionCalculator extends TileCalculator {
+
+    /** Rectangles with a width or height smaller than this are calculated pixel by pixel. */
+    private static final int MIN_SIZE = 4;
+
+    /** Marks a pixel that has not been calculated yet. */
+    private static final int UNKNOWN = -1;
+
+    /** The block from the shared {@link LinePool} that holds the escape times, recycled after the last line. */
+    private LineBlock block;
+
+    /** The escape times of all pixels in the tile, line by line. */
+    private int[] iterations;
+
+    SubdivisionCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics) {
+        super(parameters, kernel, statistics);
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        if (iterations == null) {
+            block = LinePool.SHARED.acquireBlock(0, 0, parameters.getWidth(), parameters.getHeight());
+            iterations = block.getRGB();
+            Arrays.fill(iterations, UNKNOWN);
+            subdivide(0, 0, parameters.getWidth(), parameters.getHeight());
+        }
+        if (isCancelled()) {
+            return null;
+        }
+
+        final int width = parameters.getWidth();
+        storeIterations(y, iterations, y * width);
+        final Line line = acquireLine(y);
+        final int[] rgb = line.getRGB();
+        for (int x = 0; x < width; x++) {
+            rgb[x] = toRGB(iterations[y * width + x]);
+        }
+        if (y == parameters.getHeight() - 1) {
+            block.recycle();
+        }
+        return line;
+    }
+
+    /**
+     * Calculates the rectangle with the given position and size, by filling it or dividing it.
+     * The rectangle is specified in tile coordinates.
+     */
+    private void subdivide(int x, int y, int width, int height) {
+        if (isCancelled()) {
+            return;
+        }
+        if (width < MIN_SIZE || height < MIN_SIZE) {
+            for (int line = y; line < y + height; line++) {
+                calculateRun(x, line, width);
+            }
+            return;
+        }
+
+        // Calculate the border
+        calculateRun(x, y, width);
+        calculateRun(x, y + height - 1, width);
+        for (int line = y + 1; line < y + height - 1; line++) {
+            calculateRun(x, line, 1);
+            calculateRun(x + width - 1, line, 1);
+        }
+
+        if (isBorderUniform(x, y, width, height)) {
+            // Fill the inside of the rectangle with the escape time of the border
+            int value = iterations[index(x, y)];
+            for (int line = y + 1; line < y + height - 1; line++) {
+                Arrays.fill(iterations, index(x + 1, line), index(x + width - 1, line), value);
+            }
+        } else {
+            // Divide into four rectangles that share their borders with each other
+            int halfWidth = width / 2;
+            int halfHeight = height / 2;
+            subdivide(x, y, halfWidth + 1, halfHeight + 1);
+            subdivide(x + halfWidth, y, width - halfWidth, halfHeight + 1);
+            subdivide(x, y + halfHeight, halfWidth + 1, height - halfHeight);
+            subdivide(x + halfWidth, y + halfHeight, width - halfWidth, height - halfHeight);
+        }
+    }
+
+    /**
+     * Returns true if all pixels on the border of the given rectangle have the same escape time.
+     */
+    private boolean isBorderUniform(int x, int y, int width, int height) {
+        int value = iterations[index(x, y)];
+        for (int i = x; i < x + width; i++) {
+            if (iterations[index(i, y)] != value || iterations[index(i, y + height - 1)] != value) {
+                return false;
+            }
+        }
+        for (int line = y + 1; line < y + height - 1; line++) {
+            if (iterations[index(x, line)] != value || iterations[index(x + width - 1, line)] != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the escape times of all pixels in the given run that have not been calculated before.
+     */
+    private void calculateRun(int x, int y, int length) {
+        int start = x;
+        final int end = x + length;
+        while (start < end) {
+            // Skip pixels that are already known
+            while (start < end && iterations[index(start, y)] != UNKNOWN) {
+                start++;
+            }
+            int stop = start;
+            while (stop < end && iterations[index(stop, y)] == UNKNOWN) {
+                stop++;
+            }
+            if (stop > start) {
+                Line scratch = acquireScratch(stop - start);
+                int[] run = scratch.getRGB();
+                calcEscapeTimes(start, 1, y, run);
+                System.arraycopy(run, 0, iterations, index(start, y), run.length);
+                scratch.recycle();
+            }
+            start = stop;
+        }
+    }
+
+    private int index(int x, int y) {
+        return y * parameters.getWidth() + x;
+    }
+}
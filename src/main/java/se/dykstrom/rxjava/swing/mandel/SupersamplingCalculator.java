@@ -0,0 +1,154 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Calculates the lines of a tile one at a time, from top to bottom, with adaptive supersampling for
+ * anti-aliasing. Each line is first calculated at full resolution. A pixel whose escape time differs
+ * by more than a threshold from that of any of its eight neighbours is on an edge, and is supersampled:
+ * its color is the average color of a grid of samples x samples points evenly spread over the pixel.
+ * All other pixels keep their color. Since edges usually cover a small part of the image, this costs
+ * a fraction of supersampling every pixel.
+ *
+ * To compare the pixels with their neighbours, the calculator keeps the escape times of three lines
+ * at a time, and also calculates a border of one pixel around the tile. The escape times stored in
+ * the iteration buffer are those of the full resolution pixels. Deep zoom images are not supersampled,
+ * since the reference orbit can only be used for whole pixels.
+ *
+ * @author Johan Dykstrom
+ */
+class SupersamplingCalculator extends TileCalculator {
+
+    /** The number of samples per pixel along each axis, selected with a system property. 1 turns supersampling off. */
+    static final int SAMPLES = Integer.getInteger("mandel.supersample", 1);
+
+    /** The difference in escape time between two neighbours that makes a pixel an edge pixel. */
+    static final int THRESHOLD = Integer.getInteger("mandel.supersample.threshold", 8);
+
+    private final int samples;
+    private final int threshold;
+
+    /** The image the samples are taken from, or {@code null} if the pixels are not supersampled. */
+    private final ImageAttributes sampleAttributes;
+
+    /** The precision to calculate the samples with, that may be higher than that of the tile. */
+    private final Precision samplePrecision;
+
+    /** The escape times of the line above, the current line, and the line below, including the border. */
+    private int[] above;
+    private int[] current;
+    private int[] below;
+
+    /** The escape times of one line of samples within one pixel. */
+    private final int[] sampleLine;
+
+    SupersamplingCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics) {
+        this(parameters, kernel, statistics, SAMPLES, THRESHOLD);
+    }
+
+    SupersamplingCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics, int samples, int threshold) {
+        super(parameters, kernel, statistics);
+        this.samples = samples;
+        this.threshold = threshold;
+        this.above = new int[parameters.getWidth() + 2];
+        this.current = new int[parameters.getWidth() + 2];
+        this.below = new int[parameters.getWidth() + 2];
+        this.sampleLine = new int[samples];
+
+        if (samples > 1 && parameters.getReferenceOrbit() == null) {
+            // Sample (x * samples + i) is at x + (i + 0.5) / samples - 0.5 in the pixels of the image
+            ImageAttributes imageAttributes = parameters.getImageAttributes();
+            double sampleScale = imageAttributes.scale() / samples;
+            double shift = -(samples - 1) / 2.0 * sampleScale;
+            this.sampleAttributes = new ImageAttributes(imageAttributes.coordinates().translate(shift, shift, sampleScale),
+                    sampleScale, imageAttributes.palette());
+            Precision selected = Precision.select(sampleAttributes,
+                    (parameters.getFirstX() + parameters.getWidth()) * samples, (parameters.getFirstY() + parameters.getHeight()) * samples);
+            this.samplePrecision = (selected.compareTo(parameters.getPrecision()) > 0) ? selected : parameters.getPrecision();
+        } else {
+            this.sampleAttributes = null;
+            this.samplePrecision = parameters.getPrecision();
+        }
+    }
+
+    @Override
+    int getLineCount() {
+        return parameters.getHeight();
+    }
+
+    @Override
+    Line calculateLine(int y) {
+        if (y == 0) {
+            // The line above the tile, and the first line, become the line above and the current line below
+            calcEscapeTimes(-1, 1, -1, current);
+            calcEscapeTimes(-1, 1, 0, below);
+        }
+
+        // Move one line down
+        int[] previous = above;
+        above = current;
+        current = below;
+        below = previous;
+        calcEscapeTimes(-1, 1, y + 1, below);
+        if (isCancelled()) {
+            return null;
+        }
+        storeIterations(y, current, 1);
+
+        final Line line = acquireLine(y);
+        final int[] rgb = line.getRGB();
+        int supersampled = 0;
+        for (int x = 0; x < rgb.length; x++) {
+            if (sampleAttributes != null && isEdge(x + 1)) {
+                if (isCancelled()) {
+                    line.recycle();
+                    return null;
+                }
+                rgb[x] = supersample(x, y);
+                supersampled++;
+            } else {
+                rgb[x] = toRGB(current[x + 1]);
+            }
+        }
+        statistics.addSupersampledPixels(supersampled);
+        return line;
+    }
+
+    /**
+     * Returns true if the escape time of the pixel with the given index in the current line differs
+     * by more than the threshold from that of any of its neighbours.
+     */
+    private boolean isEdge(int index) {
+        final int iterations = current[index];
+        for (int i = index - 1; i <= index + 1; i++) {
+            if (Math.abs(above[i] - iterations) > threshold
+                    || Math.abs(current[i] - iterations) > threshold
+                    || Math.abs(below[i] - iterations) > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the average color of the samples within the pixel at the given position in the tile.
+     */
+    private int supersample(int x, int y) {
+        final int sampleX = (parameters.getFirstX() + x) * samples;
+        final int sampleY = (parameters.getFirstY() + y) * samples;
+        int alpha = 0;
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int i = 0; i < samples; i++) {
+            calcSamples(samplePrecision, sampleAttributes, sampleX, sampleY + i, sampleLine);
+            for (int iterations : sampleLine) {
+                int color = toRGB(iterations);
+                alpha = color & 0xff000000;
+                red += (color >> 16) & 0xff;
+                green += (color >> 8) & 0xff;
+                blue += color & 0xff;
+            }
+        }
+        final int count = samples * samples;
+        return alpha | ((red + count / 2) / count) << 16 | ((green + count / 2) / count) << 8 | ((blue + count / 2) / count);
+    }
+}
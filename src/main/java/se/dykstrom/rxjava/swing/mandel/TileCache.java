@@ -0,0 +1,275 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * A bounded cache of calculated tiles, that makes it possible to draw an image that has been drawn before
+ * without calculating it again, for example when undoing a zoom. The cache stores the escape times of
+ * each tile, so a cached tile can be drawn with any palette. The cache keeps track of the memory used,
+ * and when it is full, the least recently used tiles are evicted.
+ *
+ * The cache can be backed by a persistent {@link TileStore}. Tiles that are not found in memory are then
+ * looked up in the store, and all tiles put in the cache are also written to the store.
+ *
+ * This class is thread safe.
+ *
+ * @author Johan Dykstrom
+ */
+class TileCache {
+
+    private static final Logger TLOG = Logger.getLogger(TileCache.class.getName());
+
+    /** The default maximum size of the cache in megabytes. */
+    private static final long DEFAULT_SIZE_MB = Long.getLong("mandel.cache.size", 128);
+
+    /** The estimated memory used by each cache entry, in addition to the tile data itself. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /** A map of cached tiles, in order of access, with the least recently used tile first. */
+    private final Map<Key, char[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The maximum memory to use for cached tiles, in bytes. */
+    private final long maxBytes;
+
+    /** The persistent store that backs this cache, or {@code null} if none. */
+    private final TileStore store;
+
+    /** A subject that emits the parameters of each tile that is complete in its iteration buffer. */
+    private final Subject<Parameters, Parameters> completedTiles = PublishSubject.<Parameters>create().toSerialized();
+
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    TileCache() {
+        this(DEFAULT_SIZE_MB * 1024 * 1024);
+    }
+
+    TileCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    TileCache(TileStore store) {
+        this(DEFAULT_SIZE_MB * 1024 * 1024, store);
+    }
+
+    TileCache(long maxBytes, TileStore store) {
+        this.maxBytes = maxBytes;
+        this.store = store;
+    }
+
+    /**
+     * Looks up the tile with the given parameters. If the tile is found, its escape times are stored in
+     * the iteration buffer of the parameters, if there is one, and its lines are added to the given list.
+     *
+     * @param parameters The parameters of the tile to look up.
+     * @param lines The list to add the lines to.
+     * @return True if the tile was found in the cache.
+     */
+    boolean getLines(Parameters parameters, List<Line> lines) {
+        final Key key = new Key(parameters);
+        char[] iterations;
+        synchronized (this) {
+            iterations = tiles.get(key);
+            if (iterations == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        if (iterations == null && store != null) {
+            iterations = store.get(key.id());
+            if (iterations != null) {
+                // Keep the tile in memory, but there is no need to write it to the store again
+                putInMemory(key, iterations);
+            }
+        }
+        if (iterations == null) {
+            return false;
+        }
+
+        final int width = parameters.getWidth();
+        final int height = parameters.getHeight();
+        if (parameters.getIterationBuffer() != null) {
+            parameters.getIterationBuffer().set(parameters.getFirstX(), parameters.getFirstY(), width, height, iterations);
+        }
+
+        final Palette palette = parameters.getImageAttributes().palette();
+        final int maxIterations = parameters.getImageAttributes().maxIterations();
+        for (int y = 0; y < height; y++) {
+            Line line = LinePool.SHARED.acquire(parameters.getFirstX(), parameters.getFirstY() + y, width);
+            int[] rgb = line.getRGB();
+            for (int x = 0; x < width; x++) {
+                rgb[x] = palette.toRGB(iterations[y * width + x], maxIterations);
+            }
+            lines.add(line);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the tile with the given parameters is in memory. Unlike {@link #getLines(Parameters, List)},
+     * this method does not count as a hit or a miss, does not change the order of access, and does not look in
+     * the store.
+     */
+    synchronized boolean contains(Parameters parameters) {
+        return tiles.containsKey(new Key(parameters));
+    }
+
+    /**
+     * Returns an Observable that emits the same lines as the given Observable, and that stores the
+     * tile in the cache when the given Observable completes. The escape times of the tile are copied
+     * from the iteration buffer of the parameters, so tiles without an iteration buffer are not stored.
+     * A tile that does not complete, for example because of an error, is not stored either. When the tile
+     * has been stored, its parameters are emitted by {@link #completedObs()}.
+     *
+     * @param parameters The parameters of the tile.
+     * @param lineObs An Observable that emits the lines of the tile.
+     * @return An Observable that emits the lines of the tile.
+     */
+    Observable<Line> store(Parameters parameters, Observable<Line> lineObs) {
+        final IterationBuffer iterationBuffer = parameters.getIterationBuffer();
+        if (iterationBuffer == null) {
+            return lineObs;
+        }
+        return lineObs.doOnCompleted(() -> {
+            put(parameters, iterationBuffer.copyOf(
+                    parameters.getFirstX(), parameters.getFirstY(), parameters.getWidth(), parameters.getHeight()));
+            completedTiles.onNext(parameters);
+        });
+    }
+
+    /**
+     * Returns an Observable that emits the same lines as the given Observable, and that emits the parameters
+     * of the tile from {@link #completedObs()} when the given Observable completes, like
+     * {@link #store(Parameters, Observable)}, but without storing the tile in the cache. This is used for tiles
+     * whose escape times may differ from those calculated pixel by pixel, that must not be drawn from the cache.
+     *
+     * @param parameters The parameters of the tile.
+     * @param lineObs An Observable that emits the lines of the tile.
+     * @return An Observable that emits the lines of the tile.
+     */
+    Observable<Line> complete(Parameters parameters, Observable<Line> lineObs) {
+        if (parameters.getIterationBuffer() == null) {
+            return lineObs;
+        }
+        return lineObs.doOnCompleted(() -> completedTiles.onNext(parameters));
+    }
+
+    /**
+     * Returns a hot Observable that emits the parameters of each tile passed to {@link #store(Parameters, Observable)}
+     * or {@link #complete(Parameters, Observable)} after the subscription, as soon as the tile is complete. The escape
+     * times of an emitted tile are then all in its iteration buffer. The Observable never completes.
+     */
+    Observable<Parameters> completedObs() {
+        return completedTiles;
+    }
+
+    /**
+     * Stores the escape times of a tile in the cache, and in the store if there is one, evicting the
+     * least recently used tiles if needed.
+     */
+    void put(Parameters parameters, char[] iterations) {
+        Key key = new Key(parameters);
+        putInMemory(key, iterations);
+        if (store != null) {
+            store.put(key.id(), key.width(), key.height(), iterations);
+        }
+    }
+
+    private synchronized void putInMemory(Key key, char[] iterations) {
+        long bytes = sizeOf(iterations);
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        char[] previous = tiles.put(key, iterations);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += bytes;
+
+        Iterator<char[]> iterator = tiles.values().iterator();
+        while (usedBytes > maxBytes) {
+            usedBytes -= sizeOf(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Closes the store that backs this cache, if there is one, writing all tiles in it to disk.
+     * The tiles in memory are kept.
+     */
+    void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                TLOG.warning("Failed to close tile store: " + e);
+            }
+        }
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    synchronized int getSize() {
+        return tiles.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static long sizeOf(char[] iterations) {
+        return iterations.length * (long) Character.BYTES + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String string = String.format("[tiles %d, used %d kB, hits %d, misses %d, evictions %d",
+                tiles.size(), usedBytes / 1024, hits, misses, evictions);
+        return (store == null) ? string + "]" : string + ", store " + store + "]";
+    }
+
+    /**
+     * The key used to look up tiles. A tile is identified by the image coordinates and scale,
+     * its position and size in the image, the maximum number of iterations, and the precision.
+     */
+    private record Key(Coordinates coordinates, double scale, int maxIterations, Precision precision,
+                       int firstX, int firstY, int width, int height) {
+        Key(Parameters parameters) {
+            this(parameters.getImageAttributes().coordinates(), parameters.getImageAttributes().scale(),
+                    parameters.getImageAttributes().maxIterations(), parameters.getPrecision(),
+                    parameters.getFirstX(), parameters.getFirstY(), parameters.getWidth(), parameters.getHeight());
+        }
+
+        /**
+         * Returns a string that identifies the tile in the {@link TileStore}.
+         */
+        String id() {
+            return coordinates.preciseMinX() + "," + coordinates.preciseMinY() + "," + Double.toHexString(scale) + ","
+                    + maxIterations + "," + precision + "," + firstX + "," + firstY + "," + width + "," + height;
+        }
+    }
+}
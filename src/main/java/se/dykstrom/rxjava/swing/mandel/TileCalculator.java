@@ -0,0 +1,180 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+/**
+ * Calculates the lines that make up one tile of the image. Subclasses decide in which order the
+ * pixels are calculated, and which lines to produce. The {@link LineProducer} asks the calculator
+ * for one line at a time, in index order, and emits it to the subscriber.
+ *
+ * @author Johan Dykstrom
+ */
+abstract class TileCalculator {
+
+    /**
+     * The maximum number of iterations calculated between two checks for cancellation, assuming that
+     * no pixel escapes. This keeps the time to stop a calculation short, also for wide tiles and deep images.
+     */
+    static final int CHUNK_ITERATIONS = 1 << 20;
+
+    /** The smallest number of pixels in a chunk, a multiple of the number of lanes in all vector kernels. */
+    private static final int MIN_CHUNK_PIXELS = 16;
+
+    final Parameters parameters;
+    private final Kernel kernel;
+    final RenderStatistics statistics;
+    private final int maxIterations;
+
+    /** The palette used to convert the "escape time" value to an RGB color. */
+    private final Palette palette;
+
+    /**
+     * The time when the calculator was created. The render strategies create the calculator when the tile
+     * is handed to flatMap, just before it is queued on the scheduler, so this is when the tile was queued.
+     */
+    final long queuedNanos = System.nanoTime();
+
+    /** Set when the lines are no longer needed, to make the calculator stop as soon as possible. */
+    private volatile boolean cancelled;
+
+    /** The number of pixels calculated between two checks for cancellation. */
+    private final int chunkPixels;
+
+    TileCalculator(Parameters parameters, Kernel kernel, RenderStatistics statistics) {
+        this.parameters = parameters;
+        this.kernel = kernel;
+        this.statistics = statistics;
+        this.maxIterations = parameters.getImageAttributes().maxIterations();
+        this.palette = parameters.getImageAttributes().palette();
+        this.chunkPixels = Math.max(MIN_CHUNK_PIXELS, CHUNK_ITERATIONS / maxIterations / MIN_CHUNK_PIXELS * MIN_CHUNK_PIXELS);
+    }
+
+    /**
+     * Returns the number of lines this calculator produces.
+     */
+    abstract int getLineCount();
+
+    /**
+     * Calculates and returns the line with the given index. The lines are always calculated in index order.
+     *
+     * @param index The index of the line to calculate, between 0 and {@link #getLineCount()}.
+     * @return The calculated line, or {@code null} if the calculation was cancelled.
+     */
+    abstract Line calculateLine(int index);
+
+    /**
+     * Cancels the calculation. The escape times are calculated in chunks of pixels, see
+     * {@link #calcEscapeTimes(int, int, int, int[])}, and the calculators check {@link #isCancelled()}
+     * after each chunk, so the calculation stops within about {@link #CHUNK_ITERATIONS} iterations,
+     * even in the middle of a line.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Calculates the "escape time" of every step:th pixel in one line of the tile, and stores it in the
+     * given array. Deep zoom images are calculated using the reference orbit, and other images using
+     * the kernel, with the precision of the parameters.
+     *
+     * Long lines are calculated in chunks, and if the calculation is cancelled, it stops after the current
+     * chunk, leaving the rest of the array undefined. The caller must check {@link #isCancelled()} before
+     * using the escape times.
+     *
+     * @param x The X position in the tile of the first pixel to calculate.
+     * @param step The distance in pixels between two calculated pixels.
+     * @param y The Y position in the tile of the line.
+     * @param iterations The array to store the escape times in, one element per calculated pixel.
+     */
+    void calcEscapeTimes(int x, int step, int y, int[] iterations) {
+        ImageAttributes imageAttributes = parameters.getImageAttributes();
+        ReferenceOrbit referenceOrbit = parameters.getReferenceOrbit();
+
+        // The position of the pixels in the image
+        final int imageX = parameters.getFirstX() + x;
+        final int imageY = parameters.getFirstY() + y;
+
+        for (int start = 0; start < iterations.length && !isCancelled(); start += chunkPixels) {
+            final int length = Math.min(chunkPixels, iterations.length - start);
+            // When the line is calculated in more than one chunk, each chunk is calculated in a scratch line from the pool
+            final Line scratch = (length == iterations.length) ? null : acquireScratch(length);
+            final int[] target = (scratch == null) ? iterations : scratch.getRGB();
+            if (referenceOrbit != null) {
+                referenceOrbit.calc(imageX + start * step, step, imageY, maxIterations, target);
+            } else {
+                parameters.getPrecision().calc(kernel, imageAttributes, imageX + start * step, step, imageY, maxIterations, target);
+            }
+            addStatistics(target);
+            if (scratch != null) {
+                System.arraycopy(target, 0, iterations, start, length);
+                scratch.recycle();
+            }
+        }
+    }
+
+    /**
+     * Calculates the "escape times" of a number of consecutive samples on one line of a supersampled image,
+     * that is, an image with the same position as the image of the tile, but with more pixels. The samples
+     * are calculated with the maximum number of iterations of the tile.
+     *
+     * @param precision The precision to calculate the samples with.
+     * @param sampleAttributes The attributes of the supersampled image.
+     * @param sampleX The X position in the supersampled image of the first sample.
+     * @param sampleY The Y position in the supersampled image of the line.
+     * @param samples The array to store the escape times in, one element per sample.
+     */
+    void calcSamples(Precision precision, ImageAttributes sampleAttributes, int sampleX, int sampleY, int[] samples) {
+        precision.calc(kernel, sampleAttributes, sampleX, 1, sampleY, maxIterations, samples);
+        addStatistics(samples);
+    }
+
+    private void addStatistics(int[] iterations) {
+        statistics.addCalculatedPixels(iterations.length);
+
+        long sum = 0;
+        for (int i : iterations) {
+            sum += i;
+        }
+        statistics.addIterations(sum);
+    }
+
+    /**
+     * Stores the escape times of line y in the tile in the iteration buffer of the image, if there is one.
+     *
+     * @param y The Y position in the tile of the line.
+     * @param iterations The array that contains the escape times of the whole line.
+     * @param offset The offset in the array of the first pixel in the line.
+     */
+    void storeIterations(int y, int[] iterations, int offset) {
+        IterationBuffer iterationBuffer = parameters.getIterationBuffer();
+        if (iterationBuffer != null) {
+            iterationBuffer.set(parameters.getFirstX(), parameters.getFirstY() + y, iterations, offset, parameters.getWidth());
+        }
+    }
+
+    /**
+     * Returns a line from the shared {@link LinePool}, positioned at line y in the tile,
+     * and as wide as the tile. The caller must fill in the RGB colors of the whole line.
+     */
+    Line acquireLine(int y) {
+        return LinePool.SHARED.acquire(parameters.getFirstX(), parameters.getFirstY() + y, parameters.getWidth());
+    }
+
+    /**
+     * Returns a line from the shared {@link LinePool} with the given width, whose RGB array is used as
+     * a scratch array of escape times, instead of allocating a new array for each line or chunk.
+     * The caller must recycle the line when done with the array.
+     */
+    static Line acquireScratch(int length) {
+        return LinePool.SHARED.acquire(0, 0, length);
+    }
+
+    /**
+     * Converts the given "escape time" to an RGB color.
+     */
+    int toRGB(int iterations) {
+        return palette.toRGB(iterations, maxIterations);
+    }
+}
@@ -0,0 +1,111 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.Point;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import rx.Observable;
+
+/**
+ * The orders in which the tiles of an image can be calculated. All tiles are calculated regardless
+ * of the order, so the order does not change the total work, but it decides which part of the image
+ * is drawn first. The tiles are queued for calculation in the order they are emitted, so the first
+ * tiles are also the first to be completed.
+ *
+ * The order can be selected in the menu, or with the system property {@code mandel.order}.
+ * If no order is selected, the tiles are calculated in a spiral from the center of the image,
+ * since that is where the user usually looks, especially after zooming in.
+ *
+ * @author Johan Dykstrom
+ */
+enum TileOrder {
+
+    /**
+     * Row by row from top to bottom, and from left to right in each row.
+     */
+    ROW_MAJOR {
+        @Override
+        List<Parameters> sort(List<Parameters> tiles, int width, int height, Point mouse) {
+            return tiles;
+        }
+    },
+
+    /**
+     * In a spiral from the center of the image and outwards.
+     */
+    SPIRAL {
+        @Override
+        List<Parameters> sort(List<Parameters> tiles, int width, int height, Point mouse) {
+            return spiral(tiles, width / 2.0, height / 2.0);
+        }
+    },
+
+    /**
+     * In a spiral from the position of the mouse pointer, or from the center of the image,
+     * if the mouse pointer is not over the image.
+     */
+    MOUSE_FIRST {
+        @Override
+        List<Parameters> sort(List<Parameters> tiles, int width, int height, Point mouse) {
+            return (mouse == null) ? SPIRAL.sort(tiles, width, height, null) : spiral(tiles, mouse.x, mouse.y);
+        }
+    };
+
+    private static final Logger TLOG = Logger.getLogger(TileOrder.class.getName());
+
+    /** The order selected by the system property {@code mandel.order}, or the default order. */
+    static final TileOrder DEFAULT = select(System.getProperty("mandel.order"));
+
+    /**
+     * Returns the given tiles in this order.
+     *
+     * @param tiles The tiles of the image, row by row.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param mouse The position of the mouse pointer in the image, or {@code null} if not over the image.
+     * @return The sorted tiles.
+     */
+    abstract List<Parameters> sort(List<Parameters> tiles, int width, int height, Point mouse);
+
+    /**
+     * Returns an Observable that emits the tiles emitted by {@code paramObs} in this order.
+     *
+     * @see #sort(List, int, int, Point)
+     */
+    Observable<Parameters> sort(Observable<Parameters> paramObs, int width, int height, Point mouse) {
+        return paramObs.toList().flatMapIterable(tiles -> sort(tiles, width, height, mouse));
+    }
+
+    /**
+     * Returns the order with the given name, ignoring case, or {@link #SPIRAL} if the name is {@code null}.
+     */
+    static TileOrder select(String name) {
+        TileOrder order = (name != null) ? valueOf(name.toUpperCase()) : SPIRAL;
+        TLOG.info("Using tile order " + order);
+        return order;
+    }
+
+    /**
+     * Sorts the tiles in a square spiral around the given focus point. The tiles are divided into rings
+     * around the focus point, one tile wide, and the tiles in each ring are sorted by angle.
+     */
+    private static List<Parameters> spiral(List<Parameters> tiles, double focusX, double focusY) {
+        final int ringWidth = tiles.stream().mapToInt(tile -> Math.max(tile.getWidth(), tile.getHeight())).max().orElse(1);
+        Comparator<Parameters> byRing = Comparator.comparingLong(tile -> {
+            double dx = Math.abs(centerX(tile) - focusX);
+            double dy = Math.abs(centerY(tile) - focusY);
+            return (long) Math.floor(Math.max(dx, dy) / ringWidth + 0.5);
+        });
+        Comparator<Parameters> byAngle = Comparator.comparingDouble(tile -> Math.atan2(centerY(tile) - focusY, centerX(tile) - focusX));
+        return tiles.stream().sorted(byRing.thenComparing(byAngle)).toList();
+    }
+
+    private static double centerX(Parameters tile) {
+        return tile.getFirstX() + tile.getWidth() / 2.0;
+    }
+
+    private static double centerY(Parameters tile) {
+        return tile.getFirstY() + tile.getHeight() / 2.0;
+    }
+}
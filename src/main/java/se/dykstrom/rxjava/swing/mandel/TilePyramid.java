@@ -0,0 +1,250 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Divides images into tiles of a quadtree pyramid, like map tiles. Each level of the pyramid has a scale
+ * that is a power of two, and the tiles of a level form a fixed grid in the Mandelbrot coordinate space.
+ * A tile is identified by its level and its position in the grid, and does not depend on the image it is
+ * part of. Thus, tiles calculated for one image can be reused for all images at the same level that overlap
+ * it, and panning only has to calculate the tiles that were not visible before.
+ *
+ * To use the pyramid, an image must first be snapped to the nearest level, and to the pixel grid of
+ * that level, see {@link #snap(ImageAttributes, int, int)}. While the tiles that are not found in the
+ * cache are calculated, they are drawn as a preview, scaled up from the tile one level up in the pyramid,
+ * if that tile is in the cache.
+ *
+ * Deep zoom images, that need perturbation, cannot be drawn using the pyramid.
+ *
+ * @author Johan Dykstrom
+ */
+final class TilePyramid {
+
+    private TilePyramid() { }
+
+    /**
+     * Returns true if the given image can be drawn using the pyramid.
+     */
+    static boolean isSupported(ImageAttributes imageAttributes) {
+        return !imageAttributes.isDeepZoom();
+    }
+
+    /**
+     * Returns the level of the pyramid whose scale is nearest to the given scale.
+     * The scale of level n is 2^-n.
+     */
+    static int level(double scale) {
+        return (int) Math.round(-Math.log(scale) / Math.log(2));
+    }
+
+    /**
+     * Returns the scale of the given level of the pyramid.
+     */
+    static double scale(int level) {
+        return Math.scalb(1.0, -level);
+    }
+
+    /**
+     * Snaps the given image to the nearest level of the pyramid, and to the pixel grid of that level,
+     * keeping the center of the image at about the same position.
+     *
+     * @param imageAttributes The attributes of the image to snap.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @return The attributes of the snapped image.
+     */
+    static ImageAttributes snap(ImageAttributes imageAttributes, int width, int height) {
+        final double scale = scale(level(imageAttributes.scale()));
+        final double centerX = imageAttributes.coordinates().minX() + width / 2.0 * imageAttributes.scale();
+        final double centerY = imageAttributes.coordinates().minY() + height / 2.0 * imageAttributes.scale();
+        final double minX = Math.floor(centerX / scale - width / 2.0) * scale;
+        final double minY = Math.floor(centerY / scale - height / 2.0) * scale;
+        return new ImageAttributes(new Coordinates(minX, minY), scale, imageAttributes.palette());
+    }
+
+    /**
+     * Returns the parameters of all pyramid tiles that overlap the given snapped image. Each tile has an
+     * iteration buffer of its own, so it can be stored in the cache when it has been calculated.
+     *
+     * @param imageAttributes The attributes of the snapped image.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param tileSize The width and height of the tiles.
+     * @return The parameters of the tiles.
+     */
+    static List<Parameters> tiles(ImageAttributes imageAttributes, int width, int height, int tileSize) {
+        return tiles(imageAttributes, width, height, tileSize, true);
+    }
+
+    /**
+     * Returns the parameters of all tiles of the given snapped image, like {@link #tiles(ImageAttributes, int, int, int)},
+     * with or without an iteration buffer for each tile.
+     */
+    static List<Parameters> tiles(ImageAttributes imageAttributes, int width, int height, int tileSize, boolean withBuffer) {
+        List<Parameters> tiles = new ArrayList<>();
+        final double scale = imageAttributes.scale();
+        final long firstX = Math.round(imageAttributes.coordinates().minX() / scale);
+        final long firstY = Math.round(imageAttributes.coordinates().minY() / scale);
+        for (long row = Math.floorDiv(firstY, tileSize); row * tileSize < firstY + height; row++) {
+            for (long column = Math.floorDiv(firstX, tileSize); column * tileSize < firstX + width; column++) {
+                tiles.add(tile(column, row, scale, tileSize, imageAttributes.palette(), withBuffer));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Returns an Observable that emits the lines of the given snapped image, assembled from pyramid tiles.
+     * Tiles found in the cache are emitted first. Then previews of the missing tiles are emitted, scaled up
+     * from tiles one level up, if they are in the cache. Finally, the missing tiles are calculated using
+     * the given render strategy, and stored in the cache. The lines are moved to their positions in the
+     * image, and cropped to fit in it. The cache is looked up on the given scheduler, and not on the thread
+     * that subscribes, which may be the event dispatch thread.
+     */
+    static Observable<Line> lineObs(ImageAttributes imageAttributes, int width, int height, int tileSize, RenderStrategy strategy,
+                                    Scheduler scheduler, RenderStatistics statistics, TileCache cache) {
+        return Observable.defer(() -> {
+            List<Line> cachedLines = new ArrayList<>();
+            List<Line> previewLines = new ArrayList<>();
+            List<Parameters> missingTiles = new ArrayList<>();
+
+            // Tiles one level up, that have been looked up in the cache, or null if not found
+            Map<Coordinates, List<Line>> parents = new HashMap<>();
+
+            for (Parameters tile : tiles(imageAttributes, width, height, tileSize)) {
+                final int offsetX = offset(tile.getImageAttributes().coordinates().minX(), imageAttributes.coordinates().minX(), imageAttributes.scale());
+                final int offsetY = offset(tile.getImageAttributes().coordinates().minY(), imageAttributes.coordinates().minY(), imageAttributes.scale());
+                List<Line> lines = new ArrayList<>();
+                if (cache.getLines(tile, lines)) {
+                    lines.forEach(line -> add(place(line, offsetX, offsetY, width, height), cachedLines));
+                } else {
+                    missingTiles.add(tile);
+                    addPreview(tile, offsetX, offsetY, width, height, tileSize, cache, parents, previewLines);
+                }
+            }
+            parents.values().stream().filter(Objects::nonNull).forEach(lines -> lines.forEach(Line::recycle));
+
+            return Observable.from(cachedLines)
+                    .concatWith(Observable.from(previewLines))
+                    .concatWith(Observable.from(missingTiles).flatMap(tile -> {
+                        final int offsetX = offset(tile.getImageAttributes().coordinates().minX(), imageAttributes.coordinates().minX(), imageAttributes.scale());
+                        final int offsetY = offset(tile.getImageAttributes().coordinates().minY(), imageAttributes.coordinates().minY(), imageAttributes.scale());
+                        return strategy.lineObs(Observable.just(tile), scheduler, statistics, cache)
+                                .map(line -> place(line, offsetX, offsetY, width, height))
+                                .filter(Objects::nonNull);
+                    }));
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Adds a preview of the given tile to the list of lines, if the tile one level up is in the cache.
+     * Each pixel in the tile one level up covers four pixels in the preview.
+     */
+    private static void addPreview(Parameters tile, int offsetX, int offsetY, int width, int height, int tileSize,
+                                   TileCache cache, Map<Coordinates, List<Line>> parents, List<Line> lines) {
+        final double scale = tile.getImageAttributes().scale();
+        final long column = Math.round(tile.getImageAttributes().coordinates().minX() / scale / tileSize);
+        final long row = Math.round(tile.getImageAttributes().coordinates().minY() / scale / tileSize);
+        Parameters parent = tile(Math.floorDiv(column, 2), Math.floorDiv(row, 2), 2 * scale, tileSize, tile.getImageAttributes().palette(), false);
+
+        List<Line> parentLines = parents.computeIfAbsent(parent.getImageAttributes().coordinates(), key -> {
+            List<Line> found = new ArrayList<>();
+            return (cache.contains(parent) && cache.getLines(parent, found)) ? found : null;
+        });
+        if (parentLines == null) {
+            return;
+        }
+
+        // The position of the tile in the tile one level up, in pixels of this level
+        final int quadrantX = Math.floorMod(column, 2) * tileSize;
+        final int quadrantY = Math.floorMod(row, 2) * tileSize;
+        for (int y = 0; y < tileSize; y++) {
+            int[] parentRGB = parentLines.get((quadrantY + y) / 2).getRGB();
+            Line line = LinePool.SHARED.acquire(0, y, tileSize);
+            int[] rgb = line.getRGB();
+            for (int x = 0; x < tileSize; x++) {
+                rgb[x] = parentRGB[(quadrantX + x) / 2];
+            }
+            add(place(line, offsetX, offsetY, width, height), lines);
+        }
+    }
+
+    /**
+     * Returns the parameters of the tile in the given column and row of the level with the given scale.
+     * The coordinates of the tile are those of its upper left pixel, so the escape times do not depend
+     * on the image the tile is part of.
+     */
+    private static Parameters tile(long column, long row, double scale, int tileSize, Palette palette, boolean withBuffer) {
+        Coordinates coordinates = new Coordinates(column * tileSize * scale, row * tileSize * scale);
+        ImageAttributes imageAttributes = new ImageAttributes(coordinates, scale, palette);
+        IterationBuffer iterationBuffer = withBuffer ? new IterationBuffer(tileSize, tileSize, imageAttributes.maxIterations()) : null;
+        return new Parameters(0, 0, tileSize, tileSize, imageAttributes, null, iterationBuffer, precision(scale), -1);
+    }
+
+    /**
+     * Returns the precision to use for all tiles of the level with the given scale. If the precision was
+     * selected per tile, adjacent tiles could get different precisions, and show seams. The precision is
+     * selected for the part of the plane where the Mandelbrot set is, that is, coordinates up to 2.
+     */
+    static Precision precision(double scale) {
+        return Precision.select(new ImageAttributes(new Coordinates(-2.0, -2.0), scale), 0, 0);
+    }
+
+    /**
+     * Returns the distance in pixels from the image coordinate {@code image} to the tile coordinate {@code tile}.
+     */
+    private static int offset(double tile, double image, double scale) {
+        return (int) Math.round((tile - image) / scale);
+    }
+
+    /**
+     * Moves the given line, or block of lines, by the given offset, and crops it to fit in an image of
+     * the given size. Lines that fit entirely are moved, and other lines are copied to new lines, and
+     * recycled.
+     *
+     * @return The moved or cropped line, or {@code null} if no part of the line is inside the image.
+     */
+    static Line place(Line line, int offsetX, int offsetY, int width, int height) {
+        final int x = line.getX() + offsetX;
+        final int y = line.getY() + offsetY;
+        final int lineWidth = line.getWidth();
+        final int lineHeight = line.getHeight();
+
+        final int left = Math.max(0, -x);
+        final int right = Math.min(lineWidth, width - x);
+        final int top = Math.max(0, -y);
+        final int bottom = Math.min(lineHeight, height - y);
+        if (left >= right || top >= bottom) {
+            line.recycle();
+            return null;
+        }
+        if (left == 0 && right == lineWidth && top == 0 && bottom == lineHeight) {
+            line.moveTo(x, y);
+            return line;
+        }
+
+        final int croppedWidth = right - left;
+        final int croppedHeight = bottom - top;
+        Line cropped = (croppedHeight == 1)
+                ? LinePool.SHARED.acquire(x + left, y + top, croppedWidth)
+                : LinePool.SHARED.acquireBlock(x + left, y + top, croppedWidth, croppedHeight);
+        for (int i = 0; i < croppedHeight; i++) {
+            System.arraycopy(line.getRGB(), (top + i) * lineWidth + left, cropped.getRGB(), i * croppedWidth, croppedWidth);
+        }
+        line.recycle();
+        return cropped;
+    }
+
+    private static void add(Line line, List<Line> lines) {
+        if (line != null) {
+            lines.add(line);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * A request to calculate a number of lines in one tile, sent from the {@link Coordinator} to a
+ * {@link TileWorker}. The request contains everything the worker needs to calculate exactly the
+ * same escape times as the coordinator would have done. The coordinates are sent as BigDecimals,
+ * and a deep zoom image is sent with the position of the reference pixel, so the worker can
+ * calculate the same reference orbit.
+ *
+ * The worker answers with the escape times of the requested lines, in order, as 16-bit values.
+ * A request that is read from a connection is validated, so a malformed or hostile request cannot
+ * make the worker allocate large arrays, or calculate for an unbounded time.
+ *
+ * @param firstX The X position of the first pixel in the tile.
+ * @param firstY The Y position of the first line to calculate.
+ * @param width The width of the tile in pixels.
+ * @param height The number of lines to calculate.
+ * @param coordinates The coordinates of the image.
+ * @param scale The scale of the image.
+ * @param referenceX The X position of the reference pixel, or -1 if the image is not a deep zoom image.
+ * @param referenceY The Y position of the reference pixel, or -1 if the image is not a deep zoom image.
+ * @param precision The precision to calculate the escape times with.
+ *
+ * @author Johan Dykstrom
+ */
+record TileRequest(int firstX, int firstY, int width, int height, Coordinates coordinates, double scale,
+                   int referenceX, int referenceY, Precision precision) {
+
+    /** Identifies the protocol, and its version. */
+    private static final int MAGIC = 0x4d414e02;
+
+    /** The largest width and height of a tile that a worker accepts. */
+    static final int MAX_TILE_SIZE = 4096;
+
+    /**
+     * Creates a request for the lines from {@code firstLine} to the end of the tile with the given parameters.
+     */
+    static TileRequest of(Parameters parameters, int firstLine) {
+        ImageAttributes imageAttributes = parameters.getImageAttributes();
+        ReferenceOrbit referenceOrbit = parameters.getReferenceOrbit();
+        return new TileRequest(parameters.getFirstX(), parameters.getFirstY() + firstLine,
+                parameters.getWidth(), parameters.getHeight() - firstLine,
+                imageAttributes.coordinates(), imageAttributes.scale(),
+                (referenceOrbit == null) ? -1 : referenceOrbit.getReferenceX(),
+                (referenceOrbit == null) ? -1 : referenceOrbit.getReferenceY(),
+                parameters.getPrecision());
+    }
+
+    ImageAttributes imageAttributes() {
+        return new ImageAttributes(coordinates, scale);
+    }
+
+    boolean isDeepZoom() {
+        return referenceX != -1;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(firstX);
+        out.writeInt(firstY);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeUTF(coordinates.preciseMinX().toString());
+        out.writeUTF(coordinates.preciseMinY().toString());
+        out.writeDouble(scale);
+        out.writeInt(referenceX);
+        out.writeInt(referenceY);
+        out.writeByte(precision.ordinal());
+        out.flush();
+    }
+
+    static TileRequest read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("unknown protocol");
+        }
+        int firstX = in.readInt();
+        int firstY = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        Coordinates coordinates = new Coordinates(new BigDecimal(in.readUTF()), new BigDecimal(in.readUTF()));
+        double scale = in.readDouble();
+        int referenceX = in.readInt();
+        int referenceY = in.readInt();
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Precision.values().length) {
+            throw new IOException("unknown precision " + ordinal);
+        }
+        Precision precision = Precision.values()[ordinal];
+        TileRequest request = new TileRequest(firstX, firstY, width, height, coordinates, scale, referenceX, referenceY, precision);
+        request.validate();
+        return request;
+    }
+
+    /**
+     * Throws an exception if this request is outside the limits of what a worker calculates.
+     */
+    void validate() throws IOException {
+        if (width < 1 || width > MAX_TILE_SIZE || height < 1 || height > MAX_TILE_SIZE) {
+            throw new IOException("invalid tile size " + width + "x" + height);
+        }
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IOException("invalid scale " + scale);
+        }
+        int maxIterations = imageAttributes().maxIterations();
+        if (maxIterations > ImageAttributes.MAX_NUM_ITERATIONS) {
+            throw new IOException("invalid max iterations " + maxIterations);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of calculated tiles, that survives restarts of the application. The store is a
+ * memory-mapped file, divided into a fixed number of slots of the same size. Each slot holds the escape
+ * times of one tile, and a header with the key of the tile, a digest of the key, and the time it was last
+ * used. The index, that maps key digests to slots, is kept in memory, and is rebuilt from the slot headers
+ * when the store is opened. When a tile is read, its key is compared to the requested key, so a tile is
+ * never mistaken for another. When the store is full, the least recently used tile is evicted to make room
+ * for a new one.
+ *
+ * The slot header also holds a checksum of the tile. The operating system may write the pages of the file
+ * to disk in any order, so if the application, or the machine, dies while a tile is being written, the slot
+ * may be marked as used on disk although the tile itself is not. Such tiles are detected by the checksum
+ * when they are read, and discarded.
+ *
+ * The slots are sized for the tile size used by the application. A store created for another slot size is
+ * cleared when it is opened. The file is locked while the store is open, so only one application at a time
+ * can use it. Another application that finds the file locked runs without a store.
+ *
+ * The store is used as a second level cache by {@link TileCache}. The file, and the maximum size of it
+ * in megabytes, can be set with the system properties {@code mandel.store} (default {@code ~/.mandel/tiles.dat})
+ * and {@code mandel.store.size} (default 256, 0 disables the store).
+ *
+ * This class is thread safe.
+ *
+ * @author Johan Dykstrom
+ */
+class TileStore implements AutoCloseable {
+
+    private static final Logger TLOG = Logger.getLogger(TileStore.class.getName());
+
+    private static final String DEFAULT_PATH = Paths.get(System.getProperty("user.home"), ".mandel", "tiles.dat").toString();
+    private static final long DEFAULT_SIZE_MB = Long.getLong("mandel.store.size", 256);
+
+    /** Identifies the file format, and its version. */
+    private static final int MAGIC = 0x4d414e56;
+    static final int FILE_HEADER_SIZE = 64;
+
+    /**
+     * The size of the slot header, including the key. The keys of deep zoom tiles include coordinates with
+     * hundreds of digits, so there is room for keys of tiles down to the smallest scale a double can hold.
+     */
+    static final int SLOT_HEADER_SIZE = 1024;
+    private static final int STATE_OFFSET = 0;
+    private static final int ACCESS_OFFSET = 4;
+    private static final int WIDTH_OFFSET = 12;
+    private static final int HEIGHT_OFFSET = 16;
+    private static final int CHECKSUM_OFFSET = 20;
+    private static final int KEY_LENGTH_OFFSET = 24;
+    private static final int DIGEST_OFFSET = 26;
+    private static final int DIGEST_BYTES = 32;
+    private static final int KEY_OFFSET = DIGEST_OFFSET + DIGEST_BYTES;
+    private static final int MAX_KEY_BYTES = SLOT_HEADER_SIZE - KEY_OFFSET;
+
+    private static final int FREE = 0;
+    private static final int USED = 1;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+
+    /** The maximum number of escape times in a tile. */
+    private final int slotChars;
+    private final int slotBytes;
+    private final int slotCount;
+
+    /** Maps the key digest of each stored tile to its slot, with the least recently used tile first. */
+    private final Map<String, Integer> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The slots that are not in use. */
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /** The logical time of the last access, persisted in the slot headers to keep the LRU order between restarts. */
+    private long clock;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** The number of tiles that were not stored, because they or their keys did not fit in a slot. */
+    private long rejected;
+
+    /** True if the store has been closed. */
+    private boolean closed;
+
+    private TileStore(FileChannel channel, FileLock lock, MappedByteBuffer buffer, int slotChars, int slotCount) {
+        this.channel = channel;
+        this.lock = lock;
+        this.buffer = buffer;
+        this.slotChars = slotChars;
+        this.slotBytes = SLOT_HEADER_SIZE + slotChars * Character.BYTES;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Opens the tile store specified by the system properties, or returns {@code null} if the store
+     * is disabled, or cannot be opened, for example because it is used by another application. The slots are large enough for tiles of the given size, and at
+     * least for tiles of the default size, so a store created with the default tile size can also be
+     * used with smaller tiles.
+     *
+     * @param tileSize The width and height of the tiles to store.
+     */
+    static TileStore openDefault(int tileSize) {
+        if (DEFAULT_SIZE_MB == 0) {
+            return null;
+        }
+        Path path = Paths.get(System.getProperty("mandel.store", DEFAULT_PATH));
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            int slotSize = Math.max(tileSize, Mandel.DEFAULT_TILE_SIZE);
+            TileStore store = open(path, DEFAULT_SIZE_MB * 1024 * 1024, slotSize * slotSize);
+            TLOG.info("Opened tile store " + path + ": " + store);
+            return store;
+        } catch (IOException e) {
+            TLOG.warning("Failed to open tile store " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the tile store in the given file, creating it if it does not exist. If the file exists,
+     * but was created with another slot size, all tiles in it are discarded. The file is locked until
+     * the store is closed, and nothing in it is changed unless the lock is taken.
+     *
+     * @param path The file to store the tiles in.
+     * @param maxBytes The maximum size of the file.
+     * @param slotChars The maximum number of escape times in a tile.
+     * @return The opened store.
+     * @throws IOException If the file cannot be opened, or is locked by another application.
+     */
+    static TileStore open(Path path, long maxBytes, int slotChars) throws IOException {
+        int slotBytes = SLOT_HEADER_SIZE + slotChars * Character.BYTES;
+        int slotCount = (int) Math.max(1, (Math.min(maxBytes, Integer.MAX_VALUE) - FILE_HEADER_SIZE) / slotBytes);
+        long size = FILE_HEADER_SIZE + slotCount * (long) slotBytes;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                throw new IOException("The file is used by another application");
+            }
+            boolean compatible = channel.size() >= FILE_HEADER_SIZE;
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            TileStore store = new TileStore(channel, lock, buffer, slotChars, slotCount);
+            compatible = compatible && buffer.getInt(0) == MAGIC && buffer.getInt(4) == slotChars;
+            store.load(compatible);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns an exclusive lock on the whole file, or {@code null} if another application, or another
+     * store in this application, holds a lock on it.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Rebuilds the index from the slot headers, or clears all slots if the file is not compatible.
+     */
+    private synchronized void load(boolean compatible) {
+        if (!compatible) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, slotChars);
+        }
+
+        List<long[]> usedSlots = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = offset(slot);
+            if (compatible && buffer.getInt(offset + STATE_OFFSET) == USED && isValidKeyLength(offset)) {
+                usedSlots.add(new long[]{buffer.getLong(offset + ACCESS_OFFSET), slot});
+            } else {
+                buffer.putInt(offset + STATE_OFFSET, FREE);
+                freeSlots.add(slot);
+            }
+        }
+
+        // Insert the tiles in order of access, so the least recently used tile is evicted first
+        usedSlots.sort(Comparator.comparingLong(slot -> slot[0]));
+        for (long[] usedSlot : usedSlots) {
+            int slot = (int) usedSlot[1];
+            Integer previous = index.put(readDigest(offset(slot)), slot);
+            if (previous != null) {
+                // An older copy of the same tile, that can never be read
+                buffer.putInt(offset(previous) + STATE_OFFSET, FREE);
+                freeSlots.add(previous);
+            }
+            clock = Math.max(clock, usedSlot[0]);
+        }
+    }
+
+    /**
+     * Returns the escape times of the tile with the given key, or {@code null} if the tile is not stored.
+     */
+    synchronized char[] get(String key) {
+        final String digest = digest(key);
+        Integer slot = closed ? null : index.get(digest);
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+
+        int offset = offset(slot);
+        long length = buffer.getInt(offset + WIDTH_OFFSET) * (long) buffer.getInt(offset + HEIGHT_OFFSET);
+        if (length < 0 || length > slotChars || buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(offset, (int) length)) {
+            // The tile was not completely written to disk when the application died
+            TLOG.warning("Discarding damaged tile " + key + " in slot " + slot);
+            free(digest, slot);
+            misses++;
+            return null;
+        }
+        if (!readKey(offset).equals(key)) {
+            // Two keys with the same digest, which should never happen
+            TLOG.warning("Discarding tile " + readKey(offset) + " in slot " + slot + ", that has the same digest as " + key);
+            free(digest, slot);
+            misses++;
+            return null;
+        }
+        hits++;
+
+        buffer.putLong(offset + ACCESS_OFFSET, ++clock);
+        char[] iterations = new char[(int) length];
+        buffer.slice(offset + SLOT_HEADER_SIZE, iterations.length * Character.BYTES).asCharBuffer().get(iterations);
+        return iterations;
+    }
+
+    /**
+     * Stores the escape times of a tile, evicting the least recently used tile if the store is full.
+     * Tiles that are too large for a slot, or have too long keys, are not stored.
+     */
+    synchronized void put(String key, int width, int height, char[] iterations) {
+        if (closed) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (iterations.length > slotChars) {
+            rejected++;
+            TLOG.fine("Tile " + key + " with " + iterations.length + " pixels does not fit in a slot of "
+                    + slotChars + " pixels, and is not stored");
+            return;
+        }
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            rejected++;
+            TLOG.warning("Tile " + key + " has a key of " + keyBytes.length + " bytes, that does not fit in a slot header with room for "
+                    + MAX_KEY_BYTES + " bytes, and is not stored");
+            return;
+        }
+
+        final String digest = digest(key);
+        Integer slot = index.remove(digest);
+        if (slot == null) {
+            slot = freeSlots.poll();
+        }
+        if (slot == null) {
+            Iterator<Integer> iterator = index.values().iterator();
+            slot = iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+
+        // Mark the slot as free while writing, so a partly written tile is never read
+        int offset = offset(slot);
+        buffer.putInt(offset + STATE_OFFSET, FREE);
+        buffer.slice(offset + SLOT_HEADER_SIZE, iterations.length * Character.BYTES).asCharBuffer().put(iterations);
+        buffer.putLong(offset + ACCESS_OFFSET, ++clock);
+        buffer.putInt(offset + WIDTH_OFFSET, width);
+        buffer.putInt(offset + HEIGHT_OFFSET, height);
+        buffer.putShort(offset + KEY_LENGTH_OFFSET, (short) keyBytes.length);
+        buffer.put(offset + DIGEST_OFFSET, HexFormat.of().parseHex(digest));
+        buffer.put(offset + KEY_OFFSET, keyBytes);
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(offset, iterations.length));
+        buffer.putInt(offset + STATE_OFFSET, USED);
+        index.put(digest, slot);
+    }
+
+    /**
+     * Removes the tile with the given key digest from the index, and frees its slot.
+     */
+    private void free(String digest, int slot) {
+        index.remove(digest);
+        buffer.putInt(offset(slot) + STATE_OFFSET, FREE);
+        freeSlots.add(slot);
+    }
+
+    synchronized int getSize() {
+        return index.size();
+    }
+
+    int getCapacity() {
+        return slotCount;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Writes all changes to disk, releases the lock, and closes the file. Tiles put in the store after
+     * it has been closed are ignored, and no tiles are found in it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.force();
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the checksum of the tile in the slot at the given offset, including its size, key digest, and key.
+     */
+    private int checksum(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + WIDTH_OFFSET, CHECKSUM_OFFSET - WIDTH_OFFSET));
+        crc.update(buffer.slice(offset + KEY_LENGTH_OFFSET, KEY_OFFSET - KEY_LENGTH_OFFSET + buffer.getShort(offset + KEY_LENGTH_OFFSET)));
+        crc.update(buffer.slice(offset + SLOT_HEADER_SIZE, length * Character.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private boolean isValidKeyLength(int offset) {
+        short keyLength = buffer.getShort(offset + KEY_LENGTH_OFFSET);
+        return keyLength >= 0 && keyLength <= MAX_KEY_BYTES;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given key, as a hexadecimal string.
+     */
+    private static String digest(String key) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String readDigest(int offset) {
+        byte[] digestBytes = new byte[DIGEST_BYTES];
+        buffer.get(offset + DIGEST_OFFSET, digestBytes);
+        return HexFormat.of().formatHex(digestBytes);
+    }
+
+    private String readKey(int offset) {
+        byte[] keyBytes = new byte[buffer.getShort(offset + KEY_LENGTH_OFFSET)];
+        buffer.get(offset + KEY_OFFSET, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private int offset(int slot) {
+        return FILE_HEADER_SIZE + slot * slotBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("[tiles %d of %d, hits %d, misses %d, evictions %d, rejected %d]",
+                index.size(), slotCount, hits, misses, evictions, rejected);
+    }
+}
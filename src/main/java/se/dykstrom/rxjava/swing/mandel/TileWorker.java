@@ -0,0 +1,204 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A worker process that calculates tiles for a {@link Coordinator}. The worker listens for connections
+ * on a server socket. Each connection carries one {@link TileRequest}, and the worker answers by
+ * streaming the escape times of the requested lines back, one line at a time. If the coordinator
+ * closes the connection, the worker stops calculating the tile.
+ *
+ * The worker listens on the loopback address by default, so it only accepts connections from the same
+ * machine. To accept connections from coordinators on other machines, set the system property
+ * {@code mandel.worker.address} to the address of the network interface to listen on, or to 0.0.0.0
+ * to listen on all interfaces. Requests for tiles that are larger than {@link TileRequest#MAX_TILE_SIZE}
+ * are rejected by closing the connection.
+ *
+ * Usage: TileWorker [&lt;port&gt;]
+ *
+ * @author Johan Dykstrom
+ */
+class TileWorker implements Closeable {
+
+    private static final Logger TLOG = Logger.getLogger(TileWorker.class.getName());
+
+    /** The default port to listen on. */
+    static final int DEFAULT_PORT = 7777;
+
+    private final ServerSocket serverSocket;
+
+    /** The connections that are currently open. */
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "TileWorker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The reference orbit of the last deep zoom request, which is reused by all tiles of the same image. */
+    private TileRequest orbitRequest;
+    private ReferenceOrbit orbit;
+
+    /**
+     * Creates a worker that listens on the given port, or on any free port if the port is 0, on the address
+     * specified in the system property {@code mandel.worker.address}, or on the loopback address if not set.
+     */
+    TileWorker(int port) throws IOException {
+        this(port, InetAddress.getByName(System.getProperty("mandel.worker.address")));
+    }
+
+    /**
+     * Creates a worker that listens on the given port and address.
+     */
+    TileWorker(int port, InetAddress address) throws IOException {
+        this.serverSocket = new ServerSocket(port, 0, address);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        TileWorker worker = new TileWorker(port);
+        TLOG.info("Listening on " + worker.getAddress().getHostAddress() + ":" + worker.getPort());
+        worker.run();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    InetAddress getAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    TileWorker start() {
+        executor.execute(this::run);
+        return this;
+    }
+
+    /**
+     * Accepts connections until the worker is closed.
+     */
+    private void run() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+
+                // If the worker was closed after the socket was accepted, close() may not have seen it
+                if (serverSocket.isClosed()) {
+                    closeQuietly(socket);
+                    return;
+                }
+                try {
+                    executor.execute(() -> handle(socket));
+                } catch (RejectedExecutionException e) {
+                    connections.remove(socket);
+                    closeQuietly(socket);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                TLOG.log(Level.WARNING, "Failed to accept connection", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the server socket and all open connections, including connections that have been accepted
+     * but not yet handled, and stops all calculations.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Called after each line has been sent to the coordinator.
+     */
+    void lineSent() throws IOException {
+        // Nothing to do by default
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            TileRequest request = TileRequest.read(in);
+            TLOG.fine("Calculating " + request);
+
+            ImageAttributes imageAttributes = request.imageAttributes();
+            ReferenceOrbit referenceOrbit = request.isDeepZoom() ? referenceOrbit(request) : null;
+            Parameters parameters = new Parameters(request.firstX(), request.firstY(), request.width(), request.height(),
+                    imageAttributes, referenceOrbit, null, request.precision(), -1);
+            LineByLineCalculator calculator = new LineByLineCalculator(parameters, Kernel.DEFAULT,
+                    new RenderStatistics(request.width() * (long) request.height()));
+
+            int[] iterations = new int[request.width()];
+            byte[] bytes = new byte[request.width() * Character.BYTES];
+            for (int y = 0; y < request.height(); y++) {
+                calculator.calcEscapeTimes(0, 1, y, iterations);
+                for (int x = 0, i = 0; x < iterations.length; x++, i += 2) {
+                    bytes[i] = (byte) (iterations[x] >> 8);
+                    bytes[i + 1] = (byte) iterations[x];
+                }
+                out.write(bytes);
+                out.flush();
+                lineSent();
+            }
+        } catch (SocketException e) {
+            // The connection was closed by the coordinator, or by closing the worker
+            TLOG.fine("Connection closed: " + e.getMessage());
+        } catch (IOException e) {
+            TLOG.log(Level.WARNING, "Failed to calculate tile", e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Returns the reference orbit for the given request, reusing the last orbit if possible.
+     */
+    private synchronized ReferenceOrbit referenceOrbit(TileRequest request) {
+        if (orbitRequest == null
+                || !orbitRequest.coordinates().equals(request.coordinates())
+                || orbitRequest.scale() != request.scale()
+                || orbitRequest.referenceX() != request.referenceX()
+                || orbitRequest.referenceY() != request.referenceY()) {
+            orbit = ReferenceOrbit.computeAt(request.imageAttributes(), request.referenceX(), request.referenceY());
+            orbitRequest = request;
+        }
+        return orbit;
+    }
+}
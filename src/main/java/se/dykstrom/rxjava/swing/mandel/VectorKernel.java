@@ -0,0 +1,212 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Calculates the "escape times" of a line of pixels using the Vector API. The pixels are processed
+ * in runs as wide as the preferred vector species, and lanes that have escaped are masked off until
+ * all lanes in the run have escaped, or the maximum number of iterations has been reached. Any pixels
+ * that do not fill up a whole run are calculated by the scalar kernel.
+ *
+ * The operations are performed in the same order as in {@link Kernel#calc(double, double, int)},
+ * and without fused multiply-add, so the result is identical to that of the scalar kernel. The same
+ * goes for the float version, that processes twice as many pixels in each run.
+ *
+ * This class must only be loaded if module {@code jdk.incubator.vector} is available.
+ *
+ * @author Johan Dykstrom
+ */
+final class VectorKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /** The offset of each lane from the first pixel in the run: 0, 1, 2, ... */
+    private static final DoubleVector LANE_OFFSETS = DoubleVector.fromArray(SPECIES, laneOffsets(), 0);
+
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /** The offset of each float lane from the first pixel in the run: 0, 1, 2, ... */
+    private static final FloatVector FLOAT_LANE_OFFSETS = FloatVector.fromArray(FLOAT_SPECIES, floatLaneOffsets(), 0);
+
+    private VectorKernel() { }
+
+    /**
+     * Calculates the "escape time" of each pixel in one line of the image.
+     *
+     * @see Kernel#calc(double, int, int, double, double, int, int[])
+     */
+    static void calc(double minX, int firstX, int step, double y0, double scale, int maxIterations, int[] iterations) {
+        final int lanes = SPECIES.length();
+        final int bound = SPECIES.loopBound(iterations.length);
+        final DoubleVector cy = DoubleVector.broadcast(SPECIES, y0);
+        final DoubleVector offsets = LANE_OFFSETS.mul(step);
+        final double[] counts = new double[lanes];
+
+        int x = 0;
+        for (; x < bound; x += lanes) {
+            DoubleVector cx = offsets.add(firstX + x * step).mul(scale).add(minX);
+            DoubleVector zx = cx;
+            DoubleVector zy = cy;
+
+            // Lanes inside the main cardioid or the period-2 bulb are done before we start
+            VectorMask<Double> inside = insideCardioidOrBulb(cx, cy);
+            DoubleVector count = DoubleVector.zero(SPECIES).blend(maxIterations, inside);
+            VectorMask<Double> active = inside.not();
+
+            // The orbit points saved for cycle detection, and the iteration when to save the next ones
+            DoubleVector savedX = zx;
+            DoubleVector savedY = zy;
+            int nextSave = 1;
+
+            for (int iteration = 0; iteration < maxIterations; iteration++) {
+                DoubleVector xx = zx.mul(zx);
+                DoubleVector yy = zy.mul(zy);
+                active = active.and(xx.add(yy).compare(VectorOperators.LE, 2 * 2));
+                if (!active.anyTrue()) {
+                    break;
+                }
+                count = count.add(1.0, active);
+                DoubleVector tempX = xx.sub(yy).add(cx);
+                zy = zx.mul(2.0).mul(zy).add(cy);
+                zx = tempX;
+
+                // Lanes that have returned to a saved orbit point will never escape
+                VectorMask<Double> periodic = active.and(zx.eq(savedX)).and(zy.eq(savedY));
+                if (periodic.anyTrue()) {
+                    count = count.blend(maxIterations, periodic);
+                    active = active.andNot(periodic);
+                }
+                if (iteration + 1 == nextSave) {
+                    savedX = zx;
+                    savedY = zy;
+                    nextSave *= 2;
+                }
+            }
+
+            count.intoArray(counts, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                iterations[x + lane] = (int) counts[lane];
+            }
+        }
+
+        // Calculate the remaining pixels one at a time
+        for (; x < iterations.length; x++) {
+            iterations[x] = Kernel.calc(minX + (firstX + x * step) * scale, y0, maxIterations);
+        }
+    }
+
+    /**
+     * Calculates the "escape time" of each pixel in one line of the image using floats.
+     *
+     * @see Kernel#calcFloat(float, int, int, float, float, int, int[])
+     */
+    static void calcFloat(float minX, int firstX, int step, float y0, float scale, int maxIterations, int[] iterations) {
+        final int lanes = FLOAT_SPECIES.length();
+        final int bound = FLOAT_SPECIES.loopBound(iterations.length);
+        final FloatVector cy = FloatVector.broadcast(FLOAT_SPECIES, y0);
+        final FloatVector offsets = FLOAT_LANE_OFFSETS.mul(step);
+        final float[] counts = new float[lanes];
+
+        int x = 0;
+        for (; x < bound; x += lanes) {
+            FloatVector cx = offsets.add(firstX + x * step).mul(scale).add(minX);
+            FloatVector zx = cx;
+            FloatVector zy = cy;
+
+            // Lanes inside the main cardioid or the period-2 bulb are done before we start
+            VectorMask<Float> inside = insideCardioidOrBulb(cx, cy);
+            FloatVector count = FloatVector.zero(FLOAT_SPECIES).blend(maxIterations, inside);
+            VectorMask<Float> active = inside.not();
+
+            // The orbit points saved for cycle detection, and the iteration when to save the next ones
+            FloatVector savedX = zx;
+            FloatVector savedY = zy;
+            int nextSave = 1;
+
+            for (int iteration = 0; iteration < maxIterations; iteration++) {
+                FloatVector xx = zx.mul(zx);
+                FloatVector yy = zy.mul(zy);
+                active = active.and(xx.add(yy).compare(VectorOperators.LE, 2 * 2));
+                if (!active.anyTrue()) {
+                    break;
+                }
+                count = count.add(1.0f, active);
+                FloatVector tempX = xx.sub(yy).add(cx);
+                zy = zx.mul(2.0f).mul(zy).add(cy);
+                zx = tempX;
+
+                // Lanes that have returned to a saved orbit point will never escape
+                VectorMask<Float> periodic = active.and(zx.eq(savedX)).and(zy.eq(savedY));
+                if (periodic.anyTrue()) {
+                    count = count.blend(maxIterations, periodic);
+                    active = active.andNot(periodic);
+                }
+                if (iteration + 1 == nextSave) {
+                    savedX = zx;
+                    savedY = zy;
+                    nextSave *= 2;
+                }
+            }
+
+            count.intoArray(counts, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                iterations[x + lane] = (int) counts[lane];
+            }
+        }
+
+        // Calculate the remaining pixels one at a time
+        for (; x < iterations.length; x++) {
+            iterations[x] = Kernel.calcFloat(minX + (firstX + x * step) * scale, y0, maxIterations);
+        }
+    }
+
+    /**
+     * Returns a mask with the lanes that are inside the main cardioid or the period-2 bulb.
+     *
+     * @see Kernel#isInCardioidOrBulb(double, double)
+     */
+    private static VectorMask<Double> insideCardioidOrBulb(DoubleVector cx, DoubleVector cy) {
+        DoubleVector yy = cy.mul(cy);
+        DoubleVector xm = cx.sub(0.25);
+        DoubleVector q = xm.mul(xm).add(yy);
+        VectorMask<Double> cardioid = q.mul(q.add(xm)).compare(VectorOperators.LE, yy.mul(0.25));
+        DoubleVector xp = cx.add(1.0);
+        VectorMask<Double> bulb = xp.mul(xp).add(yy).compare(VectorOperators.LE, 0.0625);
+        return cardioid.or(bulb);
+    }
+
+    /**
+     * Returns a mask with the float lanes that are inside the main cardioid or the period-2 bulb.
+     *
+     * @see Kernel#isInCardioidOrBulb(float, float)
+     */
+    private static VectorMask<Float> insideCardioidOrBulb(FloatVector cx, FloatVector cy) {
+        FloatVector yy = cy.mul(cy);
+        FloatVector xm = cx.sub(0.25f);
+        FloatVector q = xm.mul(xm).add(yy);
+        VectorMask<Float> cardioid = q.mul(q.add(xm)).compare(VectorOperators.LE, yy.mul(0.25f));
+        FloatVector xp = cx.add(1.0f);
+        VectorMask<Float> bulb = xp.mul(xp).add(yy).compare(VectorOperators.LE, 0.0625f);
+        return cardioid.or(bulb);
+    }
+
+    private static float[] floatLaneOffsets() {
+        float[] offsets = new float[FLOAT_SPECIES.length()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i;
+        }
+        return offsets;
+    }
+
+    private static double[] laneOffsets() {
+        double[] offsets = new double[SPECIES.length()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i;
+        }
+        return offsets;
+    }
+}
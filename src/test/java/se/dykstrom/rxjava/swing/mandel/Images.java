@@ -0,0 +1,113 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.List;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Helper methods and common views for tests that draw the lines emitted by an Observable into an image,
+ * to compare images drawn in different ways.
+ */
+final class Images {
+
+    /** The whole Mandelbrot set, in an image that is 200 pixels high. */
+    static final ImageAttributes INITIAL_VIEW = new ImageAttributes(Coordinates.INITIAL_COORDINATES, 3.0 / 200);
+
+    /** A zoomed in view of the edge of the set, with a lot of detail. */
+    static final ImageAttributes EDGE_VIEW = new ImageAttributes(new Coordinates(-0.7454, 0.1130), 0.00001);
+
+    private Images() { }
+
+    /**
+     * Draws the tiles emitted by the given Observable using the given strategy, in the same way as the
+     * application, see {@link MandelController#lineObs}, but with new statistics and an empty cache.
+     */
+    static int[][] drawImage(Observable<Parameters> paramObs, RenderStrategy strategy, int width, int height) {
+        return drawImage(paramObs, strategy, width, height, new RenderStatistics(width * (long) height), new TileCache());
+    }
+
+    /**
+     * Draws the tiles emitted by the given Observable using the given strategy, statistics, and cache,
+     * in the same way as the application, see {@link MandelController#lineObs}.
+     */
+    static int[][] drawImage(Observable<Parameters> paramObs, RenderStrategy strategy, int width, int height,
+                             RenderStatistics statistics, TileCache cache) {
+        return drawImage(MandelController.lineObs(paramObs, strategy, Schedulers.computation(), statistics, cache), width, height);
+    }
+
+    /**
+     * Subscribes to the given Observable, waits for it to complete without errors, and returns an image
+     * of the given size with all lines emitted drawn into it. Lines emitted later overwrite lines emitted
+     * earlier, so an image drawn in several passes gets the lines of the last pass.
+     */
+    static int[][] drawImage(Observable<Line> lineObs, int width, int height) {
+        int[][] image = new int[height][width];
+        drawImage(lineObs, image);
+        return image;
+    }
+
+    /**
+     * Subscribes to the given Observable, waits for it to complete without errors, and draws all lines
+     * emitted into the given image.
+     */
+    static void drawImage(Observable<Line> lineObs, int[][] image) {
+        TestSubscriber<Line> testSubscriber = new TestSubscriber<>();
+        lineObs.subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertNoErrors();
+        drawLines(testSubscriber.getOnNextEvents(), image);
+    }
+
+    /**
+     * Returns an image of the given size with all lines emitted by the given Observable drawn into it,
+     * recycling each line as soon as it has been drawn, like the view does.
+     */
+    static int[][] drawRecycled(Observable<Line> lineObs, int width, int height) {
+        int[][] image = new int[height][width];
+        lineObs.toBlocking().forEach(line -> {
+            drawLine(line, image);
+            line.recycle();
+        });
+        return image;
+    }
+
+    /**
+     * Returns an image of the given size with all the given lines drawn into it.
+     */
+    static int[][] toImage(List<Line> lines, int width, int height) {
+        int[][] image = new int[height][width];
+        drawLines(lines, image);
+        return image;
+    }
+
+    /**
+     * Draws all the given lines into the given image.
+     */
+    static void drawLines(List<Line> lines, int[][] image) {
+        for (Line line : lines) {
+            drawLine(line, image);
+        }
+    }
+
+    /**
+     * Draws the given line, or block of lines, into the given image.
+     */
+    static void drawLine(Line line, int[][] image) {
+        for (int i = 0; i < line.getHeight(); i++) {
+            System.arraycopy(line.getRGB(), i * line.getWidth(), image[line.getY() + i], line.getX(), line.getWidth());
+        }
+    }
+
+    /**
+     * Asserts that the given images are equal, line by line.
+     */
+    static void assertSameImage(String message, int[][] expected, int[][] actual) {
+        for (int y = 0; y < expected.length; y++) {
+            assertArrayEquals(message + ", line " + y, expected[y], actual[y]);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.common.utils.Utils.timeRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestCoordinator {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 64;
+
+    /** A deep zoom image around c = i. */
+    private static final ImageAttributes DEEP_ATTRIBUTES =
+            new ImageAttributes(new Coordinates(new BigDecimal("-1.0E-12"), new BigDecimal("0.99999999999925")), 1e-14);
+
+    private final List<TileWorker> workers = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (TileWorker worker : workers) {
+            worker.close();
+        }
+    }
+
+    @Test
+    public void testParseWorkers() {
+        List<InetSocketAddress> addresses = Coordinator.parseWorkers("localhost:1234, otherhost");
+
+        assertEquals(2, addresses.size());
+        assertEquals(1234, addresses.get(0).getPort());
+        assertEquals("otherhost", addresses.get(1).getHostString());
+        assertEquals(TileWorker.DEFAULT_PORT, addresses.get(1).getPort());
+        assertTrue(Coordinator.parseWorkers("").isEmpty());
+    }
+
+    @Test
+    public void testSameImageAsLocal() throws IOException {
+        Coordinator coordinator = new Coordinator(List.of(startWorker(), startWorker(), startWorker()));
+
+        printRun("testSameImageAsLocal", () -> assertSameAsLocal(coordinator, INITIAL_VIEW));
+        assertEquals(0, coordinator.getReassignments());
+    }
+
+    @Test
+    public void testSameDeepZoomImageAsLocal() throws IOException {
+        Coordinator coordinator = new Coordinator(List.of(startWorker(), startWorker()));
+
+        printRun("testSameDeepZoomImageAsLocal", () -> assertSameAsLocal(coordinator, DEEP_ATTRIBUTES));
+    }
+
+    @Test
+    public void testWorkerDiesMidJob() throws IOException {
+        // The first worker dies after sending 100 lines
+        TileWorker dyingWorker = new DyingTileWorker(100).start();
+        workers.add(dyingWorker);
+        Coordinator coordinator = new Coordinator(List.of(address(dyingWorker), startWorker(), startWorker()), 10_000);
+
+        // All connections to the dying worker are closed, so no tile has to wait for the read timeout
+        long time = timeRun(() -> assertSameAsLocal(coordinator, INITIAL_VIEW));
+        System.out.printf("[testWorkerDiesMidJob] finished after %d ms\n", time);
+        assertTrue("time " + time, time < 10_000);
+        assertTrue(coordinator.getReassignments() > 0);
+        assertEquals(2, coordinator.getLiveWorkerCount());
+    }
+
+    @Test
+    public void testStalledWorker() throws IOException {
+        // A server socket that accepts connections, but never answers
+        try (ServerSocket stalledWorker = new ServerSocket(0)) {
+            InetSocketAddress address = new InetSocketAddress("localhost", stalledWorker.getLocalPort());
+            Coordinator coordinator = new Coordinator(List.of(address, startWorker()), 200);
+
+            printRun("testStalledWorker", () -> assertSameAsLocal(coordinator, INITIAL_VIEW));
+            assertTrue(coordinator.getReassignments() > 0);
+            assertEquals(1, coordinator.getLiveWorkerCount());
+        }
+    }
+
+    @Test
+    public void testAllWorkersDead() throws IOException {
+        TileWorker worker = new TileWorker(0);
+        InetSocketAddress address = address(worker);
+        worker.close();
+        Coordinator coordinator = new Coordinator(List.of(address));
+
+        // All tiles are calculated locally
+        printRun("testAllWorkersDead", () -> assertSameAsLocal(coordinator, INITIAL_VIEW));
+        assertEquals(0, coordinator.getLiveWorkerCount());
+    }
+
+    @Test
+    public void testWorkerListensOnLoopbackByDefault() throws IOException {
+        try (TileWorker worker = new TileWorker(0)) {
+            assertTrue(worker.getAddress().isLoopbackAddress());
+        }
+    }
+
+    @Test
+    public void testInvalidRequestIsRejected() throws IOException {
+        InetSocketAddress address = startWorker();
+        Coordinates coordinates = INITIAL_VIEW.coordinates();
+        double scale = INITIAL_VIEW.scale();
+        List<TileRequest> requests = List.of(
+                new TileRequest(0, 0, TileRequest.MAX_TILE_SIZE + 1, 1, coordinates, scale, -1, -1, Precision.DOUBLE),
+                new TileRequest(0, 0, 1, -1, coordinates, scale, -1, -1, Precision.DOUBLE),
+                new TileRequest(0, 0, 1, 1, coordinates, Double.NaN, -1, -1, Precision.DOUBLE));
+        for (TileRequest request : requests) {
+            try (Socket socket = new Socket(address.getHostString(), address.getPort())) {
+                request.write(new DataOutputStream(socket.getOutputStream()));
+                // The worker closes the connection without sending anything
+                assertEquals(request.toString(), -1, socket.getInputStream().read());
+            }
+        }
+
+        // A valid request is still answered
+        try (Socket socket = new Socket(address.getHostString(), address.getPort())) {
+            new TileRequest(0, 0, 1, 1, coordinates, scale, -1, -1, Precision.DOUBLE).write(new DataOutputStream(socket.getOutputStream()));
+            assertEquals(Character.BYTES, socket.getInputStream().readNBytes(Character.BYTES).length);
+        }
+    }
+
+    /**
+     * A worker that dies after sending a number of lines, which is used to test that tiles are reassigned.
+     */
+    private static class DyingTileWorker extends TileWorker {
+
+        private final long lineLimit;
+        private final AtomicLong sentLines = new AtomicLong();
+
+        DyingTileWorker(long lineLimit) throws IOException {
+            super(0);
+            this.lineLimit = lineLimit;
+        }
+
+        @Override
+        void lineSent() throws IOException {
+            if (sentLines.incrementAndGet() >= lineLimit) {
+                close();
+            }
+        }
+    }
+
+    private InetSocketAddress startWorker() throws IOException {
+        TileWorker worker = new TileWorker(0).start();
+        workers.add(worker);
+        return address(worker);
+    }
+
+    private static InetSocketAddress address(TileWorker worker) {
+        return new InetSocketAddress("localhost", worker.getPort());
+    }
+
+    /**
+     * Asserts that the given coordinator draws the same image as the local line by line calculator,
+     * and that it calculates every pixel once.
+     */
+    private static void assertSameAsLocal(Coordinator coordinator, ImageAttributes imageAttributes) {
+        ReferenceOrbit referenceOrbit = imageAttributes.isDeepZoom() ? ReferenceOrbit.compute(imageAttributes, WIDTH, HEIGHT) : null;
+        Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, referenceOrbit);
+
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        assertSameImage("coordinator", drawImage(paramObs, RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT),
+                drawImage(coordinator.lineObs(paramObs, statistics, new TileCache()), WIDTH, HEIGHT));
+        assertEquals(WIDTH * HEIGHT, statistics.getCalculatedPixels());
+    }
+}
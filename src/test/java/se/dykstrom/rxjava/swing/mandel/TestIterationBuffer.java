@@ -0,0 +1,85 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestIterationBuffer {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int TILE_SIZE = 64;
+
+    @Test
+    public void testSetAndGet() {
+        IterationBuffer iterationBuffer = new IterationBuffer(10, 5, ImageAttributes.MAX_NUM_ITERATIONS);
+        iterationBuffer.set(2, 3, new int[]{0, 1, ImageAttributes.MAX_NUM_ITERATIONS, 0}, 1, 2);
+
+        assertEquals(0, iterationBuffer.get(1, 3));
+        assertEquals(1, iterationBuffer.get(2, 3));
+        assertEquals(ImageAttributes.MAX_NUM_ITERATIONS, iterationBuffer.get(3, 3));
+        assertEquals(0, iterationBuffer.get(4, 3));
+    }
+
+    @Test
+    public void testCopyOfAndSet() {
+        IterationBuffer source = new IterationBuffer(10, 5, 100);
+        source.set(2, 1, new int[]{1, 2, 3}, 0, 3);
+        source.set(2, 2, new int[]{4, 5, 6}, 0, 3);
+
+        IterationBuffer destination = new IterationBuffer(10, 5, 100);
+        destination.set(2, 1, 3, 2, source.copyOf(2, 1, 3, 2));
+
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertEquals(source.get(x, y), destination.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testTileBuffer() {
+        IterationBuffer source = new IterationBuffer(10, 5, 100);
+        source.set(2, 1, new int[]{1, 2, 3}, 0, 3);
+        source.set(2, 2, new int[]{4, 5, 6}, 0, 3);
+
+        // A buffer that covers only the tile is addressed in image coordinates
+        IterationBuffer tile = new IterationBuffer(2, 1, 3, 2, 100);
+        tile.set(2, 1, 3, 2, source.copyOf(2, 1, 3, 2));
+        assertEquals(1, tile.get(2, 1));
+        assertEquals(6, tile.get(4, 2));
+        assertArrayEquals(source.copyOf(2, 1, 3, 2), tile.copyOf(2, 1, 3, 2));
+    }
+
+    @Test
+    public void testRecolorGivesSameImageAsRecalculating() {
+        printRun("testRecolorGivesSameImageAsRecalculating", () -> {
+            for (RenderStrategy strategy : RenderStrategy.values()) {
+                IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, INITIAL_VIEW.maxIterations());
+                int[][] fire = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null, iterationBuffer),
+                        strategy, WIDTH, HEIGHT);
+                int[][] ice = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW.withPalette(Palette.ICE), null),
+                        strategy, WIDTH, HEIGHT);
+
+                int[] rgb = new int[WIDTH * HEIGHT];
+                iterationBuffer.toRGB(Palette.DEFAULT, rgb);
+                assertImageEquals(fire, rgb);
+
+                long start = System.nanoTime();
+                iterationBuffer.toRGB(Palette.ICE, rgb);
+                System.out.println(strategy + ": recolored in " + (System.nanoTime() - start) / 1000 + " us");
+                assertImageEquals(ice, rgb);
+            }
+        });
+    }
+
+    private static void assertImageEquals(int[][] expected, int[] actual) {
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals("pixel " + (i % WIDTH) + "," + (i / WIDTH), expected[i / WIDTH][i % WIDTH], actual[i]);
+        }
+    }
+}
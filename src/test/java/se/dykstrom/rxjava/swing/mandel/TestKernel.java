@@ -0,0 +1,188 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+
+public class TestKernel {
+
+    private static final int MAX_ITERATIONS = 100;
+
+    /** An odd width, so the vector kernel must also calculate some pixels one at a time. */
+    private static final int WIDTH = 503;
+
+    private static final ImageAttributes INTERIOR_ATTRIBUTES = new ImageAttributes(new Coordinates(-1.8, -1.0), 0.004);
+
+    @Test
+    public void testVectorApiAvailable() {
+        assertTrue("Tests must be run with --add-modules jdk.incubator.vector", Kernel.isVectorApiAvailable());
+    }
+
+    @Test
+    public void testSameEscapeTimesForInitialImage() {
+        printRun("testSameEscapeTimesForInitialImage", () -> assertSameEscapeTimes(ImageAttributes.INITIAL_ATTRIBUTES));
+    }
+
+    @Test
+    public void testSameEscapeTimesForEdgeImage() {
+        printRun("testSameEscapeTimesForEdgeImage", () -> assertSameEscapeTimes(EDGE_VIEW));
+    }
+
+    @Test
+    public void testSameEscapeTimesForInteriorImage() {
+        printRun("testSameEscapeTimesForInteriorImage", () -> assertSameEscapeTimes(INTERIOR_ATTRIBUTES));
+    }
+
+    @Test
+    public void testSameEscapeTimesAsWithoutShortcuts() {
+        printRun("testSameEscapeTimesAsWithoutShortcuts", () -> {
+            for (ImageAttributes imageAttributes : List.of(ImageAttributes.INITIAL_ATTRIBUTES, EDGE_VIEW, INTERIOR_ATTRIBUTES)) {
+                Coordinates coordinates = imageAttributes.coordinates();
+                double scale = imageAttributes.scale();
+                int maxIterations = 1000;
+                int[] actual = new int[WIDTH];
+
+                for (int y = 0; y < WIDTH; y += 11) {
+                    double y0 = coordinates.minY() + y * scale;
+                    Kernel.SCALAR.calc(coordinates.minX(), 0, 1, y0, scale, maxIterations, actual);
+                    for (int x = 0; x < WIDTH; x++) {
+                        int expected = calcWithoutShortcuts(coordinates.minX() + x * scale, y0, maxIterations);
+                        assertEquals("pixel " + x + ", " + y, expected, actual[x]);
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testCardioidAndBulb() {
+        // Inside the main cardioid
+        assertTrue(Kernel.isInCardioidOrBulb(0.0, 0.0));
+        assertTrue(Kernel.isInCardioidOrBulb(-0.5, 0.5));
+        assertTrue(Kernel.isInCardioidOrBulb(0.2, 0.0));
+        // Inside the period-2 bulb
+        assertTrue(Kernel.isInCardioidOrBulb(-1.0, 0.0));
+        assertTrue(Kernel.isInCardioidOrBulb(-1.2, 0.1));
+        // Outside both
+        assertFalse(Kernel.isInCardioidOrBulb(0.3, 0.0));
+        assertFalse(Kernel.isInCardioidOrBulb(-1.3, 0.0));
+        assertFalse(Kernel.isInCardioidOrBulb(-0.1, 0.9));
+        assertFalse(Kernel.isInCardioidOrBulb(-2.0, -1.5));
+    }
+
+    @Test
+    public void testSameEscapeTimesForNarrowLines() {
+        for (int width = 0; width < 20; width++) {
+            int[] expected = new int[width];
+            int[] actual = new int[width];
+            Kernel.SCALAR.calc(-2.0, 3, 1, 0.1, 0.1, MAX_ITERATIONS, expected);
+            Kernel.VECTOR.calc(-2.0, 3, 1, 0.1, 0.1, MAX_ITERATIONS, actual);
+            assertArrayEquals("width " + width, expected, actual);
+        }
+    }
+
+    @Test
+    public void testSameEscapeTimesWithStep() {
+        for (int step = 1; step <= 8; step *= 2) {
+            int[] expected = new int[WIDTH / step];
+            int[] actual = new int[WIDTH / step];
+            Kernel.SCALAR.calc(-2.0, 5, step, 0.1, 0.006, MAX_ITERATIONS, expected);
+            Kernel.VECTOR.calc(-2.0, 5, step, 0.1, 0.006, MAX_ITERATIONS, actual);
+            assertArrayEquals("step " + step, expected, actual);
+
+            // Every step:th pixel should be the same as when calculating all pixels
+            int[] all = new int[WIDTH];
+            Kernel.SCALAR.calc(-2.0, 5, 1, 0.1, 0.006, MAX_ITERATIONS, all);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals(all[i * step], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testSameEscapeTimesWithFloats() {
+        printRun("testSameEscapeTimesWithFloats", () -> {
+            for (ImageAttributes imageAttributes : List.of(ImageAttributes.INITIAL_ATTRIBUTES, INTERIOR_ATTRIBUTES)) {
+                float minX = (float) imageAttributes.coordinates().minX();
+                float minY = (float) imageAttributes.coordinates().minY();
+                float scale = (float) imageAttributes.scale();
+                int[] expected = new int[WIDTH];
+                int[] actual = new int[WIDTH];
+
+                for (int y = 0; y < WIDTH; y += 7) {
+                    float y0 = minY + y * scale;
+                    Kernel.SCALAR.calcFloat(minX, 0, 1, y0, scale, MAX_ITERATIONS, expected);
+                    Kernel.VECTOR.calcFloat(minX, 0, 1, y0, scale, MAX_ITERATIONS, actual);
+                    assertArrayEquals("line " + y, expected, actual);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testSameEscapeTimesWithFloatsForNarrowLines() {
+        for (int width = 0; width < 40; width++) {
+            int[] expected = new int[width];
+            int[] actual = new int[width];
+            Kernel.SCALAR.calcFloat(-2.0f, 3, 2, 0.1f, 0.1f, MAX_ITERATIONS, expected);
+            Kernel.VECTOR.calcFloat(-2.0f, 3, 2, 0.1f, 0.1f, MAX_ITERATIONS, actual);
+            assertArrayEquals("width " + width, expected, actual);
+        }
+    }
+
+    @Test
+    public void testSameLines() {
+        Parameters parameters = new Parameters(0, WIDTH, 50, ImageAttributes.INITIAL_ATTRIBUTES);
+
+        TestSubscriber<Line> scalarSubscriber = new TestSubscriber<>();
+        new LineProducer(parameters, scalarSubscriber, Kernel.SCALAR).request(Long.MAX_VALUE);
+        TestSubscriber<Line> vectorSubscriber = new TestSubscriber<>();
+        new LineProducer(parameters, vectorSubscriber, Kernel.VECTOR).request(Long.MAX_VALUE);
+
+        List<Line> expected = scalarSubscriber.getOnNextEvents();
+        List<Line> actual = vectorSubscriber.getOnNextEvents();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getY(), actual.get(i).getY());
+            assertArrayEquals(expected.get(i).getRGB(), actual.get(i).getRGB());
+        }
+    }
+
+    /**
+     * Calculates the escape time without any shortcuts for points inside the set.
+     */
+    private static int calcWithoutShortcuts(double x0, double y0, int maxIterations) {
+        double x = x0;
+        double y = y0;
+        int iteration = 0;
+        while ((x * x + y * y <= (2 * 2)) && (iteration < maxIterations)) {
+            double tempX = x * x - y * y + x0;
+            y = 2 * x * y + y0;
+            x = tempX;
+            iteration++;
+        }
+        return iteration;
+    }
+
+    private static void assertSameEscapeTimes(ImageAttributes imageAttributes) {
+        Coordinates coordinates = imageAttributes.coordinates();
+        double scale = imageAttributes.scale();
+        int[] expected = new int[WIDTH];
+        int[] actual = new int[WIDTH];
+
+        for (int y = 0; y < WIDTH; y += 7) {
+            double y0 = coordinates.minY() + y * scale;
+            Kernel.SCALAR.calc(coordinates.minX(), 0, 1, y0, scale, MAX_ITERATIONS, expected);
+            Kernel.VECTOR.calc(coordinates.minX(), 0, 1, y0, scale, MAX_ITERATIONS, actual);
+            assertArrayEquals("line " + y, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import rx.Subscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+
+public class TestLinePool {
+
+    private static final int WIDTH = 64;
+    private static final int TILES = 32;
+
+    @Test
+    public void testRecycledLineIsReused() {
+        LinePool pool = new LinePool();
+        Line first = pool.acquire(10, 20, WIDTH);
+        assertEquals(10, first.getX());
+        assertEquals(20, first.getY());
+        assertEquals(WIDTH, first.getRGB().length);
+
+        first.recycle();
+        assertEquals(1, pool.getFreeLines(WIDTH));
+
+        Line second = pool.acquire(30, 40, WIDTH);
+        assertSame(first, second);
+        assertEquals(30, second.getX());
+        assertEquals(40, second.getY());
+        assertEquals(0, pool.getFreeLines(WIDTH));
+    }
+
+    @Test
+    public void testLinesOfDifferentWidthAreNotMixed() {
+        LinePool pool = new LinePool();
+        pool.acquire(0, 0, WIDTH).recycle();
+
+        Line line = pool.acquire(0, 0, WIDTH / 2);
+        assertEquals(WIDTH / 2, line.getRGB().length);
+        assertEquals(1, pool.getFreeLines(WIDTH));
+    }
+
+    @Test
+    public void testWideLinesAreNotPooled() {
+        LinePool pool = new LinePool();
+        Line first = pool.acquire(0, 0, LinePool.MAX_WIDTH + 1);
+        first.recycle();
+
+        assertNotSame(first, pool.acquire(0, 0, LinePool.MAX_WIDTH + 1));
+    }
+
+    @Test
+    public void testRecycledBlockIsReshaped() {
+        LinePool pool = new LinePool();
+        LineBlock first = pool.acquireBlock(0, 0, WIDTH, 4);
+        first.recycle();
+        assertEquals(1, pool.getFreeBlocks(WIDTH * 4));
+        assertEquals(0, pool.getFreeLines(WIDTH * 4));
+
+        // A block with the same number of pixels, but another shape
+        LineBlock second = pool.acquireBlock(10, 20, WIDTH * 2, 2);
+        assertSame(first, second);
+        assertEquals(10, second.getX());
+        assertEquals(20, second.getY());
+        assertEquals(WIDTH * 2, second.getWidth());
+        assertEquals(2, second.getHeight());
+    }
+
+    @Test
+    public void testAllocationPerLine() {
+        printRun("testAllocationPerLine", () -> {
+            // The distributed strategy is not included, since it calculates the tiles on the workers
+            for (RenderStrategy strategy : List.of(RenderStrategy.LINE_BY_LINE, RenderStrategy.PROGRESSIVE, RenderStrategy.SUBDIVISION)) {
+                // Warm up, to fill the pool, and to let the JIT compiler do its work
+                for (int i = 0; i < 10; i++) {
+                    drawTiles(strategy);
+                }
+
+                double bytesPerLine = drawTiles(strategy);
+                System.out.println(strategy + ": " + bytesPerLine + " bytes per line");
+
+                // Without the pool, each line would allocate an RGB array of more than 256 bytes
+                assertTrue(strategy + ": bytes per line " + bytesPerLine, bytesPerLine < 8);
+            }
+        });
+    }
+
+    /**
+     * Calculates a number of tiles line by line, using the calculators of the given strategy, and recycles
+     * each line as soon as it has been emitted. Everything that is needed to calculate the tiles is created
+     * before the lines are requested, and only the allocations made while calculating are measured.
+     *
+     * @return The number of bytes allocated per line.
+     */
+    private static double drawTiles(RenderStrategy strategy) {
+        RecyclingSubscriber subscriber = new RecyclingSubscriber();
+        RenderStatistics statistics = new RenderStatistics((long) TILES * WIDTH * WIDTH);
+        List<LineProducer> producers = new ArrayList<>();
+        for (int i = 0; i < TILES; i++) {
+            Parameters parameters = new Parameters(i * WIDTH, i * WIDTH, WIDTH, WIDTH, ImageAttributes.INITIAL_ATTRIBUTES, null);
+            for (TileCalculator calculator : calculators(strategy, parameters, statistics)) {
+                producers.add(new LineProducer(calculator, subscriber));
+            }
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (LineProducer producer : producers) {
+            producer.request(Long.MAX_VALUE);
+        }
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals(producers.size() * WIDTH, subscriber.lines);
+        return (double) (after - before) / subscriber.lines;
+    }
+
+    /**
+     * Returns the calculators that the given strategy uses to calculate a tile, in the order they are run.
+     */
+    private static List<TileCalculator> calculators(RenderStrategy strategy, Parameters parameters, RenderStatistics statistics) {
+        return switch (strategy) {
+            case LINE_BY_LINE -> List.of(new LineByLineCalculator(parameters, Kernel.SCALAR, statistics));
+            case PROGRESSIVE -> {
+                int[] samples = ProgressiveCalculator.createSamples(parameters);
+                yield Stream.of(ProgressiveCalculator.STEPS)
+                        .<TileCalculator>map(step -> new ProgressiveCalculator(parameters, Kernel.SCALAR, statistics, step, samples))
+                        .toList();
+            }
+            case SUBDIVISION -> List.of(new SubdivisionCalculator(parameters, Kernel.SCALAR, statistics));
+            default -> throw new IllegalArgumentException("unsupported strategy: " + strategy);
+        };
+    }
+
+    private static class RecyclingSubscriber extends Subscriber<Line> {
+
+        private int lines;
+
+        @Override
+        public void onCompleted() { }
+
+        @Override
+        public void onError(Throwable e) {
+            throw new RuntimeException(e);
+        }
+
+        @Override
+        public void onNext(Line line) {
+            lines++;
+            line.recycle();
+        }
+    }
+}
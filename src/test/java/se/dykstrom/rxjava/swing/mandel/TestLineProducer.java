@@ -7,8 +7,12 @@ import rx.Subscriber;
 import rx.observers.TestSubscriber;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.junit.Assert.*;
 import static se.dykstrom.rxjava.common.utils.Utils.printRun;
@@ -134,6 +138,178 @@ public class TestLineProducer {
         });
     }
 
+    @Test
+    public void testUnsubscribeStopsCalculation() {
+        printRun("testUnsubscribeStopsCalculation", () -> {
+            RenderStatistics statistics = new RenderStatistics(100 * 1000);
+            TestSubscriber<Line> subscriber = new TestSubscriber<Line>() {
+                @Override
+                public void onNext(Line line) {
+                    super.onNext(line);
+                    if (getOnNextEvents().size() == 3) {
+                        unsubscribe();
+                    }
+                }
+            };
+            LineProducer producer = new LineProducer(new LineByLineCalculator(PARAMS_WITH_HEIGHT_1000, Kernel.SCALAR, statistics), subscriber);
+
+            producer.request(Long.MAX_VALUE);
+
+            // No more lines are calculated after unsubscribing
+            assertEquals(3, subscriber.getOnNextEvents().size());
+            assertEquals(3 * 100, statistics.getCalculatedPixels());
+            subscriber.assertNotCompleted();
+
+            assertTrue(statistics.cancel());
+            assertEquals(997 * 100, statistics.getAvoidedPixels());
+        });
+    }
+
+    @Test
+    public void testUnsubscribeWithBackpressure() {
+        printRun("testUnsubscribeWithBackpressure", () -> {
+            height1000Producer.request(10);
+            height1000Subscriber.unsubscribe();
+            height1000Producer.request(10);
+
+            assertEquals(10, height1000Subscriber.getOnNextEvents().size());
+            height1000Subscriber.assertNotCompleted();
+        });
+    }
+
+    @Test
+    public void testUnsubscribeCancelsCalculator() {
+        TileCalculator calculator = new SubdivisionCalculator(PARAMS_WITH_HEIGHT_10, Kernel.SCALAR, new RenderStatistics(100 * 10));
+        TestSubscriber<Line> subscriber = new TestSubscriber<>();
+        new LineProducer(calculator, subscriber);
+
+        subscriber.unsubscribe();
+
+        assertTrue(calculator.isCancelled());
+        assertNull(calculator.calculateLine(0));
+    }
+
+    @Test
+    public void testCancelInTheMiddleOfALine() {
+        // A line so wide that it is calculated in several chunks
+        final int width = 4 * TileCalculator.CHUNK_ITERATIONS / ImageAttributes.NUM_ITERATIONS;
+        Parameters parameters = new Parameters(0, 100, width, 10, ImageAttributes.INITIAL_ATTRIBUTES, null);
+        List<Function<RenderStatistics, TileCalculator>> factories = List.of(
+                statistics -> new LineByLineCalculator(parameters, Kernel.SCALAR, statistics),
+                statistics -> new ProgressiveCalculator(parameters, Kernel.SCALAR, statistics, 1, ProgressiveCalculator.createSamples(parameters)),
+                statistics -> new SubdivisionCalculator(parameters, Kernel.SCALAR, statistics),
+                statistics -> new SupersamplingCalculator(parameters, Kernel.SCALAR, statistics, 2, 0));
+
+        for (Function<RenderStatistics, TileCalculator> factory : factories) {
+            // Cancel the calculation when the first chunk has been calculated
+            AtomicReference<TileCalculator> calculator = new AtomicReference<>();
+            RenderStatistics statistics = new RenderStatistics(width * 10L) {
+                @Override
+                void addCalculatedPixels(long pixels) {
+                    super.addCalculatedPixels(pixels);
+                    calculator.get().cancel();
+                }
+            };
+            calculator.set(factory.apply(statistics));
+
+            String name = calculator.get().getClass().getSimpleName();
+            assertNull(name, calculator.get().calculateLine(0));
+            assertTrue(name + " calculated " + statistics.getCalculatedPixels(), statistics.getCalculatedPixels() < width);
+        }
+    }
+
+    @Test
+    public void testCancelledBlockIsRecycled() {
+        // A width that no other test uses, so the pooled lines and blocks can be counted
+        final int width = 37;
+        final int blockSize = width * 4;
+        int freeBlocks = LinePool.SHARED.getFreeBlocks(blockSize);
+
+        // Unsubscribe while calculating the second line in the first block
+        TestSubscriber<Line> subscriber = new TestSubscriber<>();
+        AtomicInteger calculatedLines = new AtomicInteger();
+        RenderStatistics statistics = new RenderStatistics(width * 10L) {
+            @Override
+            void addCalculatedPixels(long pixels) {
+                super.addCalculatedPixels(pixels);
+                if (calculatedLines.incrementAndGet() == 2) {
+                    subscriber.unsubscribe();
+                }
+            }
+        };
+        Parameters parameters = new Parameters(0, 100, width, 10, ImageAttributes.INITIAL_ATTRIBUTES, null);
+        LineProducer producer = new LineProducer(new LineByLineCalculator(parameters, Kernel.SCALAR, statistics), subscriber, 4);
+
+        producer.request(Long.MAX_VALUE);
+
+        subscriber.assertNoValues();
+        assertEquals(freeBlocks + 1, LinePool.SHARED.getFreeBlocks(blockSize));
+        assertTrue(LinePool.SHARED.getFreeLines(width) > 0);
+    }
+
+    @Test
+    public void testRequestBlocks() {
+        printRun("testRequestBlocks", () -> {
+            Parameters parameters = new Parameters(0, 100, 100, 10, ImageAttributes.INITIAL_ATTRIBUTES, null);
+            TileCalculator calculator = new LineByLineCalculator(parameters, Kernel.SCALAR, new RenderStatistics(100 * 10));
+            TestSubscriber<Line> subscriber = new TestSubscriber<>(0);
+            LineProducer producer = new LineProducer(calculator, subscriber, 4);
+
+            // Backpressure is handled in blocks, not in lines
+            producer.request(2);
+            assertEquals(2, subscriber.getOnNextEvents().size());
+            subscriber.assertNotCompleted();
+
+            producer.request(2);
+            assertEquals(3, subscriber.getOnNextEvents().size());
+            subscriber.assertCompleted();
+
+            // The last block gets the lines that are left
+            List<Line> blocks = subscriber.getOnNextEvents();
+            assertEquals(104, blocks.get(1).getY());
+            assertEquals(4, blocks.get(1).getHeight());
+            assertEquals(108, blocks.get(2).getY());
+            assertEquals(2, blocks.get(2).getHeight());
+            assertEquals(100 * 2, blocks.get(2).getRGB().length);
+        });
+    }
+
+    @Test
+    public void testBlocksContainSameLines() {
+        Parameters parameters = new Parameters(0, 100, 100, 10, ImageAttributes.INITIAL_ATTRIBUTES, null);
+        TestSubscriber<Line> lineSubscriber = new TestSubscriber<>();
+        LineObservable.fromCalculator(new LineByLineCalculator(parameters, Kernel.SCALAR, new RenderStatistics(100 * 10)))
+                .subscribe(lineSubscriber);
+        TestSubscriber<Line> blockSubscriber = new TestSubscriber<>();
+        new LineProducer(new LineByLineCalculator(parameters, Kernel.SCALAR, new RenderStatistics(100 * 10)), blockSubscriber, 3)
+                .request(Long.MAX_VALUE);
+
+        int y = 0;
+        for (Line block : blockSubscriber.getOnNextEvents()) {
+            for (int i = 0; i < block.getHeight(); i++, y++) {
+                int[] expected = lineSubscriber.getOnNextEvents().get(y).getRGB();
+                int[] actual = Arrays.copyOfRange(block.getRGB(), i * block.getWidth(), (i + 1) * block.getWidth());
+                assertArrayEquals("line " + y, expected, actual);
+            }
+        }
+        assertEquals(10, y);
+    }
+
+    @Test
+    public void testLinesPerBlock() {
+        assertEquals(64, LineObservable.linesPerBlock(64));
+        assertEquals(1, LineObservable.linesPerBlock(10000));
+    }
+
+    @Test
+    public void testCompletedRenderIsNotCancelled() {
+        RenderStatistics statistics = new RenderStatistics(100);
+        statistics.complete();
+
+        assertFalse(statistics.cancel());
+        assertEquals(0, statistics.getAvoidedPixels());
+    }
+
     // -----------------------------------------------------------------------
 
     /**
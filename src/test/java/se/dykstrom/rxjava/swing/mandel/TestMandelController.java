@@ -0,0 +1,149 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import rx.schedulers.Schedulers;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestMandelController {
+
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 100;
+    private static final int TILE_SIZE = 64;
+
+    @Test
+    public void testTilesCoverImage() {
+        List<Parameters> tiles = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, ImageAttributes.INITIAL_ATTRIBUTES, null)
+                .toList().toBlocking().single();
+
+        // 3 tiles per row, and 2 rows of tiles
+        assertEquals(6, tiles.size());
+
+        int[][] covered = new int[HEIGHT][WIDTH];
+        for (Parameters tile : tiles) {
+            assertTrue(tile.getWidth() <= TILE_SIZE);
+            assertTrue(tile.getHeight() <= TILE_SIZE);
+            for (int y = tile.getFirstY(); y < tile.getFirstY() + tile.getHeight(); y++) {
+                for (int x = tile.getFirstX(); x < tile.getFirstX() + tile.getWidth(); x++) {
+                    covered[y][x]++;
+                }
+            }
+        }
+
+        // All pixels should be covered by exactly one tile
+        for (int[] line : covered) {
+            for (int count : line) {
+                assertEquals(1, count);
+            }
+        }
+    }
+
+    @Test
+    public void testTilesGiveSameImage() {
+        printRun("testTilesGiveSameImage", () -> {
+            int[][] expected = drawImage(MandelController.paramObs(Integer.MAX_VALUE, WIDTH, HEIGHT, ImageAttributes.INITIAL_ATTRIBUTES, null),
+                    RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT);
+            int[][] actual = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, ImageAttributes.INITIAL_ATTRIBUTES, null),
+                    RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT);
+            assertSameImage("tiles", expected, actual);
+        });
+    }
+
+    @Test
+    public void testReferenceOrbitIsCalculatedOnScheduler() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "render"));
+        try {
+            ImageAttributes deepAttributes = new ImageAttributes(
+                    new Coordinates(new BigDecimal("-1.0E-12"), new BigDecimal("0.99999999999925")), 1e-14);
+            String thread = MandelController.referenceOrbitObs(deepAttributes, WIDTH, HEIGHT, true, Schedulers.from(executor))
+                    .map(orbit -> orbit.getReferenceX() + "@" + Thread.currentThread().getName())
+                    .toBlocking()
+                    .single();
+            assertEquals(WIDTH / 2 + "@render", thread);
+
+            // Images without perturbation have no reference orbit
+            assertNull(MandelController.referenceOrbitObs(ImageAttributes.INITIAL_ATTRIBUTES, WIDTH, HEIGHT, false,
+                    Schedulers.from(executor)).toBlocking().single());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExposedAreasCoverImageExceptKeptArea() {
+        Rectangle kept = new Rectangle(20, 10, 100, 70);
+        List<Rectangle> areas = MandelController.exposedAreas(WIDTH, HEIGHT, kept);
+        assertEquals(4, areas.size());
+
+        int[][] covered = new int[HEIGHT][WIDTH];
+        for (Rectangle area : areas) {
+            for (int y = area.y; y < area.y + area.height; y++) {
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    covered[y][x]++;
+                }
+            }
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals("pixel " + x + ", " + y, kept.contains(x, y) ? 0 : 1, covered[y][x]);
+            }
+        }
+
+        // Growing the window only exposes a band to the right and a band below
+        assertEquals(List.of(new Rectangle(0, 80, WIDTH, HEIGHT - 80), new Rectangle(120, 0, WIDTH - 120, 80)),
+                MandelController.exposedAreas(WIDTH, HEIGHT, new Rectangle(0, 0, 120, 80)));
+    }
+
+    @Test
+    public void testOffset() {
+        ImageAttributes imageAttributes = ImageAttributes.INITIAL_ATTRIBUTES;
+        assertEquals(new Point(0, 0), MandelController.offset(imageAttributes, imageAttributes));
+        assertEquals(new Point(30, -20), MandelController.offset(imageAttributes, MandelController.pan(imageAttributes, new Point(30, -20))));
+
+        // Images with different scales, or that are not on the same pixel grid, do not share any pixels
+        double scale = imageAttributes.scale();
+        assertNull(MandelController.offset(imageAttributes, new ImageAttributes(imageAttributes.coordinates(), scale / 2)));
+        assertNull(MandelController.offset(imageAttributes,
+                new ImageAttributes(imageAttributes.coordinates().translate(scale / 2, 0, scale), scale)));
+    }
+
+    @Test
+    public void testPanOnlyCalculatesExposedPixels() {
+        ImageAttributes imageAttributes = new ImageAttributes(new Coordinates(-2.0, -1.5625), 1.0 / 64);
+        int[][] image = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null), RenderStrategy.LINE_BY_LINE,
+                WIDTH, HEIGHT);
+
+        // Drag the image 25 pixels left and 10 pixels down, and draw the exposed areas on top of the kept pixels
+        Point offset = new Point(-25, 10);
+        ImageAttributes panned = MandelController.pan(imageAttributes, offset);
+        int[][] actual = new int[HEIGHT][WIDTH];
+        for (int y = Math.max(0, offset.y); y < Math.min(HEIGHT, HEIGHT + offset.y); y++) {
+            for (int x = Math.max(0, offset.x); x < Math.min(WIDTH, WIDTH + offset.x); x++) {
+                actual[y][x] = image[y - offset.y][x - offset.x];
+            }
+        }
+        List<Rectangle> areas = MandelController.exposedAreas(WIDTH, HEIGHT,
+                new Rectangle(offset.x, offset.y, WIDTH, HEIGHT).intersection(new Rectangle(0, 0, WIDTH, HEIGHT)));
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        drawImage(MandelController.lineObs(MandelController.exposedParamObs(TILE_SIZE, areas, panned, null, null, Precision.DOUBLE),
+                RenderStrategy.LINE_BY_LINE, Schedulers.computation(), statistics, new TileCache()), actual);
+        assertEquals(WIDTH * HEIGHT - (WIDTH - 25) * (HEIGHT - 10), statistics.getCalculatedPixels());
+
+        int[][] expected = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, panned, null), RenderStrategy.LINE_BY_LINE,
+                WIDTH, HEIGHT);
+        assertSameImage("panned", expected, actual);
+    }
+}
@@ -0,0 +1,148 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+
+public class TestMandelPanel {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 50;
+
+    private static final int OPAQUE = 0xff000000;
+
+    private MandelPanel panel;
+
+    @Before
+    public void setUp() {
+        panel = new MandelPanel();
+        panel.setSize(WIDTH, HEIGHT);
+        panel.clear();
+    }
+
+    @Test
+    public void testDraw() {
+        panel.draw(new Line(10, 20, new int[]{0x112233, 0x445566, 0x778899}));
+
+        BufferedImage image = panel.getImage();
+        assertEquals(0x112233 | OPAQUE, image.getRGB(10, 20));
+        assertEquals(0x445566 | OPAQUE, image.getRGB(11, 20));
+        assertEquals(0x778899 | OPAQUE, image.getRGB(12, 20));
+        assertEquals(OPAQUE, image.getRGB(9, 20));
+        assertEquals(OPAQUE, image.getRGB(13, 20));
+        assertTrue(panel.isDirty());
+    }
+
+    @Test
+    public void testDrawBlock() {
+        panel.draw(new LineBlock(10, 20, 2, 2, new int[]{0x112233, 0x445566, 0x778899, 0xaabbcc}, null));
+
+        BufferedImage image = panel.getImage();
+        assertEquals(0x112233 | OPAQUE, image.getRGB(10, 20));
+        assertEquals(0x445566 | OPAQUE, image.getRGB(11, 20));
+        assertEquals(0x778899 | OPAQUE, image.getRGB(10, 21));
+        assertEquals(0xaabbcc | OPAQUE, image.getRGB(11, 21));
+        assertEquals(OPAQUE, image.getRGB(12, 20));
+    }
+
+    @Test
+    public void testDrawBlockOutsideImage() {
+        // Only the lines inside the image are drawn
+        panel.draw(new LineBlock(0, HEIGHT - 1, 1, 2, new int[]{0x112233, 0x445566}, null));
+
+        assertEquals(0x112233 | OPAQUE, panel.getImage().getRGB(0, HEIGHT - 1));
+    }
+
+    @Test
+    public void testDrawOutsideImage() {
+        // Only the part of the line inside the image is drawn
+        panel.draw(new Line(WIDTH - 1, 0, new int[]{0x112233, 0x445566}));
+        panel.draw(new Line(0, HEIGHT, new int[]{0x112233}));
+
+        assertEquals(0x112233 | OPAQUE, panel.getImage().getRGB(WIDTH - 1, 0));
+    }
+
+    @Test
+    public void testClearReusesImage() {
+        BufferedImage image = panel.getImage();
+        panel.draw(new Line(0, 0, new int[]{0x112233}));
+
+        panel.clear();
+
+        assertSame(image, panel.getImage());
+        assertEquals(OPAQUE, image.getRGB(0, 0));
+        assertFalse(panel.isDirty());
+    }
+
+    @Test
+    public void testClearAfterResize() {
+        BufferedImage image = panel.getImage();
+
+        panel.setSize(WIDTH * 2, HEIGHT);
+        panel.clear();
+
+        assertNotSame(image, panel.getImage());
+        assertEquals(WIDTH * 2, panel.getImage().getWidth());
+    }
+
+    @Test
+    public void testShiftKeepsPixels() {
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, 100);
+        panel.clear(iterationBuffer);
+        panel.draw(new Line(10, 20, new int[]{0x112233}));
+        iterationBuffer.set(10, 20, new int[]{42}, 0, 1);
+        panel.finish();
+        assertTrue(panel.isComplete());
+
+        // Grow the panel, and move the image 5 pixels right and 3 pixels up
+        panel.setSize(WIDTH + 10, HEIGHT);
+        IterationBuffer shifted = new IterationBuffer(WIDTH + 10, HEIGHT, 100);
+        panel.shift(5, -3, shifted, null);
+
+        BufferedImage image = panel.getImage();
+        assertEquals(WIDTH + 10, image.getWidth());
+        assertEquals(0x112233 | OPAQUE, image.getRGB(15, 17));
+        assertEquals(OPAQUE, image.getRGB(10, 20));
+        assertEquals(42, shifted.get(15, 17));
+        assertFalse(panel.isComplete());
+    }
+
+    @Test
+    public void testShiftWithoutOffsetReusesImage() {
+        panel.draw(new Line(0, 0, new int[]{0x112233}));
+        panel.finish();
+        BufferedImage image = panel.getImage();
+
+        panel.shift(0, 0, null, null);
+
+        assertSame(image, panel.getImage());
+        assertEquals(0x112233 | OPAQUE, image.getRGB(0, 0));
+    }
+
+    @Test
+    public void testFinish() {
+        panel.draw(new Line(0, 0, new int[]{0x112233}));
+        panel.finish();
+
+        assertFalse(panel.isDirty());
+    }
+
+    @Test
+    public void testDrawManyLines() {
+        printRun("testDrawManyLines", () -> {
+            int[] rgb = new int[WIDTH];
+            for (int i = 0; i < 100_000; i++) {
+                panel.draw(new Line(0, i % HEIGHT, rgb));
+            }
+            panel.finish();
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.List;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestMirrorCalculator {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int TILE_SIZE = 64;
+
+    private static final ImageAttributes OFF_CENTER_ATTRIBUTES = new ImageAttributes(new Coordinates(-2.0, -0.5), 0.01);
+    private static final ImageAttributes BINARY_ATTRIBUTES = new ImageAttributes(new Coordinates(-2.0, -1.5625), 1.0 / 64);
+
+    private static final List<RenderStrategy> STRATEGIES = List.of(RenderStrategy.LINE_BY_LINE, RenderStrategy.PROGRESSIVE, RenderStrategy.SUBDIVISION);
+
+    @Test
+    public void testMirrorSum() {
+        assertEquals(HEIGHT, MirrorCalculator.mirrorSum(INITIAL_VIEW));
+        assertEquals(100, MirrorCalculator.mirrorSum(OFF_CENTER_ATTRIBUTES));
+        assertEquals(-1, MirrorCalculator.mirrorSum(EDGE_VIEW));
+        assertEquals(-1, MirrorCalculator.mirrorSum(new ImageAttributes(new Coordinates(-2.0, -1.5025), 0.01)));
+    }
+
+    @Test
+    public void testTilesCoverImage() {
+        for (ImageAttributes imageAttributes : List.of(INITIAL_VIEW, OFF_CENTER_ATTRIBUTES, BINARY_ATTRIBUTES, EDGE_VIEW)) {
+            IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, imageAttributes.maxIterations());
+            List<Parameters> tiles = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null, iterationBuffer)
+                    .toList().toBlocking().single();
+
+            // Every pixel is covered by exactly one tile
+            int[][] coverage = new int[HEIGHT][WIDTH];
+            for (Parameters tile : tiles) {
+                for (int y = tile.getFirstY(); y < tile.getFirstY() + tile.getHeight(); y++) {
+                    for (int x = tile.getFirstX(); x < tile.getFirstX() + tile.getWidth(); x++) {
+                        coverage[y][x]++;
+                    }
+                }
+            }
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals("pixel " + x + ", " + y, 1, coverage[y][x]);
+                }
+            }
+
+            // Mirrored tiles only mirror lines in non-mirrored tiles
+            for (Parameters tile : tiles.stream().filter(Parameters::isMirrored).toList()) {
+                int firstMirrorY = tile.getMirrorY() - tile.getHeight() + 1;
+                assertTrue(firstMirrorY >= 0 && tile.getMirrorY() < HEIGHT);
+                assertFalse(tiles.stream().anyMatch(other -> other.isMirrored()
+                        && other.getFirstY() <= tile.getMirrorY() && firstMirrorY < other.getFirstY() + other.getHeight()));
+            }
+        }
+    }
+
+    @Test
+    public void testNoMirrorWithoutIterationBuffer() {
+        List<Parameters> tiles = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null).toList().toBlocking().single();
+        assertFalse(tiles.stream().anyMatch(Parameters::isMirrored));
+    }
+
+    @Test
+    public void testSameImageForInitialImage() {
+        printRun("testSameImageForInitialImage", () -> {
+            for (RenderStrategy strategy : STRATEGIES) {
+                assertSameImage(strategy.toString(), drawImage(paramObs(INITIAL_VIEW, false), strategy, WIDTH, HEIGHT),
+                        drawImage(paramObs(INITIAL_VIEW, true), strategy, WIDTH, HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void testSameImageForOffCenterImage() {
+        printRun("testSameImageForOffCenterImage", () -> {
+            for (RenderStrategy strategy : STRATEGIES) {
+                assertSameImage(strategy.toString(), drawImage(paramObs(OFF_CENTER_ATTRIBUTES, false), strategy, WIDTH, HEIGHT),
+                        drawImage(paramObs(OFF_CENTER_ATTRIBUTES, true), strategy, WIDTH, HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void testSameImageForBinaryScale() {
+        printRun("testSameImageForBinaryScale", () -> {
+            for (RenderStrategy strategy : STRATEGIES) {
+                assertSameImage(strategy.toString(), drawImage(paramObs(BINARY_ATTRIBUTES, false), strategy, WIDTH, HEIGHT),
+                        drawImage(paramObs(BINARY_ATTRIBUTES, true), strategy, WIDTH, HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void testSameImageForEdgeImage() {
+        printRun("testSameImageForEdgeImage", () -> {
+            for (RenderStrategy strategy : STRATEGIES) {
+                assertSameImage(strategy.toString(), drawImage(paramObs(EDGE_VIEW, false), strategy, WIDTH, HEIGHT),
+                        drawImage(paramObs(EDGE_VIEW, true), strategy, WIDTH, HEIGHT));
+            }
+        });
+    }
+
+    @Test
+    public void testMirrorHalvesWorkForBinaryScale() {
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        drawImage(paramObs(BINARY_ATTRIBUTES, true), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics, new TileCache());
+        System.out.println("Mirrored " + BINARY_ATTRIBUTES + ": " + statistics);
+
+        // The scale is a power of two, so all lines below the axis are exact mirror images
+        assertTrue("skipped " + statistics.getSkippedFraction(), statistics.getSkippedFraction() > 0.45);
+    }
+
+    @Test
+    public void testMirrorSkipsExactLinesForInitialImage() {
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        drawImage(paramObs(INITIAL_VIEW, true), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics, new TileCache());
+        System.out.println("Mirrored " + INITIAL_VIEW + ": " + statistics);
+
+        // Because of rounding, only some of the lines below the axis are exact mirror images
+        assertTrue("skipped " + statistics.getSkippedFraction(), statistics.getSkippedFraction() > 0.2);
+    }
+
+    @Test
+    public void testMirroredTilesArePreviewedWithProgressive() {
+        int[] emitted = new int[HEIGHT];
+        MandelController.lineObs(paramObs(INITIAL_VIEW, true), RenderStrategy.PROGRESSIVE, Schedulers.computation(), new RenderStatistics(WIDTH * HEIGHT),
+                        new TileCache())
+                .toBlocking()
+                .forEach(line -> {
+                    for (int i = 0; i < line.getHeight(); i++) {
+                        emitted[line.getY() + i] += line.getWidth();
+                    }
+                    line.recycle();
+                });
+
+        // Every line is drawn once in each pass, also the lines that are mirror images of other lines
+        for (int y = 0; y < HEIGHT; y++) {
+            assertTrue("line " + y + ": " + emitted[y], emitted[y] >= ProgressiveCalculator.STEPS.length * WIDTH);
+        }
+    }
+
+    /**
+     * Returns the tiles of an image, with or without mirroring. The lines are only mirrored if there is an iteration buffer.
+     */
+    private static Observable<Parameters> paramObs(ImageAttributes imageAttributes, boolean mirror) {
+        IterationBuffer iterationBuffer = mirror ? new IterationBuffer(WIDTH, HEIGHT, imageAttributes.maxIterations()) : null;
+        return MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null, iterationBuffer);
+    }
+}
@@ -0,0 +1,114 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestPosterRenderer {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int TILE_SIZE = 64;
+
+    @Test
+    public void testPngWriter() throws IOException {
+        int[] rgb = {0x000000, 0xff0000, 0x00ff00, 0x0000ff, 0xffffff, 0x123456};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PngWriter writer = new PngWriter(out, 3, 2)) {
+            writer.writeLine(rgb, 0);
+            writer.writeLine(rgb, 3);
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, image.getWidth());
+        assertEquals(2, image.getHeight());
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 3; x++) {
+                assertEquals(rgb[y * 3 + x], image.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void testPngWriterMissingLines() throws IOException {
+        PngWriter writer = new PngWriter(new ByteArrayOutputStream(), 3, 2);
+        writer.writeLine(new int[3], 0);
+        try {
+            writer.close();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSameImageAsController() {
+        printRun("testSameImageAsController", () -> {
+            PosterRenderer renderer = new PosterRenderer(WIDTH, HEIGHT, TILE_SIZE, INITIAL_VIEW, Schedulers.computation());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RenderStatistics statistics = render(renderer, out);
+            System.out.println("Poster: " + out.size() + " bytes, " + renderer.getMegapixelsPerSecond() + " MP/s " + statistics);
+
+            assertEquals(WIDTH * HEIGHT, statistics.getCalculatedPixels());
+            assertTrue(renderer.getMegapixelsPerSecond() > 0);
+
+            BufferedImage image = read(out);
+            // The image drawn in memory, the same way as the controller does
+            Precision precision = Precision.select(INITIAL_VIEW, WIDTH, HEIGHT);
+            int[][] expected = drawImage(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null, null, precision),
+                    RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals("pixel " + x + "," + y, expected[y][x] & 0xffffff, image.getRGB(x, y) & 0xffffff);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testSupersampledPoster() {
+        printRun("testSupersampledPoster", () -> {
+            PosterRenderer renderer = new PosterRenderer(WIDTH, HEIGHT, TILE_SIZE, INITIAL_VIEW, Schedulers.computation(), 4);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RenderStatistics statistics = render(renderer, out);
+
+            // Only the edge pixels are supersampled
+            assertTrue(statistics.getSupersampledPixels() > 0);
+            assertTrue(statistics.getSupersampledFraction() < 0.1);
+            assertTrue("samples per pixel " + statistics.getSampleRatio(), statistics.getSampleRatio() < 3.0);
+
+            BufferedImage image = read(out);
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+        });
+    }
+
+    private static RenderStatistics render(PosterRenderer renderer, ByteArrayOutputStream out) {
+        try {
+            return renderer.render(out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static BufferedImage read(ByteArrayOutputStream out) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+
+public class TestPrecision {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    private static final ImageAttributes NEAR_DEEP_ATTRIBUTES = new ImageAttributes(new Coordinates(-0.7454, 0.1130), 5e-12);
+    private static final ImageAttributes DEEP_ATTRIBUTES = new ImageAttributes(
+            new Coordinates(new BigDecimal("-1.7499394921400009"), new BigDecimal("-0.0000000000006")), 4e-15);
+
+    @Test
+    public void testSelect() {
+        assertEquals(Precision.FLOAT, Precision.select(INITIAL_VIEW, WIDTH, HEIGHT));
+        assertEquals(Precision.DOUBLE, Precision.select(EDGE_VIEW, WIDTH, HEIGHT));
+        assertEquals(Precision.DOUBLE, Precision.select(new ImageAttributes(EDGE_VIEW.coordinates(), 1e-10), WIDTH, HEIGHT));
+
+        // Double-double is used between double and perturbation, also just above the deep zoom scale
+        assertEquals(Precision.DOUBLE_DOUBLE, Precision.select(NEAR_DEEP_ATTRIBUTES, WIDTH, HEIGHT));
+        assertEquals(Precision.DOUBLE_DOUBLE, Precision.select(
+                new ImageAttributes(NEAR_DEEP_ATTRIBUTES.coordinates(), ImageAttributes.DEEP_ZOOM_SCALE), WIDTH, HEIGHT));
+        assertFalse(Precision.DOUBLE_DOUBLE.usePerturbation(NEAR_DEEP_ATTRIBUTES));
+
+        // Deep zoom images are calculated with perturbation, using doubles
+        assertEquals(Precision.DOUBLE, Precision.select(DEEP_ATTRIBUTES, WIDTH, HEIGHT));
+        assertTrue(Precision.DOUBLE.usePerturbation(DEEP_ATTRIBUTES));
+        assertFalse(Precision.DOUBLE_DOUBLE.usePerturbation(DEEP_ATTRIBUTES));
+    }
+
+    @Test
+    public void testFloatIsCloseToDouble() {
+        printRun("testFloatIsCloseToDouble", () -> {
+            double equal = compare(Precision.DOUBLE, Precision.FLOAT, INITIAL_VIEW);
+            System.out.println("Float equal to double: " + equal);
+            assertTrue("equal " + equal, equal > 0.99);
+        });
+    }
+
+    @Test
+    public void testDoubleDoubleIsCloseToDouble() {
+        printRun("testDoubleDoubleIsCloseToDouble", () -> {
+            double equal = compare(Precision.DOUBLE, Precision.DOUBLE_DOUBLE, EDGE_VIEW);
+            System.out.println("Double-double equal to double: " + equal);
+            assertTrue("equal " + equal, equal > 0.99);
+        });
+    }
+
+    @Test
+    public void testDoubleDoubleIsCloseToPerturbation() {
+        printRun("testDoubleDoubleIsCloseToPerturbation", () -> {
+            ReferenceOrbit referenceOrbit = ReferenceOrbit.compute(DEEP_ATTRIBUTES, WIDTH, HEIGHT);
+            int maxIterations = DEEP_ATTRIBUTES.maxIterations();
+            int[] expected = new int[WIDTH];
+            int[] actual = new int[WIDTH];
+            int equal = 0;
+            for (int y = 0; y < HEIGHT; y += 10) {
+                referenceOrbit.calc(0, 1, y, maxIterations, expected);
+                Precision.DOUBLE_DOUBLE.calc(Kernel.SCALAR, DEEP_ATTRIBUTES, 0, 1, y, maxIterations, actual);
+                for (int x = 0; x < WIDTH; x++) {
+                    equal += (expected[x] == actual[x]) ? 1 : 0;
+                }
+            }
+            double fraction = equal / (WIDTH * HEIGHT / 10.0);
+            System.out.println("Double-double equal to perturbation: " + fraction);
+            assertTrue("equal " + fraction, fraction > 0.95);
+        });
+    }
+
+    @Test
+    public void testMirror() {
+        // Line 100 is on the real axis, and lines 99 and 101 are mirror images
+        ImageAttributes imageAttributes = new ImageAttributes(new Coordinates(-2.0, -1.5625), 1.0 / 64);
+        for (Precision precision : Precision.values()) {
+            assertTrue(precision.toString(), precision.isMirror(imageAttributes, 100, 100));
+            assertTrue(precision.toString(), precision.isMirror(imageAttributes, 99, 101));
+            assertFalse(precision.toString(), precision.isMirror(imageAttributes, 99, 102));
+        }
+    }
+
+    /**
+     * Returns the fraction of the pixels in an image with the given attributes that get the
+     * same escape time with both precisions.
+     */
+    private static double compare(Precision first, Precision second, ImageAttributes imageAttributes) {
+        int maxIterations = imageAttributes.maxIterations();
+        int[] expected = new int[WIDTH];
+        int[] actual = new int[WIDTH];
+        int equal = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            first.calc(Kernel.DEFAULT, imageAttributes, 0, 1, y, maxIterations, expected);
+            second.calc(Kernel.DEFAULT, imageAttributes, 0, 1, y, maxIterations, actual);
+            for (int x = 0; x < WIDTH; x++) {
+                equal += (expected[x] == actual[x]) ? 1 : 0;
+            }
+        }
+        return equal / (double) (WIDTH * HEIGHT);
+    }
+}
@@ -0,0 +1,111 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestPrefetcher {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 32;
+
+    private static final Dimension SIZE = new Dimension(WIDTH, HEIGHT);
+    private static final ImageAttributes ZOOMED_ATTRIBUTES = MandelController.zoomIn(INITIAL_VIEW, SIZE);
+
+    @Test
+    public void testZoomInIsCenteredRubberBand() {
+        assertEquals(INITIAL_VIEW.scale() / 2, ZOOMED_ATTRIBUTES.scale(), 1e-15);
+        assertEquals(ZOOMED_ATTRIBUTES, MandelController.zoom(INITIAL_VIEW, SIZE, new Rectangle(50, 37, 100, 75)));
+    }
+
+    @Test
+    public void testPrefetchedViewIsDrawnFromCache() {
+        TileCache cache = new TileCache();
+        Prefetcher prefetcher = new Prefetcher(cache, 2, Long.MAX_VALUE);
+        long generation = prefetcher.cancel();
+        int prefetched = prefetcher.prefetch(generation, List.of(ZOOMED_ATTRIBUTES), TILE_SIZE, WIDTH, HEIGHT).toBlocking().single();
+        assertTrue(prefetched > 0);
+        assertEquals(prefetched, cache.getSize());
+        assertEquals(prefetched, prefetcher.getPrefetchedTiles());
+
+        // Only the mirrored tiles are calculated when the view is drawn
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        int[][] actual = drawImage(paramObs(ZOOMED_ATTRIBUTES), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics, cache);
+        assertEquals(0, cache.getMisses() - countMirroredTiles(ZOOMED_ATTRIBUTES));
+        assertSameImage("prefetched", drawImage(paramObs(ZOOMED_ATTRIBUTES), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT), actual);
+
+        // Tiles already in the cache are not prefetched again
+        assertEquals(0, (int) prefetcher.prefetch(generation, List.of(ZOOMED_ATTRIBUTES), TILE_SIZE, WIDTH, HEIGHT).toBlocking().single());
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        TileCache cache = new TileCache();
+        long budget = 4L * TILE_SIZE * TILE_SIZE * Character.BYTES;
+        Prefetcher prefetcher = new Prefetcher(cache, 2, budget);
+        int prefetched = prefetcher.prefetch(prefetcher.cancel(), List.of(ZOOMED_ATTRIBUTES, INITIAL_VIEW), TILE_SIZE, WIDTH, HEIGHT)
+                .toBlocking().single();
+        assertEquals(4, prefetched);
+
+        // A budget of zero disables prefetching
+        Prefetcher disabled = new Prefetcher(new TileCache(), 2, 0);
+        assertEquals(0, (int) disabled.prefetch(disabled.cancel(), List.of(INITIAL_VIEW), TILE_SIZE, WIDTH, HEIGHT).toBlocking().single());
+    }
+
+    @Test
+    public void testStalePrefetchIsDropped() {
+        TileCache cache = new TileCache();
+        Prefetcher prefetcher = new Prefetcher(cache, 2, Long.MAX_VALUE);
+        long generation = prefetcher.cancel();
+
+        // Another render starts before the first render requests its prefetch
+        prefetcher.cancel();
+        assertEquals(0, (int) prefetcher.prefetch(generation, List.of(ZOOMED_ATTRIBUTES), TILE_SIZE, WIDTH, HEIGHT).toBlocking().single());
+        assertEquals(0, (int) prefetcher.prefetchTiles(generation, TilePyramid.tiles(ZOOMED_ATTRIBUTES, WIDTH, HEIGHT, TILE_SIZE, false))
+                .toBlocking().single());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TileCache cache = new TileCache();
+        Prefetcher prefetcher = new Prefetcher(cache, 1, Long.MAX_VALUE);
+
+        // A deep view takes long enough to be cancelled in the middle
+        ImageAttributes deep = new ImageAttributes(new Coordinates(-0.7454, 0.1130), 1e-9);
+        Observable<Integer> prefetchObs = prefetcher.prefetch(prefetcher.cancel(), List.of(deep), TILE_SIZE, WIDTH, HEIGHT);
+        prefetcher.cancel();
+
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        prefetchObs.subscribe(testSubscriber);
+        Thread.sleep(500);
+        testSubscriber.assertNoTerminalEvent();
+        assertTrue(cache.getSize() < countCalculatedTiles(deep));
+        assertEquals(0, prefetcher.getPrefetchedTiles());
+    }
+
+    private static long countMirroredTiles(ImageAttributes imageAttributes) {
+        return paramObs(imageAttributes).filter(Parameters::isMirrored).count().toBlocking().single();
+    }
+
+    private static long countCalculatedTiles(ImageAttributes imageAttributes) {
+        return paramObs(imageAttributes).filter(tile -> !tile.isMirrored()).count().toBlocking().single();
+    }
+
+    private static Observable<Parameters> paramObs(ImageAttributes imageAttributes) {
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, imageAttributes.maxIterations());
+        return MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null, iterationBuffer,
+                Precision.select(imageAttributes, WIDTH, HEIGHT));
+    }
+}
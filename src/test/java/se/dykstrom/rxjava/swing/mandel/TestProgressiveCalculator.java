@@ -0,0 +1,97 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+
+public class TestProgressiveCalculator {
+
+    /** A tile size that is not a multiple of the largest step. */
+    private static final Parameters PARAMETERS = new Parameters(5, 3, 61, 45, ImageAttributes.INITIAL_ATTRIBUTES, null);
+
+    @Test
+    public void testSameImageAsLineByLine() {
+        printRun("testSameImageAsLineByLine", () -> {
+            int[][] expected = drawTile(List.of(new LineByLineCalculator(PARAMETERS, Kernel.SCALAR, statistics())));
+
+            int[] samples = ProgressiveCalculator.createSamples(PARAMETERS);
+            List<TileCalculator> passes = Observable.from(ProgressiveCalculator.STEPS)
+                    .map(step -> (TileCalculator) new ProgressiveCalculator(PARAMETERS, Kernel.SCALAR, statistics(), step, samples))
+                    .toList().toBlocking().single();
+            int[][] actual = drawTile(passes);
+
+            assertSameImage("progressive", expected, actual);
+        });
+    }
+
+    @Test
+    public void testEachPixelCalculatedOnce() {
+        int[] samples = ProgressiveCalculator.createSamples(PARAMETERS);
+        RenderStatistics statistics = statistics();
+
+        for (int step : ProgressiveCalculator.STEPS) {
+            drawTile(List.of(new ProgressiveCalculator(PARAMETERS, Kernel.SCALAR, statistics, step, samples)));
+        }
+
+        assertEquals(statistics.getTotalPixels(), statistics.getCalculatedPixels());
+    }
+
+    @Test
+    public void testFirstPassCoversTile() {
+        int[] samples = ProgressiveCalculator.createSamples(PARAMETERS);
+        TileCalculator calculator = new ProgressiveCalculator(PARAMETERS, Kernel.SCALAR, statistics(), ProgressiveCalculator.STEPS[0], samples);
+
+        TestSubscriber<Line> testSubscriber = new TestSubscriber<>();
+        LineObservable.fromCalculator(calculator).subscribe(testSubscriber);
+
+        assertEquals(PARAMETERS.getHeight(), testSubscriber.getOnNextEvents().size());
+        for (Line line : testSubscriber.getOnNextEvents()) {
+            assertEquals(PARAMETERS.getFirstX(), line.getX());
+            assertEquals(PARAMETERS.getWidth(), line.getRGB().length);
+        }
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testProgressiveStrategy() {
+        printRun("testProgressiveStrategy", () -> {
+            Observable<Parameters> paramObs = MandelController.paramObs(16, 40, 30, ImageAttributes.INITIAL_ATTRIBUTES, null);
+
+            TestSubscriber<Line> testSubscriber = new TestSubscriber<>();
+            RenderStrategy.PROGRESSIVE.lineObs(paramObs, Schedulers.computation(), new RenderStatistics(40 * 30), new TileCache()).subscribe(testSubscriber);
+            testSubscriber.awaitTerminalEvent();
+
+            // Each pass emits all lines in the image
+            testSubscriber.assertNoErrors();
+            int lines = testSubscriber.getOnNextEvents().stream().mapToInt(Line::getHeight).sum();
+            assertEquals(ProgressiveCalculator.STEPS.length * 30 * 3, lines);
+        });
+    }
+
+    private static RenderStatistics statistics() {
+        return new RenderStatistics(PARAMETERS.getWidth() * PARAMETERS.getHeight());
+    }
+
+    /**
+     * Calculates the tile using the given calculators, one after the other, and returns the resulting tile.
+     */
+    private static int[][] drawTile(List<TileCalculator> calculators) {
+        int[][] tile = new int[PARAMETERS.getHeight()][];
+        for (TileCalculator calculator : calculators) {
+            TestSubscriber<Line> testSubscriber = new TestSubscriber<>();
+            LineObservable.fromCalculator(calculator).subscribe(testSubscriber);
+            testSubscriber.assertCompleted();
+            for (Line line : testSubscriber.getOnNextEvents()) {
+                tile[line.getY() - PARAMETERS.getFirstY()] = line.getRGB();
+            }
+        }
+        return tile;
+    }
+}
@@ -0,0 +1,121 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+
+public class TestReferenceOrbit {
+
+    private static final int SIZE = 100;
+
+    /** The Misiurewicz point c = i, which is on the edge of the Mandelbrot set at all zoom levels. */
+    private static final BigDecimal EDGE_X = BigDecimal.ZERO;
+    private static final BigDecimal EDGE_Y = BigDecimal.ONE;
+
+    private static final ImageAttributes SHALLOW_ATTRIBUTES = attributesAround(1e-5);
+    private static final ImageAttributes DEEP_ATTRIBUTES = attributesAround(1e-30);
+
+    @Test
+    public void testDeepZoom() {
+        assertTrue(DEEP_ATTRIBUTES.isDeepZoom());
+        assertTrue(DEEP_ATTRIBUTES.maxIterations() > ImageAttributes.NUM_ITERATIONS);
+        assertEquals(ImageAttributes.NUM_ITERATIONS, SHALLOW_ATTRIBUTES.maxIterations());
+    }
+
+    @Test
+    public void testSameEscapeTimesAsScalarKernel() {
+        printRun("testSameEscapeTimesAsScalarKernel", () -> {
+            ReferenceOrbit orbit = ReferenceOrbit.compute(SHALLOW_ATTRIBUTES, SIZE, SIZE);
+            Coordinates coordinates = SHALLOW_ATTRIBUTES.coordinates();
+            double scale = SHALLOW_ATTRIBUTES.scale();
+            int maxIterations = SHALLOW_ATTRIBUTES.maxIterations();
+
+            int[] expected = new int[SIZE];
+            int[] actual = new int[SIZE];
+            int same = 0;
+            for (int y = 0; y < SIZE; y++) {
+                Kernel.SCALAR.calc(coordinates.minX(), 0, 1, coordinates.minY() + y * scale, scale, maxIterations, expected);
+                orbit.calc(0, 1, y, maxIterations, actual);
+                for (int x = 0; x < SIZE; x++) {
+                    if (expected[x] == actual[x]) same++;
+                }
+            }
+
+            // Rounding errors may differ slightly in chaotic regions close to the edge
+            assertTrue("only " + same + " pixels are the same", same > SIZE * SIZE * 99 / 100);
+        });
+    }
+
+    @Test
+    public void testSameEscapeTimesAsArbitraryPrecision() {
+        printRun("testSameEscapeTimesAsArbitraryPrecision", () -> {
+            ReferenceOrbit orbit = ReferenceOrbit.compute(DEEP_ATTRIBUTES, SIZE, SIZE);
+            int maxIterations = DEEP_ATTRIBUTES.maxIterations();
+
+            int[] actual = new int[SIZE];
+            int same = 0;
+            int count = 0;
+            for (int y = 0; y < SIZE; y += 20) {
+                orbit.calc(0, 1, y, maxIterations, actual);
+                for (int x = 0; x < SIZE; x += 20) {
+                    if (calcPrecise(DEEP_ATTRIBUTES, x, y) == actual[x]) same++;
+                    count++;
+                }
+            }
+
+            assertTrue("only " + same + " of " + count + " pixels are the same", same > count * 9 / 10);
+        });
+    }
+
+    @Test
+    public void testDeepZoomImageIsNotBlocky() {
+        printRun("testDeepZoomImageIsNotBlocky", () -> {
+            ReferenceOrbit orbit = ReferenceOrbit.compute(DEEP_ATTRIBUTES, SIZE, SIZE);
+
+            int[] iterations = new int[SIZE];
+            orbit.calc(0, 1, SIZE / 2, DEEP_ATTRIBUTES.maxIterations(), iterations);
+
+            // With doubles, all pixels in the line would get the same coordinates, and the same escape time
+            assertTrue(Arrays.stream(iterations).distinct().count() > 5);
+        });
+    }
+
+    /**
+     * Returns attributes for an image with the given scale, centered on the edge point.
+     */
+    private static ImageAttributes attributesAround(double scale) {
+        Coordinates center = new Coordinates(EDGE_X, EDGE_Y);
+        return new ImageAttributes(center.translate(-SIZE / 2.0 * scale, -SIZE / 2.0 * scale, scale), scale);
+    }
+
+    /**
+     * Calculates the escape time of a single pixel with arbitrary precision.
+     */
+    private static int calcPrecise(ImageAttributes imageAttributes, int px, int py) {
+        double scale = imageAttributes.scale();
+        MathContext mc = Coordinates.mathContext(scale);
+        Coordinates c = imageAttributes.coordinates().translate(px * scale, py * scale, scale);
+        BigDecimal x = c.preciseMinX();
+        BigDecimal y = c.preciseMinY();
+
+        int iteration = 0;
+        while (iteration < imageAttributes.maxIterations()) {
+            BigDecimal xx = x.multiply(x, mc);
+            BigDecimal yy = y.multiply(y, mc);
+            if (xx.add(yy, mc).compareTo(BigDecimal.valueOf(4)) > 0) {
+                break;
+            }
+            BigDecimal tempX = xx.subtract(yy, mc).add(c.preciseMinX(), mc);
+            y = x.multiply(y, mc).multiply(BigDecimal.valueOf(2), mc).add(c.preciseMinY(), mc);
+            x = tempX;
+            iteration++;
+        }
+        return iteration;
+    }
+}
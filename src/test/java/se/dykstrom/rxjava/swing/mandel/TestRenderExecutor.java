@@ -0,0 +1,70 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawRecycled;
+
+public class TestRenderExecutor {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 32;
+
+    @Test
+    public void testSelect() {
+        assertEquals(RenderExecutor.FORK_JOIN, RenderExecutor.select(null));
+        assertEquals(RenderExecutor.FIXED, RenderExecutor.select("fixed"));
+        assertEquals(RenderExecutor.VIRTUAL, RenderExecutor.select("Virtual"));
+    }
+
+    @Test
+    public void testExecutorsRunTasks() throws Exception {
+        for (RenderExecutor renderExecutor : RenderExecutor.values()) {
+            ExecutorService executor = renderExecutor.create();
+            try {
+                assertEquals(renderExecutor.toString(), "done", executor.submit(() -> "done").get(10, TimeUnit.SECONDS));
+                // No render thread keeps the application alive
+                assertTrue(executor.submit(() -> Thread.currentThread().isDaemon()).get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testSameImageOnAllExecutors() {
+        int[][] expected = drawRecycled(lineObs(Schedulers.computation(), ConcurrentHashMap.newKeySet()), WIDTH, HEIGHT);
+        for (RenderExecutor renderExecutor : RenderExecutor.values()) {
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            int[][][] actual = new int[1][][];
+            printRun("testSameImageOn" + renderExecutor,
+                    () -> actual[0] = drawRecycled(lineObs(renderExecutor.createScheduler(), threads), WIDTH, HEIGHT));
+            assertSameImage(renderExecutor.toString(), expected, actual[0]);
+
+            // The tiles were not calculated on the shared computation scheduler
+            assertFalse(threads.stream().anyMatch(thread -> thread.getName().startsWith("RxComputation")));
+        }
+    }
+
+    /**
+     * Returns an Observable that calculates the initial image on the given scheduler, and adds the threads it runs on to the given set.
+     */
+    private static Observable<Line> lineObs(Scheduler scheduler, Set<Thread> threads) {
+        Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, ImageAttributes.INITIAL_ATTRIBUTES, null);
+        return RenderStrategy.LINE_BY_LINE.lineObs(paramObs, scheduler, new RenderStatistics(WIDTH * HEIGHT), new TileCache())
+                .doOnNext(line -> threads.add(Thread.currentThread()));
+    }
+}
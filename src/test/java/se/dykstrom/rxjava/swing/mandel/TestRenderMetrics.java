@@ -0,0 +1,124 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRenderMetrics {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 64;
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0.0, histogram.getPercentileMillis(50), 0.0);
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_000_000);
+        }
+        histogram.record(100_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1.99, histogram.getMeanMillis(), 1e-9);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.0);
+
+        // The percentiles are upper bounds, within a factor of two
+        double p50 = histogram.getPercentileMillis(50);
+        assertTrue("p50 " + p50, p50 >= 1.0 && p50 <= 2.0);
+        double p99 = histogram.getPercentileMillis(99);
+        assertTrue("p99 " + p99, p99 >= 1.0 && p99 <= 2.0);
+        assertEquals(100.0, histogram.getPercentileMillis(100), 0.0);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+    }
+
+    @Test
+    public void testRenderUpdatesMetrics() {
+        for (RenderStrategy strategy : List.of(RenderStrategy.LINE_BY_LINE, RenderStrategy.SUBDIVISION)) {
+            RenderMetrics metrics = new RenderMetrics();
+            RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT, metrics);
+            Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, ImageAttributes.INITIAL_ATTRIBUTES, null);
+            int tiles = paramObs.count().toBlocking().single();
+
+            MandelController.lineObs(paramObs, strategy, Schedulers.computation(), statistics, new TileCache())
+                    .toBlocking()
+                    .forEach(Line::recycle);
+
+            assertEquals(strategy.toString(), tiles, statistics.getTiles());
+            assertEquals(tiles, metrics.getTilesCalculated());
+            assertEquals(statistics.getCalculatedPixels(), metrics.getPixelsCalculated());
+            assertEquals(statistics.getIterations(), metrics.getIterationsCalculated());
+            assertTrue(statistics.getIterations() >= statistics.getCalculatedPixels());
+            assertTrue(metrics.getTileTimeMaxMillis() > 0);
+            assertTrue(metrics.getTileTimeP99Millis() <= metrics.getTileTimeMaxMillis());
+            assertTrue(metrics.getQueueWaitMaxMillis() >= 0);
+        }
+    }
+
+    @Test
+    public void testQueueWaitStartsWhenTileIsQueued() throws InterruptedException {
+        RenderMetrics metrics = new RenderMetrics();
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT, metrics);
+
+        // The tile is queued long after the render started, and calculated at once on this thread
+        Thread.sleep(200);
+        Parameters parameters = new Parameters(0, 0, WIDTH, TILE_SIZE, ImageAttributes.INITIAL_ATTRIBUTES, null);
+        LineObservable.blocksFromCalculator(new LineByLineCalculator(parameters, Kernel.DEFAULT, statistics))
+                .toBlocking()
+                .forEach(Line::recycle);
+
+        assertEquals(1, metrics.getTilesCalculated());
+        assertTrue("queue wait " + metrics.getQueueWaitMaxMillis(), metrics.getQueueWaitMaxMillis() < 100);
+    }
+
+    @Test
+    public void testPanelRecordsPaintTimeAndFrame() {
+        RenderMetrics metrics = new RenderMetrics();
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT, metrics);
+        statistics.addCalculatedPixels(WIDTH);
+        statistics.addIterations(WIDTH * 10);
+
+        MandelPanel panel = new MandelPanel();
+        panel.setSize(WIDTH, HEIGHT);
+        panel.clear(null, statistics);
+        panel.draw(new Line(0, 0, new int[WIDTH]));
+        panel.draw(new Line(0, 1, new int[WIDTH]));
+        assertEquals(0, metrics.getFramesRendered());
+
+        panel.finish();
+        assertEquals(1, metrics.getFramesRendered());
+        assertTrue(metrics.getPaintTimeMaxMillis() > 0);
+        assertTrue(metrics.getLastFramePixelsPerSecond() > 0);
+        assertTrue(metrics.getLastFrameIterationsPerSecond() > metrics.getLastFramePixelsPerSecond());
+        assertFalse(metrics.getLastFrameSummary().isEmpty());
+
+        // The frame is only recorded once
+        panel.finish();
+        assertEquals(1, metrics.getFramesRendered());
+    }
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+        RenderMetrics.register();
+        RenderMetrics.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(RenderMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(RenderMetrics.SHARED.getFramesRendered(), server.getAttribute(name, "FramesRendered"));
+        assertEquals(RenderMetrics.SHARED.getLastFrameSummary(), server.getAttribute(name, "LastFrameSummary"));
+    }
+}
@@ -0,0 +1,75 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import org.junit.Test;
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestSubdivisionCalculator {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int TILE_SIZE = 64;
+
+    private static final ImageAttributes INTERIOR_ATTRIBUTES = new ImageAttributes(new Coordinates(-0.5, -0.2), 0.002);
+
+    @Test
+    public void testSameImageAsLineByLineForInitialImage() {
+        printRun("testSameImageAsLineByLineForInitialImage", () -> assertSameImage("subdivision",
+                drawImage(paramObs(INITIAL_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT),
+                drawImage(paramObs(INITIAL_VIEW), RenderStrategy.SUBDIVISION, WIDTH, HEIGHT)));
+    }
+
+    @Test
+    public void testSameImageAsLineByLineForEdgeImage() {
+        printRun("testSameImageAsLineByLineForEdgeImage", () -> assertSameImage("subdivision",
+                drawImage(paramObs(EDGE_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT),
+                drawImage(paramObs(EDGE_VIEW), RenderStrategy.SUBDIVISION, WIDTH, HEIGHT)));
+    }
+
+    @Test
+    public void testSameImageAsLineByLineForInteriorImage() {
+        printRun("testSameImageAsLineByLineForInteriorImage", () -> assertSameImage("subdivision",
+                drawImage(paramObs(INTERIOR_ATTRIBUTES), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT),
+                drawImage(paramObs(INTERIOR_ATTRIBUTES), RenderStrategy.SUBDIVISION, WIDTH, HEIGHT)));
+    }
+
+    @Test
+    public void testSkipsPixelsInsideSet() {
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        drawImage(paramObs(INTERIOR_ATTRIBUTES), RenderStrategy.SUBDIVISION, WIDTH, HEIGHT, statistics, new TileCache());
+
+        // Most of this image is inside the set
+        assertTrue("skipped " + statistics.getSkippedFraction(), statistics.getSkippedFraction() > 0.5);
+    }
+
+    @Test
+    public void testSkipsNothingLineByLine() {
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        drawImage(paramObs(INTERIOR_ATTRIBUTES), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics, new TileCache());
+
+        assertEquals(0.0, statistics.getSkippedFraction(), 0.0);
+    }
+
+    @Test
+    public void testTilesAreNotCached() {
+        // The initial image has mirrored tiles, that are copied from tiles calculated by subdivision
+        TileCache cache = new TileCache();
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, INITIAL_VIEW.maxIterations());
+        Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null, iterationBuffer);
+        int[][] actual = drawImage(paramObs, RenderStrategy.SUBDIVISION, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), cache);
+        assertEquals(0, cache.getSize());
+
+        assertSameImage("subdivision", drawImage(paramObs(INITIAL_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT), actual);
+    }
+
+    private static Observable<Parameters> paramObs(ImageAttributes imageAttributes) {
+        return MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null);
+    }
+}
@@ -0,0 +1,127 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestSupersamplingCalculator {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int TILE_SIZE = 64;
+
+    /** The size of a typical poster, printed at 200 dpi. */
+    private static final int POSTER_WIDTH = 2400;
+    private static final int POSTER_HEIGHT = 1600;
+
+    private static final ImageAttributes SEAHORSE_ATTRIBUTES = new ImageAttributes(new Coordinates(-0.76, 0.08), 0.0002);
+
+    @Test
+    public void testWithoutSupersamplingSameAsLineByLine() {
+        int[][] expected = drawImage(lineObs(INITIAL_VIEW, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), 0, 0), WIDTH, HEIGHT);
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        int[][] actual = drawImage(lineObs(INITIAL_VIEW, WIDTH, HEIGHT, statistics, 1, SupersamplingCalculator.THRESHOLD), WIDTH, HEIGHT);
+        assertSameImage("1 sample", expected, actual);
+        assertEquals(0, statistics.getSupersampledPixels());
+    }
+
+    @Test
+    public void testOnlyEdgePixelsAreSupersampled() {
+        for (ImageAttributes imageAttributes : List.of(INITIAL_VIEW, EDGE_VIEW, SEAHORSE_ATTRIBUTES)) {
+            int[][] expected = drawImage(lineObs(imageAttributes, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), 0, 0), WIDTH, HEIGHT);
+            RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+            int[][] actual = drawImage(lineObs(imageAttributes, WIDTH, HEIGHT, statistics, 4, SupersamplingCalculator.THRESHOLD), WIDTH, HEIGHT);
+
+            // Pixels that differ from the full resolution image must be supersampled pixels
+            long changed = 0;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (expected[y][x] != actual[y][x]) {
+                        changed++;
+                    }
+                }
+            }
+            assertTrue(changed > 0);
+            assertTrue(changed <= statistics.getSupersampledPixels());
+
+            // Only a small part of the pixels are on an edge, so the cost is far below 16 samples per pixel
+            assertTrue("samples per pixel " + statistics.getSampleRatio(), statistics.getSampleRatio() < 3.0);
+        }
+    }
+
+    @Test
+    public void testSampleRatioOfTypicalPoster() throws IOException {
+        // The same views as in the other tests, but with more and smaller pixels
+        for (ImageAttributes imageAttributes : List.of(
+                new ImageAttributes(Coordinates.INITIAL_COORDINATES, INITIAL_VIEW.scale() * HEIGHT / POSTER_HEIGHT),
+                new ImageAttributes(SEAHORSE_ATTRIBUTES.coordinates(), SEAHORSE_ATTRIBUTES.scale() * HEIGHT / POSTER_HEIGHT))) {
+            PosterRenderer renderer = new PosterRenderer(POSTER_WIDTH, POSTER_HEIGHT, TILE_SIZE, imageAttributes, Schedulers.computation(), 4);
+            RenderStatistics statistics = renderer.render(new ByteArrayOutputStream());
+
+            // With 16 samples per edge pixel, a typical poster costs about 1.3 times as much as without supersampling
+            assertTrue(statistics.getSupersampledFraction() > 0);
+            assertEquals("samples per pixel", 1.3, statistics.getSampleRatio(), 0.15);
+        }
+    }
+
+    @Test
+    public void testSupersampledColorIsAverage() {
+        // Supersample all pixels
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        int[][] actual = drawImage(lineObs(INITIAL_VIEW, WIDTH, HEIGHT, statistics, 4, -1), WIDTH, HEIGHT);
+        assertEquals(WIDTH * HEIGHT, statistics.getSupersampledPixels());
+        assertTrue("samples per pixel " + statistics.getSampleRatio(), statistics.getSampleRatio() > 17.0);
+
+        // Draw the samples as an image of their own, where sample (x * 4 + i) is at x + (i + 0.5) / 4 - 0.5
+        final double sampleScale = INITIAL_VIEW.scale() / 4;
+        final double shift = -1.5 * sampleScale;
+        ImageAttributes sampleAttributes = new ImageAttributes(
+                INITIAL_VIEW.coordinates().translate(shift, shift, sampleScale), sampleScale, INITIAL_VIEW.palette());
+        int[][] samples = drawImage(lineObs(sampleAttributes, WIDTH * 4, HEIGHT * 4, new RenderStatistics(WIDTH * HEIGHT * 16), 0, 0),
+                WIDTH * 4, HEIGHT * 4);
+
+        // Each pixel has the rounded average color of its samples
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        int color = samples[y * 4 + i][x * 4 + j];
+                        red += (color >> 16) & 0xff;
+                        green += (color >> 8) & 0xff;
+                        blue += color & 0xff;
+                    }
+                }
+                int expected = ((red + 8) / 16) << 16 | ((green + 8) / 16) << 8 | ((blue + 8) / 16);
+                assertEquals("pixel " + x + "," + y, expected, actual[y][x] & 0xffffff);
+            }
+        }
+    }
+
+    /**
+     * Returns an Observable that emits the lines of an image, calculated with the given number of samples
+     * per pixel along each axis, or without the supersampling calculator if samples is 0.
+     */
+    private static Observable<Line> lineObs(ImageAttributes imageAttributes, int width, int height, RenderStatistics statistics,
+                                            int samples, int threshold) {
+        Precision precision = Precision.select(imageAttributes, width, height);
+        return MandelController.paramObs(TILE_SIZE, width, height, imageAttributes, null, null, precision)
+                .flatMap(params -> LineObservable.blocksFromCalculator((samples == 0)
+                        ? new LineByLineCalculator(params, Kernel.DEFAULT, statistics)
+                        : new SupersamplingCalculator(params, Kernel.DEFAULT, statistics, samples, threshold))
+                        .subscribeOn(Schedulers.computation()));
+    }
+}
@@ -0,0 +1,173 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestTileCache {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * The number of tiles in the initial view in an image of size WIDTH x HEIGHT. The real axis is on
+     * line 100, and the 49 lines below it are divided into tiles of their own, since they are mirror
+     * images of lines above it.
+     */
+    private static final int TILES = 4 * 3;
+
+    @Test
+    public void testPutAndGet() {
+        TileCache cache = new TileCache();
+        cache.put(new Parameters(10, 20, 3, 2, INITIAL_VIEW, null), new char[]{1, 2, 3, 4, 5, 6});
+
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, INITIAL_VIEW.maxIterations());
+        Parameters parameters = new Parameters(10, 20, 3, 2, INITIAL_VIEW, null, iterationBuffer);
+        List<Line> lines = new ArrayList<>();
+        assertTrue(cache.getLines(parameters, lines));
+        assertEquals(2, lines.size());
+        assertEquals(10, lines.get(0).getX());
+        assertEquals(20, lines.get(0).getY());
+        assertEquals(21, lines.get(1).getY());
+        assertArrayEquals(toRGB(Palette.DEFAULT, 1, 2, 3), lines.get(0).getRGB());
+        assertArrayEquals(toRGB(Palette.DEFAULT, 4, 5, 6), lines.get(1).getRGB());
+
+        // The escape times are copied to the iteration buffer
+        assertEquals(1, iterationBuffer.get(10, 20));
+        assertEquals(6, iterationBuffer.get(12, 21));
+
+        // Same tile, but different palette
+        assertTrue(cache.getLines(new Parameters(10, 20, 3, 2, INITIAL_VIEW.withPalette(Palette.ICE), null), lines));
+        assertArrayEquals(toRGB(Palette.ICE, 1, 2, 3), lines.get(2).getRGB());
+
+        // Same tile position, but different coordinates
+        assertFalse(cache.getLines(new Parameters(10, 20, 3, 2, EDGE_VIEW, null), lines));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Parameters first = new Parameters(0, 0, 10, 10, INITIAL_VIEW, null);
+        Parameters second = new Parameters(10, 0, 10, 10, INITIAL_VIEW, null);
+        Parameters third = new Parameters(20, 0, 10, 10, INITIAL_VIEW, null);
+
+        // Room for two tiles only
+        TileCache cache = new TileCache(2 * (200 + 128));
+        cache.put(first, new char[100]);
+        cache.put(second, new char[100]);
+
+        // Access the first tile, so the second tile becomes the least recently used
+        assertTrue(cache.getLines(first, new ArrayList<>()));
+        cache.put(third, new char[100]);
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * (200 + 128), cache.getUsedBytes());
+        assertTrue(cache.getLines(first, new ArrayList<>()));
+        assertFalse(cache.getLines(second, new ArrayList<>()));
+        assertTrue(cache.getLines(third, new ArrayList<>()));
+    }
+
+    @Test
+    public void testSecondRenderIsServedFromCache() {
+        printRun("testSecondRenderIsServedFromCache", () -> {
+            // Tiles calculated by subdivision are not stored, see TestSubdivisionCalculator
+            for (RenderStrategy strategy : Stream.of(RenderStrategy.values()).filter(RenderStrategy::isExact).toList()) {
+                TileCache cache = new TileCache();
+
+                RenderStatistics firstStatistics = new RenderStatistics(WIDTH * HEIGHT);
+                int[][] expected = drawImage(paramObs(INITIAL_VIEW), strategy, WIDTH, HEIGHT, firstStatistics, cache);
+                assertEquals(TILES, cache.getSize());
+                assertEquals(TILES, cache.getMisses());
+
+                RenderStatistics secondStatistics = new RenderStatistics(WIDTH * HEIGHT);
+                int[][] actual = drawImage(paramObs(INITIAL_VIEW), strategy, WIDTH, HEIGHT, secondStatistics, cache);
+                System.out.println(strategy + ": " + cache);
+
+                // Nothing was calculated the second time
+                assertEquals(TILES, cache.getHits());
+                assertEquals(0, secondStatistics.getCalculatedPixels());
+                assertSameImage(strategy.toString(), expected, actual);
+            }
+        });
+    }
+
+    @Test
+    public void testCachedTilesAreDrawnWithNewPalette() {
+        TileCache cache = new TileCache();
+        ImageAttributes iceAttributes = INITIAL_VIEW.withPalette(Palette.ICE);
+        drawImage(paramObs(INITIAL_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), cache);
+
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        int[][] actual = drawImage(paramObs(iceAttributes), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics, cache);
+        int[][] expected = drawImage(paramObs(iceAttributes), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT);
+
+        assertEquals(0, statistics.getCalculatedPixels());
+        assertSameImage("ice", expected, actual);
+    }
+
+    @Test
+    public void testDifferentImagesAreCachedSeparately() {
+        TileCache cache = new TileCache();
+        drawImage(paramObs(INITIAL_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), cache);
+        drawImage(paramObs(EDGE_VIEW), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT), cache);
+
+        // The zoomed image does not contain the real axis, so none of its lines are mirrored
+        assertEquals(TILES + 4 * 3, cache.getSize());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCacheIsLookedUpOnScheduler() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        TileCache cache = new TileCache() {
+            @Override
+            boolean getLines(Parameters parameters, List<Line> lines) {
+                threads.add(Thread.currentThread().getName());
+                return super.getLines(parameters, lines);
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "render"));
+        try {
+            Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null);
+            drawImage(MandelController.lineObs(paramObs, RenderStrategy.LINE_BY_LINE, Schedulers.from(executor),
+                    new RenderStatistics(WIDTH * HEIGHT), cache), WIDTH, HEIGHT);
+            assertEquals(Set.of("render"), threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Observable<Parameters> paramObs(ImageAttributes imageAttributes) {
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, imageAttributes.maxIterations());
+        return MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null, iterationBuffer);
+    }
+
+    private static int[] toRGB(Palette palette, int... iterations) {
+        int[] rgb = new int[iterations.length];
+        for (int i = 0; i < iterations.length; i++) {
+            rgb[i] = palette.toRGB(iterations[i], INITIAL_VIEW.maxIterations());
+        }
+        return rgb;
+    }
+}
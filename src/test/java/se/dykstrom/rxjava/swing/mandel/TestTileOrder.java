@@ -0,0 +1,148 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import rx.Scheduler;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.swing.mandel.Images.EDGE_VIEW;
+
+public class TestTileOrder {
+
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 512;
+    private static final int TILE_SIZE = 64;
+
+    /** An image centered on the real axis, where the lines below the axis are mirror images of the lines above it. */
+    private static final ImageAttributes MIRRORED_ATTRIBUTES = new ImageAttributes(new Coordinates(-0.8, -0.0512), 0.0002);
+
+    /** The tile that contains the center pixel of the image. */
+    private static final Rectangle CENTER_TILE = new Rectangle(WIDTH / 2, HEIGHT / 2, TILE_SIZE, TILE_SIZE);
+
+    private static final List<Parameters> TILES =
+            MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, EDGE_VIEW, null).toList().toBlocking().single();
+
+    @Test
+    public void testRowMajorKeepsOrder() {
+        assertSame(TILES, TileOrder.ROW_MAJOR.sort(TILES, WIDTH, HEIGHT, null));
+    }
+
+    @Test
+    public void testSpiralStartsAtCenter() {
+        List<Parameters> tiles = TileOrder.SPIRAL.sort(TILES, WIDTH, HEIGHT, null);
+        assertEquals(TILES.size(), tiles.size());
+        assertEquals(TILES.size(), new HashSet<>(tiles).size());
+
+        // The center of the image is a corner of four tiles, that are calculated first
+        for (Parameters tile : tiles.subList(0, 4)) {
+            assertTrue(tile.toString(), bounds(tile).intersects(new Rectangle(WIDTH / 2 - 1, HEIGHT / 2 - 1, 2, 2)));
+        }
+
+        // The distance from the center never decreases by more than one ring
+        double maxDistance = 0;
+        for (Parameters tile : tiles) {
+            double distance = Math.max(Math.abs(bounds(tile).getCenterX() - WIDTH / 2.0), Math.abs(bounds(tile).getCenterY() - HEIGHT / 2.0));
+            assertTrue(distance + TILE_SIZE > maxDistance);
+            maxDistance = Math.max(maxDistance, distance);
+        }
+    }
+
+    @Test
+    public void testMouseFirstStartsAtMouse() {
+        List<Parameters> tiles = TileOrder.MOUSE_FIRST.sort(TILES, WIDTH, HEIGHT, new Point(10, 500));
+        assertEquals(new Rectangle(0, 448, TILE_SIZE, TILE_SIZE), bounds(tiles.get(0)));
+
+        // Without a mouse position, the tiles are sorted from the center
+        assertEquals(TileOrder.SPIRAL.sort(TILES, WIDTH, HEIGHT, null), TileOrder.MOUSE_FIRST.sort(TILES, WIDTH, HEIGHT, null));
+    }
+
+    @Test
+    public void testSelect() {
+        assertSame(TileOrder.SPIRAL, TileOrder.select(null));
+        assertSame(TileOrder.MOUSE_FIRST, TileOrder.select("mouse_first"));
+    }
+
+    @Test
+    public void testTimeToCenterComplete() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Scheduler scheduler = Schedulers.from(executor);
+            long[] rowMajor = timeToCenterComplete(TileOrder.ROW_MAJOR, EDGE_VIEW, null, scheduler);
+            long[] spiral = timeToCenterComplete(TileOrder.SPIRAL, EDGE_VIEW, null, scheduler);
+
+            // The total work is the same, but the center is complete after a fraction of it
+            assertTrue(spiral[1] <= 4 * TILE_SIZE * TILE_SIZE);
+            assertTrue(spiral[1] * 4 < rowMajor[1]);
+            assertTrue(spiral[0] < rowMajor[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeToCenterCompleteWithMirroredTiles() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Scheduler scheduler = Schedulers.from(executor);
+            long[] rowMajor = timeToCenterComplete(TileOrder.ROW_MAJOR, MIRRORED_ATTRIBUTES,
+                    new IterationBuffer(WIDTH, HEIGHT, MIRRORED_ATTRIBUTES.maxIterations()), scheduler);
+            long[] spiral = timeToCenterComplete(TileOrder.SPIRAL, MIRRORED_ATTRIBUTES,
+                    new IterationBuffer(WIDTH, HEIGHT, MIRRORED_ATTRIBUTES.maxIterations()), scheduler);
+
+            // The center tile is mostly below the axis, and its mirrored lines are copied as soon
+            // as the lines above the axis they are copied from are complete, not after all other tiles
+            assertTrue(spiral[1] <= 8 * TILE_SIZE * TILE_SIZE);
+            assertTrue(spiral[1] * 4 < rowMajor[1]);
+            assertTrue(spiral[0] < rowMajor[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Draws the image with the tiles in the given order, calculated one at a time on the given scheduler.
+     *
+     * @return The time in nanoseconds until the center tile was complete, and the number of pixels emitted until then.
+     */
+    private static long[] timeToCenterComplete(TileOrder order, ImageAttributes imageAttributes, IterationBuffer iterationBuffer,
+                                               Scheduler scheduler) {
+        AtomicLong centerPixels = new AtomicLong();
+        AtomicLong emittedPixels = new AtomicLong();
+        long[] result = new long[2];
+        long start = System.nanoTime();
+
+        TestSubscriber<Line> testSubscriber = new TestSubscriber<>();
+        MandelController.lineObs(order.sort(MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, imageAttributes, null, iterationBuffer),
+                                WIDTH, HEIGHT, null),
+                        RenderStrategy.LINE_BY_LINE, scheduler, new RenderStatistics(WIDTH * HEIGHT), new TileCache())
+                .doOnNext(line -> {
+                    emittedPixels.addAndGet(line.getWidth() * (long) line.getHeight());
+                    Rectangle overlap = CENTER_TILE.intersection(new Rectangle(line.getX(), line.getY(), line.getWidth(), line.getHeight()));
+                    if (!overlap.isEmpty() && centerPixels.addAndGet(overlap.width * (long) overlap.height) == TILE_SIZE * TILE_SIZE) {
+                        result[0] = System.nanoTime() - start;
+                        result[1] = emittedPixels.get();
+                    }
+                })
+                .subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertNoErrors();
+        assertEquals(TILE_SIZE * TILE_SIZE, centerPixels.get());
+        assertEquals(WIDTH * HEIGHT, emittedPixels.get());
+        return result;
+    }
+
+    private static Rectangle bounds(Parameters tile) {
+        return new Rectangle(tile.getFirstX(), tile.getFirstY(), tile.getWidth(), tile.getHeight());
+    }
+}
@@ -0,0 +1,157 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestTilePyramid {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 32;
+
+    private static final ImageAttributes IMAGE_ATTRIBUTES = new ImageAttributes(new Coordinates(-1.23, 0.17), 0.0011);
+
+    @Test
+    public void testSnap() {
+        ImageAttributes snapped = TilePyramid.snap(IMAGE_ATTRIBUTES, WIDTH, HEIGHT);
+        assertEquals(10, TilePyramid.level(snapped.scale()));
+        assertEquals(1.0 / 1024, snapped.scale(), 0.0);
+
+        // The snapped image is on the pixel grid of its level
+        assertEquals(0.0, snapped.coordinates().minX() / snapped.scale() % 1, 0.0);
+        assertEquals(0.0, snapped.coordinates().minY() / snapped.scale() % 1, 0.0);
+
+        // The center is kept within one pixel
+        double centerX = IMAGE_ATTRIBUTES.coordinates().minX() + WIDTH / 2.0 * IMAGE_ATTRIBUTES.scale();
+        assertEquals(centerX, snapped.coordinates().minX() + WIDTH / 2.0 * snapped.scale(), snapped.scale());
+
+        // Snapping a snapped image does not change it
+        assertEquals(snapped, TilePyramid.snap(snapped, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void testTilesCoverImage() {
+        ImageAttributes snapped = TilePyramid.snap(IMAGE_ATTRIBUTES, WIDTH, HEIGHT);
+        List<Parameters> tiles = TilePyramid.tiles(snapped, WIDTH, HEIGHT, TILE_SIZE);
+
+        // The image is not aligned with the tile grid, so the tiles at the edges are only partly visible
+        assertEquals(columns(snapped) * rows(snapped), tiles.size());
+        assertTrue(tiles.stream().allMatch(tile -> tile.getWidth() == TILE_SIZE && tile.getHeight() == TILE_SIZE));
+    }
+
+    @Test
+    public void testSamePrecisionForAllTilesOfLevel() {
+        for (int level = 1; level < 60; level++) {
+            double scale = TilePyramid.scale(level);
+            ImageAttributes nearOrigin = TilePyramid.snap(new ImageAttributes(new Coordinates(0.001, 0.001), scale), WIDTH, HEIGHT);
+            ImageAttributes nearEdge = TilePyramid.snap(new ImageAttributes(new Coordinates(-1.99, -0.001), scale), WIDTH, HEIGHT);
+            List<Parameters> tiles = new ArrayList<>(TilePyramid.tiles(nearOrigin, WIDTH, HEIGHT, TILE_SIZE));
+            tiles.addAll(TilePyramid.tiles(nearEdge, WIDTH, HEIGHT, TILE_SIZE));
+
+            Precision precision = TilePyramid.precision(scale);
+            assertTrue("level " + level, tiles.stream().allMatch(tile -> tile.getPrecision() == precision));
+        }
+    }
+
+    @Test
+    public void testSameImageAsWithoutPyramid() {
+        ImageAttributes snapped = TilePyramid.snap(IMAGE_ATTRIBUTES, WIDTH, HEIGHT);
+        Observable<Parameters> paramObs = MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, snapped, null, null,
+                TilePyramid.precision(snapped.scale()));
+        int[][] expected = drawImage(paramObs, RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT);
+        int[][] actual = drawImage(lineObs(snapped, new RenderStatistics(WIDTH * HEIGHT), new TileCache()), WIDTH, HEIGHT);
+        assertSameImage("pyramid", expected, actual);
+    }
+
+    @Test
+    public void testPanReusesTiles() {
+        TileCache cache = new TileCache();
+        ImageAttributes snapped = TilePyramid.snap(IMAGE_ATTRIBUTES, WIDTH, HEIGHT);
+        drawImage(lineObs(snapped, new RenderStatistics(WIDTH * HEIGHT), cache), WIDTH, HEIGHT);
+        int tiles = TilePyramid.tiles(snapped, WIDTH, HEIGHT, TILE_SIZE).size();
+        assertEquals(tiles, cache.getSize());
+
+        // Pan right by exactly one tile, so one new column of tiles is exposed
+        double panX = TILE_SIZE * snapped.scale();
+        ImageAttributes panned = new ImageAttributes(
+                new Coordinates(snapped.coordinates().minX() + panX, snapped.coordinates().minY()), snapped.scale());
+        long missesBefore = cache.getMisses();
+        RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+        int[][] actual = drawImage(lineObs(panned, statistics, cache), WIDTH, HEIGHT);
+        int newTiles = (int) (cache.getMisses() - missesBefore);
+        assertEquals(rows(snapped), newTiles);
+        assertEquals(newTiles * TILE_SIZE * TILE_SIZE, statistics.getCalculatedPixels());
+
+        int[][] expected = drawImage(lineObs(panned, new RenderStatistics(WIDTH * HEIGHT), new TileCache()), WIDTH, HEIGHT);
+        assertSameImage("panned", expected, actual);
+    }
+
+    @Test
+    public void testPreviewFromLevelAbove() {
+        TileCache cache = new TileCache();
+        ImageAttributes snapped = TilePyramid.snap(IMAGE_ATTRIBUTES, WIDTH, HEIGHT);
+        ImageAttributes above = TilePyramid.snap(new ImageAttributes(snapped.coordinates(), 2 * snapped.scale()), WIDTH, HEIGHT);
+        drawImage(lineObs(above, new RenderStatistics(WIDTH * HEIGHT), cache), WIDTH, HEIGHT);
+
+        // The preview lines, one per tile line, are emitted before the calculated lines
+        List<Line> lines = lineObs(snapped, new RenderStatistics(WIDTH * HEIGHT), cache).toList().toBlocking().single();
+        long previewLines = lines.stream().takeWhile(line -> line.getHeight() == 1).count();
+        assertTrue("preview lines " + previewLines, previewLines >= HEIGHT);
+    }
+
+    @Test
+    public void testPlace() {
+        Line line = LinePool.SHARED.acquire(0, 3, 10);
+        for (int x = 0; x < 10; x++) {
+            line.getRGB()[x] = x;
+        }
+
+        // A line that fits is moved
+        Line moved = TilePyramid.place(line, 5, 2, 100, 100);
+        assertEquals(5, moved.getX());
+        assertEquals(5, moved.getY());
+        assertEquals(10, moved.getWidth());
+
+        // A line that does not fit is cropped
+        Line cropped = TilePyramid.place(moved, -8, 0, 100, 100);
+        assertEquals(0, cropped.getX());
+        assertEquals(7, cropped.getWidth());
+        for (int x = 0; x < 7; x++) {
+            assertEquals(x + 3, cropped.getRGB()[x]);
+        }
+
+        // A line outside the image is dropped
+        assertNull(TilePyramid.place(cropped, 0, 200, 100, 100));
+    }
+
+    /**
+     * Returns the number of tile columns that overlap the given snapped image.
+     */
+    private static long columns(ImageAttributes imageAttributes) {
+        long firstX = Math.round(imageAttributes.coordinates().minX() / imageAttributes.scale());
+        return Math.floorDiv(firstX + WIDTH - 1, TILE_SIZE) - Math.floorDiv(firstX, TILE_SIZE) + 1;
+    }
+
+    /**
+     * Returns the number of tile rows that overlap the given snapped image.
+     */
+    private static long rows(ImageAttributes imageAttributes) {
+        long firstY = Math.round(imageAttributes.coordinates().minY() / imageAttributes.scale());
+        return Math.floorDiv(firstY + HEIGHT - 1, TILE_SIZE) - Math.floorDiv(firstY, TILE_SIZE) + 1;
+    }
+
+    private static Observable<Line> lineObs(ImageAttributes imageAttributes, RenderStatistics statistics, TileCache cache) {
+        return TilePyramid.lineObs(imageAttributes, WIDTH, HEIGHT, TILE_SIZE, RenderStrategy.LINE_BY_LINE, Schedulers.computation(),
+                statistics, cache);
+    }
+}
@@ -0,0 +1,234 @@
+package se.dykstrom.rxjava.swing.mandel;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static se.dykstrom.rxjava.common.utils.Utils.printRun;
+import static se.dykstrom.rxjava.swing.mandel.Images.INITIAL_VIEW;
+import static se.dykstrom.rxjava.swing.mandel.Images.assertSameImage;
+import static se.dykstrom.rxjava.swing.mandel.Images.drawImage;
+
+public class TestTileStore {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_SIZE = 64;
+    private static final int SLOT_CHARS = TILE_SIZE * TILE_SIZE;
+
+    /** The size of a store with room for about ten slots. */
+    private static final long TEN_SLOTS = 10 * (TileStore.SLOT_HEADER_SIZE + SLOT_CHARS * 2) + TileStore.FILE_HEADER_SIZE;
+
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        File file = Files.createTempFile(null, null).toFile();
+        file.deleteOnExit();
+        path = file.toPath();
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            assertEquals(10, store.getCapacity());
+            store.put("a", 3, 2, new char[]{1, 2, 3, 4, 5, 6});
+            store.put("b", 1, 1, new char[]{7});
+
+            assertArrayEquals(new char[]{1, 2, 3, 4, 5, 6}, store.get("a"));
+            assertArrayEquals(new char[]{7}, store.get("b"));
+            assertNull(store.get("c"));
+
+            // Replacing a tile does not use another slot
+            store.put("a", 1, 2, new char[]{8, 9});
+            assertArrayEquals(new char[]{8, 9}, store.get("a"));
+            assertEquals(2, store.getSize());
+
+            // Tiles that do not fit in a slot are not stored
+            store.put("big", SLOT_CHARS + 1, 1, new char[SLOT_CHARS + 1]);
+            assertNull(store.get("big"));
+        }
+    }
+
+    @Test
+    public void testTilesSurviveReopen() throws IOException {
+        char[] tile = new char[SLOT_CHARS];
+        for (int i = 0; i < tile.length; i++) {
+            tile[i] = (char) i;
+        }
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            store.put("full", TILE_SIZE, TILE_SIZE, tile);
+            store.put("small", 2, 1, new char[]{1, 2});
+        }
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            assertEquals(2, store.getSize());
+            assertArrayEquals(tile, store.get("full"));
+            assertArrayEquals(new char[]{1, 2}, store.get("small"));
+        }
+
+        // A store with another slot size discards the old tiles
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS / 2)) {
+            assertEquals(0, store.getSize());
+            assertNull(store.get("small"));
+        }
+    }
+
+    @Test
+    public void testDamagedTileIsDiscarded() throws IOException {
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            store.put("damaged", 3, 1, new char[]{1, 2, 3});
+            store.put("intact", 1, 1, new char[]{4});
+        }
+
+        // Simulate that the slot header of the first tile was written to disk, but not the tile itself
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 9}), TileStore.FILE_HEADER_SIZE + TileStore.SLOT_HEADER_SIZE);
+        }
+
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            assertEquals(2, store.getSize());
+            assertNull(store.get("damaged"));
+            assertArrayEquals(new char[]{4}, store.get("intact"));
+            assertEquals(1, store.getSize());
+
+            // The slot of the damaged tile can be used again
+            store.put("damaged", 3, 1, new char[]{1, 2, 3});
+            assertArrayEquals(new char[]{1, 2, 3}, store.get("damaged"));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedAlsoAfterReopen() throws IOException {
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("tile" + i, 1, 1, new char[]{(char) i});
+            }
+            // Tile 0 is now the most recently used
+            store.get("tile0");
+        }
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            store.put("tile10", 1, 1, new char[]{10});
+            assertEquals(10, store.getSize());
+            assertEquals(1, store.getEvictions());
+            assertNull(store.get("tile1"));
+            assertArrayEquals(new char[]{0}, store.get("tile0"));
+            assertArrayEquals(new char[]{10}, store.get("tile10"));
+        }
+    }
+
+    @Test
+    public void testConcurrentPutAndGet() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TileStore store = TileStore.open(path, TEN_SLOTS * 10, SLOT_CHARS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int t = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String key = "tile" + t + "-" + (i % 20);
+                        char[] tile = new char[100 + i % 20];
+                        Arrays.fill(tile, (char) (t * 100 + i % 20));
+                        store.put(key, tile.length, 1, tile);
+                        char[] actual = store.get(key);
+                        // The tile may have been evicted by another thread, but is never corrupt
+                        if (actual != null) {
+                            assertArrayEquals(tile, actual);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(store.getCapacity(), store.getSize());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeepZoomTileIsStored() throws IOException {
+        // The key of a deep zoom tile includes coordinates with hundreds of digits
+        BigDecimal minX = new BigDecimal("-0.75").add(BigDecimal.ONE.movePointLeft(300));
+        BigDecimal minY = new BigDecimal("0.1").add(BigDecimal.ONE.movePointLeft(300));
+        ImageAttributes deepAttributes = new ImageAttributes(new Coordinates(minX, minY), 1e-300);
+        Parameters parameters = new Parameters(0, 0, 2, 1, deepAttributes, null);
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            new TileCache(store).put(parameters, new char[]{1, 2});
+            assertEquals(0, store.getRejected());
+        }
+
+        // A new cache, as after a restart, gets the tile from the store
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            List<Line> lines = new ArrayList<>();
+            assertTrue(new TileCache(store).getLines(parameters, lines));
+            assertEquals(1, lines.size());
+            assertEquals(1, store.getHits());
+        }
+    }
+
+    @Test
+    public void testStoreIsLockedWhileOpen() throws IOException {
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            store.put("a", 1, 1, new char[]{1});
+            try {
+                TileStore.open(path, TEN_SLOTS, SLOT_CHARS).close();
+                fail("Expected IOException");
+            } catch (IOException expected) {
+                // Expected
+            }
+            assertArrayEquals(new char[]{1}, store.get("a"));
+        }
+
+        // When the store has been closed, the file can be opened again
+        try (TileStore store = TileStore.open(path, TEN_SLOTS, SLOT_CHARS)) {
+            assertArrayEquals(new char[]{1}, store.get("a"));
+        }
+    }
+
+    @Test
+    public void testColdStartDrawsImageFromStore() throws IOException {
+        int[][] expected;
+        try (TileStore store = TileStore.open(path, 1024 * 1024, SLOT_CHARS)) {
+            expected = drawImage(paramObs(), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, new RenderStatistics(WIDTH * HEIGHT),
+                    new TileCache(store));
+            assertTrue(store.getSize() > 0);
+        }
+
+        // A new cache, as after a restart, gets all tiles from the store
+        try (TileStore store = TileStore.open(path, 1024 * 1024, SLOT_CHARS)) {
+            RenderStatistics statistics = new RenderStatistics(WIDTH * HEIGHT);
+            int[][][] actual = new int[1][][];
+            printRun("testColdStart", () -> actual[0] = drawImage(paramObs(), RenderStrategy.LINE_BY_LINE, WIDTH, HEIGHT, statistics,
+                    new TileCache(store)));
+            assertSameImage("cold start", expected, actual[0]);
+            assertEquals(0, statistics.getCalculatedPixels());
+            assertEquals(0, store.getMisses());
+        }
+    }
+
+    private static Observable<Parameters> paramObs() {
+        IterationBuffer iterationBuffer = new IterationBuffer(WIDTH, HEIGHT, INITIAL_VIEW.maxIterations());
+        return MandelController.paramObs(TILE_SIZE, WIDTH, HEIGHT, INITIAL_VIEW, null, iterationBuffer);
+    }
+}